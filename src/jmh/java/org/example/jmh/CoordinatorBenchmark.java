@@ -0,0 +1,92 @@
+package org.example.jmh;
+
+import org.example.EpoxyCoordinator;
+import org.example.TransactionContext;
+import org.example.shims.NoopShim;
+import org.openjdk.jmh.annotations.*;
+
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Coordinator cost per transaction with two stand-in stores that do no work, so every
+// nanosecond is begin/snapshot/validate/commit bookkeeping. Run through JmhRunner to
+// sweep thread counts; the stores and coordinator are shared by all threads.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CoordinatorBenchmark {
+    static final int KEYS_PER_THREAD = 1024;
+
+    @State(Scope.Benchmark)
+    public static class Stores {
+        EpoxyCoordinator coordinator;
+        NoopShim first;
+        NoopShim second;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            coordinator = EpoxyCoordinator.inProcess();
+            first = new NoopShim();
+            second = new NoopShim();
+            coordinator.addSecondaryStore(first);
+            coordinator.addSecondaryStore(second);
+        }
+    }
+
+    // Keys private to one thread, built up front so the benchmark doesn't measure string building
+    @State(Scope.Thread)
+    public static class ThreadKeys {
+        private static final AtomicInteger threads = new AtomicInteger();
+        String[] keys;
+        int next;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            int thread = threads.getAndIncrement();
+            keys = new String[KEYS_PER_THREAD];
+            for (int i = 0; i < KEYS_PER_THREAD; i++) {
+                keys[i] = "t" + thread + "_k" + i;
+            }
+        }
+
+        String next() {
+            return keys[next++ & (KEYS_PER_THREAD - 1)];
+        }
+    }
+
+    @Benchmark
+    public void beginAbort(Stores stores) throws SQLException {
+        TransactionContext txn = stores.coordinator.beginTransaction();
+        stores.coordinator.abortTransaction(txn);
+    }
+
+    // As beginAbort plus taking the snapshot, which begin defers until first use
+    @Benchmark
+    public long beginGetXminAbort(Stores stores) throws SQLException {
+        TransactionContext txn = stores.coordinator.beginTransaction();
+        long xmin = txn.getXmin();
+        stores.coordinator.abortTransaction(txn);
+        return xmin;
+    }
+
+    @Benchmark
+    public void readOnlyCommit(Stores stores, ThreadKeys keys) throws SQLException {
+        TransactionContext txn = stores.coordinator.beginTransaction();
+        stores.first.query(txn, keys.next());
+        stores.coordinator.commitTransaction(txn);
+    }
+
+    // One write to each store: validate, prepare and finalize on both, and a new snapshot
+    // for everyone after
+    @Benchmark
+    public void crossStoreWriteCommit(Stores stores, ThreadKeys keys) throws SQLException {
+        TransactionContext txn = stores.coordinator.beginTransaction();
+        String key = keys.next();
+        stores.first.update(txn, key, key);
+        stores.second.update(txn, key, key);
+        stores.coordinator.commitTransaction(txn);
+    }
+}
@@ -0,0 +1,27 @@
+package org.example.jmh;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+// Runs the coordinator benchmarks once per thread count with the GC profiler, which
+// reports allocation per operation (gc.alloc.rate.norm) alongside collection counts.
+//
+//   java -cp target/epoxy-implementation-1.0-SNAPSHOT-jar-with-dependencies.jar \
+//       org.example.jmh.JmhRunner [benchmark regex] [-Dthreads=1,2,4,8]
+public class JmhRunner {
+    public static void main(String[] args) throws RunnerException {
+        String include = args.length > 0 ? args[0] : "org.example.jmh.*";
+        String[] threadCounts = System.getProperty("threads", "1,2,4,8").split(",");
+        for (String threads : threadCounts) {
+            ChainedOptionsBuilder options = new OptionsBuilder()
+                .include(include)
+                .threads(Integer.parseInt(threads.trim()))
+                .addProfiler(GCProfiler.class);
+            System.out.println("Threads: " + threads.trim());
+            new Runner(options.build()).run();
+        }
+    }
+}
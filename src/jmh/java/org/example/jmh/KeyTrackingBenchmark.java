@@ -0,0 +1,57 @@
+package org.example.jmh;
+
+import org.example.EpoxyCoordinator;
+import org.example.TransactionContext;
+import org.example.shims.NoopShim;
+import org.openjdk.jmh.annotations.*;
+
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+// Write-set tracking in TransactionContext: recording keys spread over two stores, then
+// the membership checks commit makes. Contexts are pooled, so steady state should
+// allocate nothing until a write set outgrows what recycling keeps.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class KeyTrackingBenchmark {
+    @Param({"1", "8", "64"})
+    int keysPerTxn;
+
+    EpoxyCoordinator coordinator;
+    NoopShim first;
+    NoopShim second;
+    String[] keys;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        coordinator = EpoxyCoordinator.inProcess();
+        first = new NoopShim();
+        second = new NoopShim();
+        coordinator.addSecondaryStore(first);
+        coordinator.addSecondaryStore(second);
+        keys = new String[keysPerTxn];
+        for (int i = 0; i < keysPerTxn; i++) {
+            keys[i] = "key" + i;
+        }
+    }
+
+    @Benchmark
+    public int trackAndCheck() throws SQLException {
+        TransactionContext txn = coordinator.beginTransaction();
+        for (int i = 0; i < keys.length; i++) {
+            txn.addModifiedKey((i & 1) == 0 ? first : second, keys[i]);
+        }
+        int found = 0;
+        for (String key : keys) {
+            if (txn.getModifiedKeys(first).contains(key)) {
+                found++;
+            }
+        }
+        coordinator.abortTransaction(txn);
+        return found;
+    }
+}
@@ -0,0 +1,81 @@
+package org.example.jmh;
+
+import org.example.EpoxyCoordinator;
+import org.example.shims.NoopShim;
+import org.openjdk.jmh.annotations.*;
+
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Lock acquisition on the coordinator: the global per-key locks and transactions that
+// declare their keys up front. "private" variants use a key per thread, so they measure
+// the uncontended path; "shared" variants all use one key.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LockBenchmark {
+    private static final String SHARED_KEY = "shared";
+
+    @State(Scope.Benchmark)
+    public static class Stores {
+        EpoxyCoordinator coordinator;
+        NoopShim shim;
+        List<String> sharedKeys = List.of(SHARED_KEY);
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            coordinator = EpoxyCoordinator.inProcess();
+            shim = new NoopShim();
+            coordinator.addSecondaryStore(shim);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class PrivateKey {
+        String key;
+        List<String> keys;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            key = "thread" + Thread.currentThread().getId();
+            keys = List.of(key);
+        }
+    }
+
+    @Benchmark
+    public void globalLockPrivate(Stores stores, PrivateKey key) {
+        Object lock = stores.coordinator.acquireGlobalLock(key.key);
+        synchronized (lock) {
+            stores.coordinator.releaseGlobalLock(key.key);
+        }
+    }
+
+    @Benchmark
+    public void globalLockShared(Stores stores) {
+        Object lock = stores.coordinator.acquireGlobalLock(SHARED_KEY);
+        synchronized (lock) {
+            stores.coordinator.releaseGlobalLock(SHARED_KEY);
+        }
+    }
+
+    // A declared key that isn't hot is only checked against the hot key table
+    @Benchmark
+    public Object declaredKeyPrivate(Stores stores, PrivateKey key) throws SQLException {
+        return stores.coordinator.execute(key.keys, txn -> {
+            stores.shim.update(txn, key.key, key.key);
+            return null;
+        });
+    }
+
+    // Every thread writes the same key; once it turns hot, transactions queue on its lock
+    @Benchmark
+    public Object declaredKeyShared(Stores stores) throws SQLException {
+        return stores.coordinator.execute(stores.sharedKeys, txn -> {
+            stores.shim.update(txn, SHARED_KEY, SHARED_KEY);
+            return null;
+        });
+    }
+}
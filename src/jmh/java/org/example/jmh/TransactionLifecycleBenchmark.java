@@ -0,0 +1,60 @@
+package org.example.jmh;
+
+import org.example.EpoxyCoordinator;
+import org.example.TransactionContext;
+import org.example.shims.InMemoryShim;
+import org.openjdk.jmh.annotations.*;
+
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+// Steady-state begin/read/commit against the in-process shim. Run with -prof gc;
+// gc.alloc.rate.norm should stay near zero bytes per operation.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TransactionLifecycleBenchmark {
+    private static final int NUM_KEYS = 1024;
+
+    @State(Scope.Benchmark)
+    public static class Stores {
+        EpoxyCoordinator coordinator;
+        InMemoryShim shim;
+        String[] keys;
+
+        @Setup(Level.Trial)
+        public void setUp() throws SQLException {
+            coordinator = EpoxyCoordinator.inProcess();
+            shim = new InMemoryShim();
+            coordinator.addSecondaryStore(shim);
+            keys = new String[NUM_KEYS];
+            TransactionContext txn = coordinator.beginTransaction();
+            for (int i = 0; i < NUM_KEYS; i++) {
+                keys[i] = "key" + i;
+                shim.update(txn, keys[i], "value" + i);
+            }
+            coordinator.commitTransaction(txn);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        int next;
+    }
+
+    @Benchmark
+    public String beginReadCommit(Stores stores, Cursor cursor) throws SQLException {
+        TransactionContext txn = stores.coordinator.beginTransaction();
+        String value = stores.shim.query(txn, stores.keys[cursor.next++ & (NUM_KEYS - 1)]);
+        stores.coordinator.commitTransaction(txn);
+        return value;
+    }
+
+    @Benchmark
+    public void beginAbort(Stores stores) throws SQLException {
+        TransactionContext txn = stores.coordinator.beginTransaction();
+        stores.coordinator.abortTransaction(txn);
+    }
+}
@@ -0,0 +1,93 @@
+package org.example;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.example.shims.DataStoreShim;
+
+// Why transactions abort, broken down by reason, by store and by key
+public class AbortStats {
+    // Stop tracking new keys past this point so unique-key workloads can't grow the map forever
+    private static final int MAX_TRACKED_KEYS = 10_000;
+
+    private final ConcurrentHashMap<String, LongAdder> byReason = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, LongAdder> byShim = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, LongAdder> byKey = new ConcurrentHashMap<>();
+    // Keyed "Store.operation", e.g. "MongoDBShim.query"
+    private final ConcurrentHashMap<String, LongAdder> timeouts = new ConcurrentHashMap<>();
+    private final LongAdder retries = new LongAdder();
+    private final LongAdder retriesDenied = new LongAdder();
+
+    void recordAbort(String reason, DataStoreShim shim, Set<String> keys) {
+        byReason.computeIfAbsent(reason, r -> new LongAdder()).increment();
+        if (shim == null) {
+            return;
+        }
+        byShim.computeIfAbsent(shim.unwrap().getClass().getSimpleName(), s -> new LongAdder()).increment();
+        for (String key : keys) {
+            LongAdder counter = byKey.get(key);
+            if (counter == null) {
+                if (byKey.size() >= MAX_TRACKED_KEYS) {
+                    continue;
+                }
+                counter = byKey.computeIfAbsent(key, k -> new LongAdder());
+            }
+            counter.increment();
+        }
+    }
+
+    void recordTimeout(TransactionTimeoutException e) {
+        recordAbort("timeout", e.getShim(), Collections.emptySet());
+        String store = e.getShim() == null ? "coordinator" : e.getShim().unwrap().getClass().getSimpleName();
+        timeouts.computeIfAbsent(store + "." + e.getOperation(), s -> new LongAdder()).increment();
+    }
+
+    void recordRetry() {
+        retries.increment();
+    }
+
+    void recordRetryDenied() {
+        retriesDenied.increment();
+    }
+
+    public long getAborts(String reason) {
+        LongAdder counter = byReason.get(reason);
+        return counter == null ? 0 : counter.sum();
+    }
+
+    public long getRetries() {
+        return retries.sum();
+    }
+
+    public Map<String, Long> getAbortsByShim() {
+        return snapshot(byShim, Integer.MAX_VALUE);
+    }
+
+    public Map<String, Long> getTimeouts() {
+        return snapshot(timeouts, Integer.MAX_VALUE);
+    }
+
+    public Map<String, Long> getTopAbortedKeys(int limit) {
+        return snapshot(byKey, limit);
+    }
+
+    public void print() {
+        System.out.printf("Aborts by reason: %s\n", snapshot(byReason, Integer.MAX_VALUE));
+        System.out.printf("Aborts by store: %s\n", getAbortsByShim());
+        System.out.printf("Most aborted keys: %s\n", getTopAbortedKeys(5));
+        System.out.printf("Timeouts by store call: %s\n", getTimeouts());
+        System.out.printf("Retries: %d (%d denied by retry budget)\n", retries.sum(), retriesDenied.sum());
+    }
+
+    private static Map<String, Long> snapshot(Map<String, LongAdder> counters, int limit) {
+        List<Map.Entry<String, Long>> entries = new ArrayList<>();
+        counters.forEach((name, counter) -> entries.add(Map.entry(name, counter.sum())));
+        entries.sort(Map.Entry.<String, Long>comparingByValue().reversed());
+        Map<String, Long> result = new LinkedHashMap<>();
+        for (Map.Entry<String, Long> entry : entries.subList(0, Math.min(limit, entries.size()))) {
+            result.put(entry.getKey(), entry.getValue());
+        }
+        return result;
+    }
+}
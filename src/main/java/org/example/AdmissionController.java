@@ -0,0 +1,196 @@
+package org.example;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Adaptive cap on the number of transactions running at once. Admission happens before a
+// transaction takes its ID, so callers turned away or kept waiting don't pin xmin.
+//
+// The limit follows commit latency (gradient control): every window the average begin-to-commit
+// time is compared with a slow-moving baseline. While they match the limit grows by about
+// sqrt(limit), probing for more throughput; once latency rises above the baseline the limit
+// shrinks in proportion, so queueing moves out of the stores and into the admission queue,
+// where it is bounded. Timeouts and store rejections additionally cut the limit by 10%.
+final class AdmissionController {
+    private static final int MIN_LIMIT = 4;
+    // A window closes after this many commits, or after WINDOW_NANOS with at least MIN_WINDOW_SAMPLES
+    private static final int WINDOW_SAMPLES = 64;
+    private static final int MIN_WINDOW_SAMPLES = 8;
+    private static final long WINDOW_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+    // Baseline is an EWMA over roughly this many windows
+    private static final double BASELINE_WINDOWS = 100;
+    // Latency may exceed the baseline by this factor before the limit is cut
+    private static final double TOLERANCE = 1.5;
+    private static final double SMOOTHING = 0.2;
+    private static final double DROP_FACTOR = 0.9;
+
+    private final int maxLimit;
+    private final long maxQueueWaitNanos;
+
+    private final ReentrantLock lock = new ReentrantLock(true);
+    private final Condition available = lock.newCondition();
+    private double limit;
+    private int inFlight;
+    private int waiting;
+
+    private long windowStart = System.nanoTime();
+    private long windowRttSum;
+    private int windowSamples;
+    private int windowMaxInFlight;
+    private double baselineRtt;
+
+    private long admitted;
+    private long queued;
+    private long queueNanos;
+    private long maxQueueNanos;
+    private long rejected;
+
+    AdmissionController(int initialLimit, int maxLimit, long maxQueueWait, TimeUnit unit) {
+        this.limit = Math.max(MIN_LIMIT, Math.min(initialLimit, maxLimit));
+        this.maxLimit = maxLimit;
+        this.maxQueueWaitNanos = unit.toNanos(maxQueueWait);
+    }
+
+    // Admits only if there is room right now and nobody is already waiting
+    boolean tryAcquire() {
+        lock.lock();
+        try {
+            if (waiting > 0 || inFlight >= (int) limit) {
+                rejected++;
+                return false;
+            }
+            admit();
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Waits its turn for up to the configured queue wait, or until the deadline if that comes first
+    boolean acquire(long deadlineNanos) throws InterruptedException {
+        lock.lock();
+        try {
+            if (waiting == 0 && inFlight < (int) limit) {
+                admit();
+                return true;
+            }
+            long start = System.nanoTime();
+            long remaining = maxQueueWaitNanos;
+            if (deadlineNanos != TransactionContext.NO_DEADLINE) {
+                remaining = Math.min(remaining, deadlineNanos - start);
+            }
+            waiting++;
+            try {
+                while (inFlight >= (int) limit) {
+                    if (remaining <= 0) {
+                        rejected++;
+                        return false;
+                    }
+                    remaining = available.awaitNanos(remaining);
+                }
+            } finally {
+                waiting--;
+            }
+            long waited = System.nanoTime() - start;
+            queued++;
+            queueNanos += waited;
+            maxQueueNanos = Math.max(maxQueueNanos, waited);
+            admit();
+            // Room may remain if the limit grew while we waited
+            if (waiting > 0 && inFlight < (int) limit) {
+                available.signal();
+            }
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Called holding lock
+    private void admit() {
+        inFlight++;
+        admitted++;
+        windowMaxInFlight = Math.max(windowMaxInFlight, inFlight);
+    }
+
+    // rttNanos is the begin-to-commit time, or negative for transactions that didn't commit
+    void release(long rttNanos) {
+        lock.lock();
+        try {
+            inFlight--;
+            if (rttNanos >= 0) {
+                sample(rttNanos);
+            }
+            if (waiting > 0 && inFlight < (int) limit) {
+                available.signal();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // A transaction timed out or was refused by an overloaded store
+    void recordDrop() {
+        lock.lock();
+        try {
+            limit = Math.max(MIN_LIMIT, limit * DROP_FACTOR);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Called holding lock
+    private void sample(long rttNanos) {
+        windowRttSum += rttNanos;
+        windowSamples++;
+        long now = System.nanoTime();
+        if (windowSamples < WINDOW_SAMPLES && (windowSamples < MIN_WINDOW_SAMPLES || now - windowStart < WINDOW_NANOS)) {
+            return;
+        }
+        double shortRtt = (double) windowRttSum / windowSamples;
+        if (baselineRtt == 0) {
+            baselineRtt = shortRtt;
+        } else {
+            baselineRtt += (shortRtt - baselineRtt) / BASELINE_WINDOWS;
+            // After a sustained drop in latency, let the baseline catch up quickly
+            if (baselineRtt > 2 * shortRtt) {
+                baselineRtt = 2 * shortRtt;
+            }
+        }
+
+        double gradient = Math.max(0.5, Math.min(1.0, TOLERANCE * baselineRtt / shortRtt));
+        double newLimit = limit * gradient;
+        // Only probe upwards if the current limit was actually being used
+        if (windowMaxInFlight >= limit / 2) {
+            newLimit += Math.sqrt(limit);
+        }
+        limit = Math.max(MIN_LIMIT, Math.min(maxLimit, limit * (1 - SMOOTHING) + newLimit * SMOOTHING));
+
+        windowStart = now;
+        windowRttSum = 0;
+        windowSamples = 0;
+        windowMaxInFlight = inFlight;
+    }
+
+    int getLimit() {
+        lock.lock();
+        try {
+            return (int) limit;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void print() {
+        lock.lock();
+        try {
+            System.out.printf("Admission: limit %d (max %d), %d in flight, %d waiting, %d admitted, %d rejected, "
+                    + "%d queued avg %.2f ms max %.2f ms\n",
+                (int) limit, maxLimit, inFlight, waiting, admitted, rejected, queued,
+                queued == 0 ? 0.0 : queueNanos / 1e6 / queued, maxQueueNanos / 1e6);
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package org.example;
+
+import java.sql.SQLTransientException;
+
+// beginTransaction was turned away by admission control: the coordinator is at its
+// concurrency limit and the caller's turn didn't come within the queue wait.
+public class AdmissionRejectedException extends SQLTransientException {
+    private static final long serialVersionUID = 1L;
+
+    public AdmissionRejectedException() {
+        super("Transaction not admitted: coordinator is at its concurrency limit");
+    }
+}
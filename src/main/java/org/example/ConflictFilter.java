@@ -0,0 +1,144 @@
+package org.example;
+
+import java.util.Arrays;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+// Sliding window of blocked Bloom filters over the keys written by committed
+// transactions for one store. A transaction can only conflict with commits at
+// or after its xmin, so generations whose newest commit is older than that are
+// skipped. Generations age out as they fill; once a snapshot is older than the
+// evicted history we can no longer vouch for it and always report a possible conflict.
+//
+// Keys written by transactions still in flight are counted too. Stores that keep one
+// row per key let a later writer overwrite ours and then delete it when it aborts, so
+// a write set that overlaps an in-flight one must still be checked against the store.
+//
+// Only commits made through this coordinator are recorded.
+final class ConflictFilter {
+    private static final int GENERATIONS = 8;
+    private static final int KEYS_PER_GENERATION = 8192;
+    // 512-bit blocks so every probe for a key lands in a single cache line
+    private static final int BLOCK_LONGS = 8;
+    private static final int NUM_BLOCKS = 2048;
+    private static final int HASHES = 4;
+    private static final int WRITER_SLOTS = 1 << 14;
+
+    private final long[][] bits = new long[GENERATIONS][NUM_BLOCKS * BLOCK_LONGS];
+    private final long[] maxTxnId = new long[GENERATIONS];
+    private final int[] keyCount = new int[GENERATIONS];
+    private int current;
+    // Commits with txnId <= this may have been dropped from the window
+    private long evictedMaxTxnId;
+    // In-flight writers per key hash; a transaction counts once for each key it writes
+    private final AtomicIntegerArray writers = new AtomicIntegerArray(WRITER_SLOTS);
+
+    ConflictFilter() {
+        Arrays.fill(maxTxnId, -1);
+    }
+
+    synchronized void recordCommit(Set<String> keys, long txnId) {
+        if (keys.isEmpty()) {
+            return;
+        }
+        if (keyCount[current] + keys.size() > KEYS_PER_GENERATION && keyCount[current] > 0) {
+            rotate();
+        }
+        long[] generation = bits[current];
+        for (String key : keys) {
+            int hash = mix(key.hashCode());
+            int base = blockOf(hash);
+            for (int i = 0; i < HASHES; i++) {
+                int bit = bitOf(hash, i);
+                generation[base + (bit >>> 6)] |= 1L << bit;
+            }
+        }
+        keyCount[current] += keys.size();
+        maxTxnId[current] = Math.max(maxTxnId[current], txnId);
+    }
+
+    // Called before the write reaches the store, so a validator that misses it in the
+    // store can't miss it here too
+    void startWrite(String key) {
+        writers.incrementAndGet(writerSlot(key));
+    }
+
+    // Called once the transaction's writes are committed (and recorded) or rolled back
+    void endWrites(Set<String> keys) {
+        for (String key : keys) {
+            writers.decrementAndGet(writerSlot(key));
+        }
+    }
+
+    synchronized boolean mightConflict(Set<String> keys, long xmin) {
+        if (keys.isEmpty()) {
+            return false;
+        }
+        if (xmin <= evictedMaxTxnId) {
+            return true;
+        }
+        for (String key : keys) {
+            // We are one of the writers; another of our own keys in the slot is a false positive
+            if (writers.get(writerSlot(key)) > 1) {
+                return true;
+            }
+        }
+        for (int g = 0; g < GENERATIONS; g++) {
+            if (maxTxnId[g] < xmin) {
+                continue;
+            }
+            long[] generation = bits[g];
+            for (String key : keys) {
+                if (mightContain(generation, key)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private void rotate() {
+        current = (current + 1) % GENERATIONS;
+        if (maxTxnId[current] >= 0) {
+            evictedMaxTxnId = Math.max(evictedMaxTxnId, maxTxnId[current]);
+            Arrays.fill(bits[current], 0L);
+        }
+        maxTxnId[current] = -1;
+        keyCount[current] = 0;
+    }
+
+    private static boolean mightContain(long[] generation, String key) {
+        int hash = mix(key.hashCode());
+        int base = blockOf(hash);
+        for (int i = 0; i < HASHES; i++) {
+            int bit = bitOf(hash, i);
+            if ((generation[base + (bit >>> 6)] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int writerSlot(String key) {
+        return mix(key.hashCode()) & (WRITER_SLOTS - 1);
+    }
+
+    private static int blockOf(int hash) {
+        return (hash & (NUM_BLOCKS - 1)) * BLOCK_LONGS;
+    }
+
+    // The i-th of HASHES 9-bit positions inside the block, taken from the high hash bits
+    private static int bitOf(int hash, int i) {
+        int h = hash * (0x9E3779B9 + (i << 1));
+        return h >>> 23;
+    }
+
+    private static int mix(int h) {
+        h ^= h >>> 16;
+        h *= 0x85EBCA6B;
+        h ^= h >>> 13;
+        h *= 0xC2B2AE35;
+        h ^= h >>> 16;
+        return h;
+    }
+}
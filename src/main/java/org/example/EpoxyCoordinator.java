@@ -1,21 +1,87 @@
 package org.example;
 
+import java.io.IOException;
+import java.nio.file.Path;
 import java.sql.*;
 import java.util.*;
 import java.util.concurrent.*;
-import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
 
 import org.example.shims.DataStoreShim;
+import org.example.shims.SchemaCache;
 
 public class EpoxyCoordinator {
+    private static final int MAX_PREFETCH_THREADS = 64;
+    private static final String EPOXY_DATA_DDL =
+        "CREATE TABLE IF NOT EXISTS epoxy_data (" +
+        "key VARCHAR(255) PRIMARY KEY, " +
+        "value TEXT, " +
+        "begin_txn BIGINT, " +
+        "end_txn BIGINT" +
+        ")";
+
     private Connection primaryDb;
-    private AtomicLong txnIdGenerator;
-    private ConcurrentHashMap<Long, TransactionContext> activeTxns;
+    private TxnIdOracle txnIdOracle;
     private List<DataStoreShim> secondaryStores;
     private ScheduledExecutorService garbageCollector;
+    private ExecutorService prefetcher;
     private ConcurrentHashMap<String, Object> globalLocks;
+    private final TransactionContextPool contextPool = new TransactionContextPool();
+    private GroupCommitter groupCommitter;
+    private IntentLog intentLog;
+    private RetryPolicy retryPolicy = RetryPolicy.defaults();
+    // Applied by beginTransaction() and execute(); 0 means no deadline
+    private long transactionTimeoutNanos;
+    private final AbortStats abortStats = new AbortStats();
+    private final HotKeyScheduler hotKeys = new HotKeyScheduler();
+    private AdmissionController admission;
+    private volatile StaleReads staleReads;
+    // Null unless someone asked where the time goes
+    private volatile PhaseTimings phaseTimings;
+    // Null unless transactions are being traced
+    private volatile TraceRecorder traceRecorder;
+
+    // One conflict filter per secondary store, same index as secondaryStores
+    private final List<ConflictFilter> conflictFilters = new ArrayList<>();
+    private final LongAdder validationsSkipped = new LongAdder();
+    private final LongAdder validationsRun = new LongAdder();
+    private final LongAdder validationFalsePositives = new LongAdder();
+
+    // Active transactions as an intrusive list in txnId order, so the head is
+    // always the xmin and begin/commit don't allocate map entries.
+    private final Object activeTxnsLock = new Object();
+    private TransactionContext activeHead;
+    private TransactionContext activeTail;
+    private int activeCount;
+    // Sorted IDs of transactions that committed at or after the oldest active xmin
+    private long[] committedTxns = new long[64];
+    private int committedCount;
+    // Only a commit that wrote something changes what a new snapshot would see. An abort
+    // or the oldest transaction finishing may raise xmin, but an older, lower xmin with its
+    // longer committed list describes the same visible state. So one snapshot serves every
+    // transaction until the next writing commit.
+    private Snapshot currentSnapshot;
+    private long writeCommits;
+    private long snapshotWriteCommits = -1;
+    // A superseded snapshot nobody references any more; its array is reused if the size fits
+    private Snapshot spareSnapshot;
+    private long snapshotsBuilt;
+    private long snapshotsShared;
 
     public EpoxyCoordinator(String jdbcUrl, String username, String password) throws SQLException {
+        // Once the schema is known to be there, connecting and warming up is all startup does
+        this.primaryDb = SchemaCache.open(jdbcUrl, EPOXY_DATA_DDL,
+            () -> connectAndWarmUp(jdbcUrl, username, password),
+            () -> createSchema(jdbcUrl, username, password));
+        primaryDb.setAutoCommit(false);
+        this.txnIdOracle = TxnIdOracle.durable(jdbcUrl, username, password, TxnIdOracle.DEFAULT_BLOCK_SIZE);
+        this.groupCommitter = new GroupCommitter(primaryDb, 64, 200, TimeUnit.MICROSECONDS);
+        init();
+    }
+
+    private static Connection createSchema(String jdbcUrl, String username, String password) throws SQLException {
         // First try to create database if it doesn't exist
         String baseUrl = jdbcUrl.substring(0, jdbcUrl.lastIndexOf('/'));
         try (Connection tempConn = DriverManager.getConnection(baseUrl + "/postgres", username, password)) {
@@ -28,87 +94,675 @@ public class EpoxyCoordinator {
         }
 
         // Now connect to the database and create table if needed
-        this.primaryDb = DriverManager.getConnection(jdbcUrl, username, password);
-        try (Statement stmt = primaryDb.createStatement()) {
-            stmt.execute(
-                "CREATE TABLE IF NOT EXISTS epoxy_data (" +
-                "key VARCHAR(255) PRIMARY KEY, " +
-                "value TEXT, " +
-                "begin_txn BIGINT, " +
-                "end_txn BIGINT" +
-                ")"
-            );
-        }
-
-        this.txnIdGenerator = new AtomicLong(1);
-        this.activeTxns = new ConcurrentHashMap<>();
+        Connection connection = DriverManager.getConnection(jdbcUrl, username, password);
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute(EPOXY_DATA_DDL);
+        }
+        return connection;
+    }
+
+    // Fails if epoxy_data is missing, and gets the driver's query path loaded before the first transaction
+    private static Connection connectAndWarmUp(String jdbcUrl, String username, String password) throws SQLException {
+        Connection connection = DriverManager.getConnection(jdbcUrl, username, password);
+        try (PreparedStatement stmt = connection.prepareStatement("SELECT value FROM epoxy_data WHERE key = ?")) {
+            stmt.setString(1, "");
+            stmt.executeQuery().close();
+        } catch (SQLException e) {
+            connection.close();
+            throw e;
+        }
+        return connection;
+    }
+
+    private EpoxyCoordinator() {
+        this.txnIdOracle = TxnIdOracle.inMemory();
+        init();
+    }
+
+    // Coordinator without a primary database, for running against in-process
+    // shims (benchmarks, tests) where there is nothing durable to commit.
+    public static EpoxyCoordinator inProcess() {
+        return new EpoxyCoordinator();
+    }
+
+    private void init() {
         this.secondaryStores = new ArrayList<>();
         this.globalLocks = new ConcurrentHashMap<>();
-        this.garbageCollector = Executors.newSingleThreadScheduledExecutor();
+        this.garbageCollector = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "epoxy-gc");
+            t.setDaemon(true);
+            return t;
+        });
         this.garbageCollector.scheduleAtFixedRate(this::performGarbageCollection, 0, 1, TimeUnit.MINUTES);
+        // Prefetches block on store round trips, so threads are added as needed up to a cap;
+        // past it the transaction's own thread does the read, as if it hadn't prefetched
+        this.prefetcher = new ThreadPoolExecutor(0, MAX_PREFETCH_THREADS, 60, TimeUnit.SECONDS,
+            new SynchronousQueue<>(), r -> {
+                Thread t = new Thread(r, "epoxy-prefetch");
+                t.setDaemon(true);
+                return t;
+            }, new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    Executor prefetchExecutor() {
+        return prefetcher;
+    }
+
+    // A batch is flushed once it reaches maxBatchSize or after maxWait, whichever comes first.
+    // The leader only waits while other transactions are still validating.
+    public void configureGroupCommit(int maxBatchSize, long maxWait, TimeUnit unit) {
+        if (primaryDb != null) {
+            this.groupCommitter = new GroupCommitter(primaryDb, maxBatchSize, maxWait, unit);
+        }
+    }
+
+    // Recovers any in-doubt transactions left in the directory, then logs commit intents
+    // for new transactions. Call after every secondary store has been added, in the
+    // same order as on previous runs.
+    public void enableIntentLog(Path directory) throws IOException {
+        this.intentLog = IntentLog.open(directory, secondaryStores);
+    }
+
+    public void setRetryPolicy(RetryPolicy retryPolicy) {
+        this.retryPolicy = retryPolicy;
+    }
+
+    // Default deadline for transactions that don't ask for one; each execute() attempt gets a fresh one
+    public void setTransactionTimeout(long timeout, TimeUnit unit) {
+        this.transactionTimeoutNanos = unit.toNanos(timeout);
+    }
+
+    // Caps concurrent transactions at a limit that adapts to commit latency, between 4 and
+    // maxLimit. beginTransaction() waits up to maxQueueWait for a slot, then throws
+    // AdmissionRejectedException; tryBegin() never waits.
+    public void enableAdmissionControl(int initialLimit, int maxLimit, long maxQueueWait, TimeUnit unit) {
+        this.admission = new AdmissionController(initialLimit, maxLimit, maxQueueWait, unit);
+    }
+
+    // Times each transaction's begin, validate, prepare, commit and finalize; null turns it off
+    public void setPhaseTimings(PhaseTimings timings) {
+        this.phaseTimings = timings;
+    }
+
+    // Records every transaction begun from now on, with what it did through TracedShim
+    // stores; null stops recording
+    public void setTraceRecorder(TraceRecorder recorder) {
+        this.traceRecorder = recorder;
+    }
+
+    // An ID from the same sequence transactions get, for work done against the stores
+    // without a coordinated transaction, so its versions stay ordered with everyone else's
+    public long nextTransactionId() throws SQLException {
+        return txnIdOracle.nextId();
     }
 
     public void addSecondaryStore(DataStoreShim shim) {
         secondaryStores.add(shim);
+        conflictFilters.add(new ConflictFilter());
     }
 
-    public synchronized TransactionContext beginTransaction() throws SQLException {
-        long txnId = txnIdGenerator.getAndIncrement();
-        primaryDb.setAutoCommit(false);
-        
-        long xmin = getXmin();
-        long xmax = txnId;
-        Set<Long> rcTxns = getRecentlyCommittedTransactions(xmin);
+    public TransactionContext beginTransaction() throws SQLException {
+        return beginTransaction(transactionTimeoutNanos, TimeUnit.NANOSECONDS);
+    }
 
-        TransactionContext txn = new TransactionContext(txnId, xmin, xmax, rcTxns);
-        activeTxns.put(txnId, txn);
+    // Store calls made after the timeout elapses (or still running when it does) fail with
+    // TransactionTimeoutException, and commit aborts the transaction. A timeout of 0 means none.
+    public TransactionContext beginTransaction(long timeout, TimeUnit unit) throws SQLException {
+        long now = System.nanoTime();
+        long deadline = timeout > 0 ? now + unit.toNanos(timeout) : TransactionContext.NO_DEADLINE;
+        AdmissionController limiter = admission;
+        if (limiter != null) {
+            boolean admitted;
+            try {
+                admitted = limiter.acquire(deadline);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                admitted = false;
+            }
+            if (!admitted) {
+                throw new AdmissionRejectedException();
+            }
+        }
+        TransactionContext txn = startAdmitted(deadline, limiter);
+        PhaseTimings timings = phaseTimings;
+        if (timings != null) {
+            timings.lap(PhaseTimings.Phase.BEGIN, now);
+        }
         return txn;
     }
 
-    public synchronized void commitTransaction(TransactionContext txn) throws SQLException {
-        if (validateTransaction(txn)) {
-            for (DataStoreShim shim : secondaryStores) {
-                shim.prepareCommit(txn);
+    // Non-blocking begin: returns null instead of waiting when admission control is at its limit
+    public TransactionContext tryBegin() throws SQLException {
+        long now = System.nanoTime();
+        long deadline = transactionTimeoutNanos > 0
+            ? now + transactionTimeoutNanos
+            : TransactionContext.NO_DEADLINE;
+        AdmissionController limiter = admission;
+        if (limiter != null && !limiter.tryAcquire()) {
+            return null;
+        }
+        TransactionContext txn = startAdmitted(deadline, limiter);
+        PhaseTimings timings = phaseTimings;
+        if (timings != null) {
+            timings.lap(PhaseTimings.Phase.BEGIN, now);
+        }
+        return txn;
+    }
+
+    private TransactionContext startAdmitted(long deadline, AdmissionController limiter) throws SQLException {
+        boolean started = false;
+        try {
+            TransactionContext txn = start(deadline, limiter);
+            started = true;
+            TraceRecorder recorder = traceRecorder;
+            if (recorder != null) {
+                recorder.begin(txn);
             }
-            primaryDb.commit();
-            for (DataStoreShim shim : secondaryStores) {
+            return txn;
+        } finally {
+            if (!started && limiter != null) {
+                limiter.release(-1);
+            }
+        }
+    }
+
+    private TransactionContext start(long deadline, AdmissionController limiter) throws SQLException {
+        while (true) {
+            // IDs are taken under the list lock so the active list stays in txnId order. That
+            // never waits on the database: when a block runs out, the next one is awaited
+            // outside the lock, so only the begins that need it wait.
+            synchronized (activeTxnsLock) {
+                long txnId = txnIdOracle.tryNextId();
+                if (txnId >= 0) {
+                    TransactionContext txn = contextPool.acquire(txnId, txnId);
+                    // The snapshot (xmin, recently committed set) is taken on first use
+                    txn.snapshotSource = this;
+                    txn.setDeadline(deadline);
+                    txn.admitted = limiter != null;
+                    txn.beginNanos = System.nanoTime();
+                    linkActive(txn);
+                    txn.intentLog = intentLog;
+                    return txn;
+                }
+            }
+            txnIdOracle.awaitBlock();
+        }
+    }
+
+    public void commitTransaction(TransactionContext txn) throws SQLException {
+        GroupCommitter committer = groupCommitter;
+        if (committer != null) {
+            committer.announce();
+        }
+        PhaseTimings timings = phaseTimings;
+        long mark = timings == null ? 0 : System.nanoTime();
+        boolean prepared = false;
+        RuntimeException storeFailure = null;
+        try {
+            txn.checkDeadline(null, "commit");
+            // Validation and prepare stay serialized; only the primary commit is batched.
+            // Store calls in here are bounded by the deadline, so a slow store can only
+            // hold up the transactions queued behind it for as long as this one has left.
+            synchronized (this) {
+                int conflict = validateTransaction(txn);
+                if (timings != null) {
+                    mark = timings.lap(PhaseTimings.Phase.VALIDATE, mark);
+                }
+                if (conflict >= 0) {
+                    DataStoreShim shim = secondaryStores.get(conflict);
+                    Set<String> conflictKeys = new HashSet<>(txn.getModifiedKeys(shim));
+                    abortStats.recordAbort("validation", shim, conflictKeys);
+                    hotKeys.recordAbort(conflictKeys);
+                    traceAbort(txn, Trace.Outcome.VALIDATION);
+                    abortTransaction(txn);
+                    throw new ValidationException(shim, conflictKeys);
+                }
+                // Stores the transaction never wrote to have nothing to prepare, and
+                // skipping them keeps a slow store out of unrelated commits
+                for (DataStoreShim shim : secondaryStores) {
+                    if (!txn.getModifiedKeys(shim).isEmpty()) {
+                        shim.prepareCommit(txn);
+                    }
+                }
+                // Publish our writes before leaving the critical section so later validators see them
+                for (int i = 0; i < secondaryStores.size(); i++) {
+                    conflictFilters.get(i).recordCommit(txn.getModifiedKeys(secondaryStores.get(i)), txn.getTxnId());
+                }
+            }
+            if (timings != null) {
+                mark = timings.lap(PhaseTimings.Phase.PREPARE, mark);
+            }
+            prepared = true;
+        } catch (RuntimeException e) {
+            // A store timed out, refused the call or failed outright
+            storeFailure = e;
+        } finally {
+            if (!prepared && committer != null) {
+                committer.withdraw();
+            }
+        }
+        if (storeFailure != null) {
+            // Abort outside the critical section; the rollback itself isn't bounded by the deadline
+            if (txn.isLive()) {
+                recordFailure(txn, storeFailure);
+                abortTransaction(txn);
+            }
+            throw storeFailure;
+        }
+
+        // Read-only transactions never logged anything, so there is nothing to force
+        IntentLog log = txn.logBegun ? txn.intentLog : null;
+        if (log != null) {
+            if (txn.logMark == null) {
+                txn.logMark = new IntentLog.Mark();
+            }
+            log.logMarker(IntentLog.PREPARED, txn, txn.logMark);
+            log.sync(txn.logMark);
+        }
+        if (committer != null) {
+            try {
+                committer.commit();
+            } catch (SQLException e) {
+                abortStats.recordAbort("primary-commit", null, null);
+                traceAbort(txn, Trace.Outcome.ERROR);
+                abortTransaction(txn);
+                throw e;
+            }
+        }
+        if (log != null) {
+            log.logMarker(IntentLog.COMMITTED, txn, txn.logMark);
+            log.sync(txn.logMark);
+        }
+        if (timings != null) {
+            mark = timings.lap(PhaseTimings.Phase.COMMIT, mark);
+        }
+        for (DataStoreShim shim : secondaryStores) {
+            Set<String> keys = txn.getModifiedKeys(shim);
+            if (!keys.isEmpty()) {
+                hotKeys.recordCommit(keys);
                 shim.finalizeCommit(txn);
             }
-            activeTxns.remove(txn.getTxnId());
+        }
+        if (log != null) {
+            log.logResolved(IntentLog.FINALIZED, txn);
+        }
+        complete(txn, true);
+        if (timings != null) {
+            timings.lap(PhaseTimings.Phase.FINALIZE, mark);
+        }
+    }
+
+    // Reads key without a transaction, accepting a value up to maxStaleness old. Served from
+    // a cache of recent reads kept current by this coordinator's commits, falling back to
+    // the store at a shared snapshot no older than the bound.
+    public String readStale(DataStoreShim shim, String key, long maxStaleness, TimeUnit unit) throws SQLException {
+        StaleReads reads = staleReads;
+        if (reads == null) {
+            synchronized (this) {
+                reads = staleReads;
+                if (reads == null) {
+                    reads = new StaleReads(this, garbageCollector);
+                    staleReads = reads;
+                }
+            }
+        }
+        return reads.read(shim, key, unit.toNanos(maxStaleness));
+    }
+
+    // Read-only transaction for StaleReads; outside admission control, snapshot taken up
+    // front so concurrent readers can share it without mutating it
+    TransactionContext beginStableSnapshot() throws SQLException {
+        TransactionContext txn = start(TransactionContext.NO_DEADLINE, null);
+        txn.getRcTxns();
+        txn.getRcTxnList();
+        return txn;
+    }
+
+    void endStableSnapshot(TransactionContext txn) {
+        // Never wrote, so there is nothing to roll back on the primary or the stores, and
+        // nothing in the intent log to resolve
+        complete(txn, false);
+    }
+
+    // Runs body in a transaction and commits it, retrying from the top with backoff when
+    // validation fails. The body may abort the transaction itself, in which case its
+    // result is returned without committing. Any other failure, including a timeout,
+    // aborts and is rethrown.
+    public <T> T execute(Function<TransactionContext, T> body) throws SQLException {
+        return execute(Collections.emptySet(), body);
+    }
+
+    // As execute(body), but declares keys the transaction is going to write. If any of
+    // them (or any key an earlier attempt conflicted on) is currently hot, the attempt
+    // waits its turn in that key's queue instead of racing and failing validation.
+    public <T> T execute(Collection<String> declaredKeys, Function<TransactionContext, T> body) throws SQLException {
+        RetryPolicy policy = retryPolicy;
+        policy.recordFirstAttempt();
+        Collection<String> contendedKeys = declaredKeys;
+        for (int attempt = 1; ; attempt++) {
+            List<ReentrantLock> queued = hotKeys.lockHotKeys(contendedKeys);
+            ValidationException conflict;
+            try {
+                TransactionContext txn = beginTransaction();
+                try {
+                    T result = body.apply(txn);
+                    if (txn.isLive()) {
+                        commitTransaction(txn);
+                    }
+                    return result;
+                } catch (ValidationException e) {
+                    conflict = e;
+                } catch (RuntimeException e) {
+                    // Timeouts and refused store calls aren't retried either: the caller's time
+                    // budget is spent, or the store is shedding load and retrying would add to it
+                    if (txn.isLive()) {
+                        recordFailure(txn, e);
+                    }
+                    abortTransaction(txn);
+                    throw e;
+                } catch (SQLException e) {
+                    if (txn.isLive()) {
+                        abortStats.recordAbort("error", null, null);
+                        traceAbort(txn, Trace.Outcome.ERROR);
+                    }
+                    abortTransaction(txn);
+                    throw e;
+                }
+            } finally {
+                hotKeys.unlock(queued);
+            }
+
+            if (attempt >= policy.getMaxAttempts()) {
+                throw conflict;
+            }
+            contendedKeys = union(declaredKeys, conflict.getConflictKeys());
+            // A retry that will queue behind a hot key doesn't need backoff or budget
+            if (hotKeys.anyHot(contendedKeys)) {
+                abortStats.recordRetry();
+                continue;
+            }
+            if (!policy.tryAcquireRetry()) {
+                abortStats.recordRetryDenied();
+                throw conflict;
+            }
+            abortStats.recordRetry();
+            backoff(policy.backoffNanos(attempt), conflict);
+        }
+    }
+
+    private void recordFailure(TransactionContext txn, RuntimeException e) {
+        AdmissionController limiter = admission;
+        if (limiter != null && (e instanceof TransactionTimeoutException || e instanceof StoreUnavailableException)) {
+            limiter.recordDrop();
+        }
+        if (e instanceof TransactionTimeoutException) {
+            abortStats.recordTimeout((TransactionTimeoutException) e);
+            traceAbort(txn, Trace.Outcome.TIMEOUT);
+        } else if (e instanceof StoreUnavailableException) {
+            StoreUnavailableException unavailable = (StoreUnavailableException) e;
+            abortStats.recordAbort(unavailable.getReason(), unavailable.getShim(), Collections.emptySet());
+            traceAbort(txn, Trace.Outcome.UNAVAILABLE);
         } else {
-            abortTransaction(txn);
-            throw new SQLException("Transaction validation failed");
+            abortStats.recordAbort("error", null, null);
+            traceAbort(txn, Trace.Outcome.ERROR);
+        }
+    }
+
+    // Why the coordinator is about to abort txn, for its trace; any other abort is the application's
+    private static void traceAbort(TransactionContext txn, Trace.Outcome outcome) {
+        if (txn.trace != null) {
+            txn.trace.abortOutcome = outcome;
+        }
+    }
+
+    private static Collection<String> union(Collection<String> a, Collection<String> b) {
+        if (a.isEmpty()) {
+            return b;
+        }
+        Set<String> keys = new HashSet<>(a);
+        keys.addAll(b);
+        return keys;
+    }
+
+    private static void backoff(long nanos, ValidationException cause) throws ValidationException {
+        try {
+            TimeUnit.NANOSECONDS.sleep(nanos);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw cause;
         }
     }
 
+    public AbortStats getAbortStats() {
+        return abortStats;
+    }
+
     public void abortTransaction(TransactionContext txn) throws SQLException {
-        primaryDb.rollback();
+        // Aborting a context that already completed (e.g. after a failed commit) is a no-op
+        if (!txn.isLive()) {
+            return;
+        }
+        if (primaryDb != null) {
+            primaryDb.rollback();
+        }
         for (DataStoreShim shim : secondaryStores) {
-            shim.abortTransaction(txn);
+            if (!txn.getModifiedKeys(shim).isEmpty()) {
+                shim.abortTransaction(txn);
+            }
+        }
+        if (txn.logBegun) {
+            txn.intentLog.logResolved(IntentLog.ABORTED, txn);
         }
-        activeTxns.remove(txn.getTxnId());
+        complete(txn, false);
     }
 
-    private boolean validateTransaction(TransactionContext txn) {
-        for (DataStoreShim shim : secondaryStores) {
+    public int getActiveTransactionCount() {
+        synchronized (activeTxnsLock) {
+            return activeCount;
+        }
+    }
+
+    private void complete(TransactionContext txn, boolean committed) {
+        // A prefetch still reading uses the snapshot we are about to release
+        txn.awaitPrefetches();
+        if (txn.trace != null) {
+            txn.trace.finish(committed);
+        }
+        if (txn.hasWrites()) {
+            // Committed writes are in the filters by now, and rolled back ones are gone
+            for (int i = 0; i < secondaryStores.size(); i++) {
+                conflictFilters.get(i).endWrites(txn.getModifiedKeys(secondaryStores.get(i)));
+            }
+        }
+        synchronized (activeTxnsLock) {
+            // Publish the commit and leave the active list atomically, so no snapshot
+            // can miss the transaction in both places. Read-only commits have nothing to publish.
+            if (committed && txn.hasWrites()) {
+                addCommitted(txn.getTxnId());
+                writeCommits++;
+            }
+            boolean wasOldest = activeHead == txn;
+            unlinkActive(txn);
+            if (wasOldest) {
+                pruneCommitted(getXmin());
+            }
+            Snapshot snapshot = txn.detachSnapshot();
+            if (snapshot != null && --snapshot.refs == 0 && snapshot != currentSnapshot) {
+                spareSnapshot = snapshot;
+            }
+        }
+        StaleReads reads = staleReads;
+        if (committed && reads != null && txn.hasWrites()) {
+            // Now that new snapshots see the commit, stop vouching for cached values it replaced
+            reads.bumpCommitSeq();
+            for (DataStoreShim shim : secondaryStores) {
+                reads.onCommit(shim, txn.getModifiedKeys(shim));
+            }
+        }
+        AdmissionController limiter = admission;
+        if (txn.admitted && limiter != null) {
+            limiter.release(committed ? System.nanoTime() - txn.beginNanos : -1);
+        }
+        contextPool.release(txn);
+    }
+
+    // Called holding activeTxnsLock
+    private void addCommitted(long txnId) {
+        if (committedCount == committedTxns.length) {
+            committedTxns = Arrays.copyOf(committedTxns, committedCount * 2);
+        }
+        // Commits finish roughly in ID order, so the insertion point is usually at the end
+        int i = committedCount;
+        while (i > 0 && committedTxns[i - 1] > txnId) {
+            committedTxns[i] = committedTxns[i - 1];
+            i--;
+        }
+        committedTxns[i] = txnId;
+        committedCount++;
+    }
+
+    // Called holding activeTxnsLock; commits below every future xmin are visible anyway
+    private void pruneCommitted(long floor) {
+        if (committedCount == 0 || committedTxns[0] >= floor) {
+            return;
+        }
+        int keepFrom = lowerBound(floor);
+        System.arraycopy(committedTxns, keepFrom, committedTxns, 0, committedCount - keepFrom);
+        committedCount -= keepFrom;
+    }
+
+    private int lowerBound(long txnId) {
+        int i = Arrays.binarySearch(committedTxns, 0, committedCount, txnId);
+        return i >= 0 ? i : -i - 1;
+    }
+
+    private void linkActive(TransactionContext txn) {
+        txn.prevActive = activeTail;
+        if (activeTail == null) {
+            activeHead = txn;
+        } else {
+            activeTail.nextActive = txn;
+        }
+        activeTail = txn;
+        activeCount++;
+    }
+
+    private void unlinkActive(TransactionContext txn) {
+        if (txn.prevActive == null) {
+            activeHead = txn.nextActive;
+        } else {
+            txn.prevActive.nextActive = txn.nextActive;
+        }
+        if (txn.nextActive == null) {
+            activeTail = txn.prevActive;
+        } else {
+            txn.nextActive.prevActive = txn.prevActive;
+        }
+        activeCount--;
+    }
+
+    // Called by TransactionContext.addModifiedKey before the write is sent
+    void startWrite(DataStoreShim shim, String key) {
+        for (int i = 0; i < secondaryStores.size(); i++) {
+            if (secondaryStores.get(i).unwrap() == shim) {
+                conflictFilters.get(i).startWrite(key);
+                return;
+            }
+        }
+    }
+
+    // Returns the index of the first store that reported a conflict, or -1
+    private int validateTransaction(TransactionContext txn) {
+        for (int i = 0; i < secondaryStores.size(); i++) {
+            DataStoreShim shim = secondaryStores.get(i);
+            // Skip the store round trip unless a recent commit or an in-flight writer may
+            // have touched our write set
+            if (!conflictFilters.get(i).mightConflict(txn.getModifiedKeys(shim), txn.getXmin())) {
+                validationsSkipped.increment();
+                continue;
+            }
+            validationsRun.increment();
             if (!shim.validateTransaction(txn)) {
-                return false;
+                return i;
             }
+            validationFalsePositives.increment();
+        }
+        return -1;
+    }
+
+    public void printCoordinatorStats() {
+        long skipped = validationsSkipped.sum();
+        long run = validationsRun.sum();
+        long falsePositives = validationFalsePositives.sum();
+        long total = skipped + run;
+
+        System.out.printf("Store validations skipped: %d/%d (%.1f%%)\n",
+            skipped, total, total == 0 ? 0.0 : 100.0 * skipped / total);
+        System.out.printf("Conflict filter false positives: %d/%d (%.1f%%)\n",
+            falsePositives, run, run == 0 ? 0.0 : 100.0 * falsePositives / run);
+        if (groupCommitter != null) {
+            System.out.printf("Average group commit batch size: %.2f\n", groupCommitter.getAverageBatchSize());
+        }
+        for (DataStoreShim shim : secondaryStores) {
+            shim.printStats();
+        }
+        synchronized (activeTxnsLock) {
+            long taken = snapshotsBuilt + snapshotsShared;
+            System.out.printf("Snapshots: %d taken, %d built (%.1f%% shared)\n",
+                taken, snapshotsBuilt, taken == 0 ? 0.0 : 100.0 * snapshotsShared / taken);
+        }
+        if (admission != null) {
+            admission.print();
         }
-        return true;
+        if (staleReads != null) {
+            staleReads.print();
+        }
+        abortStats.print();
+        hotKeys.print();
     }
 
     private long getXmin() {
-        return activeTxns.values().stream()
-                .mapToLong(TransactionContext::getTxnId)
-                .min()
-                .orElse(txnIdGenerator.get());
+        synchronized (activeTxnsLock) {
+            return activeHead != null ? activeHead.getTxnId() : txnIdOracle.peekNext();
+        }
     }
 
-    private Set<Long> getRecentlyCommittedTransactions(long xmin) {
-        // In a real implementation, this would query the primary database
-        // For simplicity, we'll return an empty set
-        return new HashSet<>();
+    // Gives txn the current snapshot, building one if a writing transaction committed
+    // since the last. Only sees commits made through this coordinator.
+    void takeSnapshot(TransactionContext txn) {
+        synchronized (activeTxnsLock) {
+            Snapshot snapshot = currentSnapshot;
+            if (snapshot == null || snapshotWriteCommits != writeCommits) {
+                snapshot = buildSnapshot();
+                if (currentSnapshot != null && currentSnapshot.refs == 0) {
+                    spareSnapshot = currentSnapshot;
+                }
+                currentSnapshot = snapshot;
+                snapshotWriteCommits = writeCommits;
+                snapshotsBuilt++;
+            } else {
+                snapshotsShared++;
+            }
+            txn.useSnapshot(snapshot);
+        }
+    }
+
+    // Called holding activeTxnsLock. committedTxns is already pruned to the current xmin.
+    private Snapshot buildSnapshot() {
+        long xmin = getXmin();
+        if (committedCount == 0) {
+            return new Snapshot(xmin, TransactionContext.NO_TXNS);
+        }
+        long[] committed;
+        Snapshot spare = spareSnapshot;
+        if (spare != null && spare.committed.length == committedCount) {
+            committed = spare.committed;
+            spareSnapshot = null;
+        } else {
+            committed = new long[committedCount];
+        }
+        System.arraycopy(committedTxns, 0, committed, 0, committedCount);
+        return new Snapshot(xmin, committed);
     }
 
     private void performGarbageCollection() {
@@ -125,4 +779,4 @@ public class EpoxyCoordinator {
     public void releaseGlobalLock(String key) {
         globalLocks.remove(key);
     }
-}
\ No newline at end of file
+}
@@ -1,39 +1,309 @@
 package org.example;
 
+import org.example.benchmarks.BenchmarkEnvironment;
+import org.example.benchmarks.Bulkheads;
 import org.example.benchmarks.CartBenchmark;
 import org.example.benchmarks.EndToEndMicroserviceBenchmark;
+import org.example.benchmarks.ExecutionMode;
 import org.example.benchmarks.HotelBenchmark;
+import org.example.benchmarks.OpenLoopDriver;
+import org.example.benchmarks.ScalingRunner;
+import org.example.benchmarks.StandInStores;
 import org.example.benchmarks.TPCCBenchmark;
+import org.example.benchmarks.TraceReplay;
+import org.example.benchmarks.YCSBBenchmark;
 
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
 
+// Usage: EpoxyRunner [config=run.properties] [key=value ...]
+// Arguments override the properties file; a leading "--" on keys is accepted.
+//
+//   workloads            tpcc,hotel,microservice,cart,ycsb,replay (default: all but ycsb and replay)
+//   threads              thread counts to sweep, e.g. 1,2,4,8 (default: 1)
+//   warmup, duration     per thread count, e.g. 500ms, 10s, 2m (default: 5s, 10s)
+//   mode                 closed (threads loop back to back) or open (fixed arrival rate)
+//   rate.start, rate.end, rate.steps, arrivals, workers    open mode only
+//   hotel.searchRatio    fraction of searches (default: 0.8)
+//   tpcc.warehouses      warehouses, split between Postgres and MySQL (default: 2)
+//   tpcc.cardinality     fraction of the spec's items/customers/orders per warehouse (default: 1.0)
+//   tpcc.loaders, ycsb.loaders    threads loading the initial TPC-C / YCSB data (default: 8, 8)
+//   tpcc.mix             weights of NewOrder,Payment,OrderStatus,Delivery,StockLevel (default: 45,43,4,4,4)
+//   ycsb.workloads       YCSB core workloads to run, a to f (default: a,b,c,d,e,f)
+//   ycsb.stores          postgres,mysql,mongodb,elasticsearch (default: postgres)
+//   ycsb.routing         all (every record on every store) or partitioned (default: all)
+//   ycsb.records, ycsb.fieldCount, ycsb.fieldLength    (default: 100000, 10, 100)
+//   ycsb.distribution    uniform, zipfian, latest or hotspot (default: each workload's own)
+//   ycsb.skew            values to sweep: zipfian/latest theta, or hotspot fraction of
+//                        operations on the hot 20% of records (default: 0.5,0.8,0.9,0.99)
+//   cart.mix             weights of add-to-cart,checkout,insertItem,updateItem (default: 60,20,5,15)
+//   microservice.mixes   readRatio:crossStoreRatio pairs (default: 0.9:0.5,0.3:0.5,0.5:0.8)
+//   execution            modes to run each workload in: coordinated, direct (same store calls
+//                        without the coordinator) or coordinator-only (no-op stores) (default: coordinated)
+//   phases               true to break transaction time down into begin, reads, writes, validate,
+//                        prepare, commit and finalize (default: false)
+//   stores               real, or standin for in-process stand-ins with each store's latency,
+//                        connection limit and injected faults, needing no containers (default: real)
+//   standin.<store>.read, .write, .commit    latency model: fixed:200us, lognormal:<p50>:<p99>,
+//                        percentiles:50=300us,99=2ms,100=9ms or histogram:<file of "latency count" lines>
+//   standin.<store>.slots, .errors, .timeouts, .hang, .stalls    see StandInStores
+//   bulkhead.concurrent, .queued, .wait, .failures, .open    limits of the bulkhead and circuit
+//                        breaker in front of every store (default: 32, 64, 100ms, 5, 1s)
+//   trace                file to record every coordinated transaction the workloads run to, for
+//                        replay; loading isn't recorded (default: none)
+//   replay.trace         trace the replay workload re-issues against the configured stores
+//   replay.speed         speeds to replay at, 1 for as recorded, 2 for twice as fast (default: 1)
+//   output               results written to <output>.json and <output>.csv (default: results/epoxy)
 public class EpoxyRunner {
-    public static void main(String[] args) throws SQLException, InterruptedException {
-        System.out.println("Running TPC-C Benchmark");
-        TPCCBenchmark tpccBenchmark = new TPCCBenchmark();
-        tpccBenchmark.runBenchmark(1, 10000);
+    private static final String DEFAULT_WORKLOADS = "tpcc,hotel,microservice,cart";
 
-        System.out.println("Running Epoxy Benchmarks: ");
-        System.out.println("Running Hotel Benchmark (80% searches, 20% reservations)");
-        HotelBenchmark hotelBenchmark = new HotelBenchmark();
-        hotelBenchmark.runBenchmark(1, 10000);
+    public static void main(String[] args) throws SQLException, InterruptedException, IOException {
+        Properties config = parseConfig(args);
+        List<String> workloads = list(config.getProperty("workloads", DEFAULT_WORKLOADS));
+        int[] threads = list(config.getProperty("threads", "1")).stream().mapToInt(Integer::parseInt).toArray();
+        ScalingRunner runner = new ScalingRunner(parseMillis(config.getProperty("warmup", "5s")),
+            parseMillis(config.getProperty("duration", "10s")), TimeUnit.MILLISECONDS);
+        Runner measure = runner(config, runner, threads);
 
-        System.out.println("Running Microservice Benchmark: ");
-        EndToEndMicroserviceBenchmark endToEndMicroserviceBenchmark = new EndToEndMicroserviceBenchmark();
+        List<ExecutionMode> modes = list(config.getProperty("execution", "coordinated")).stream()
+            .map(ExecutionMode::parse).toList();
+        boolean timePhases = Boolean.parseBoolean(config.getProperty("phases", "false"));
+        String stores = config.getProperty("stores", "real");
+        if (!stores.equals("real") && !stores.equals("standin")) {
+            throw new IllegalArgumentException("Unknown stores: " + stores);
+        }
+        StandInStores standIns = stores.equals("standin") ? new StandInStores(config) : null;
+        Bulkheads bulkheads = new Bulkheads(config);
+        String traceFile = config.getProperty("trace");
+        if (traceFile != null && traceFile.equals(config.getProperty("replay.trace"))) {
+            throw new IllegalArgumentException("Can't record to the trace being replayed: " + traceFile);
+        }
+        TraceRecorder trace = traceFile == null ? null : TraceRecorder.open(Paths.get(traceFile));
+        if (trace != null) {
+            trace.pause();
+        }
+        // Stand-ins only inject faults, and the trace only records, while workloads run, not while they load
+        Runner run = standIns == null && trace == null ? measure : (workload, operation, reporter) -> {
+            if (standIns != null) {
+                standIns.startFaults();
+            }
+            if (trace != null) {
+                trace.resume();
+            }
+            try {
+                measure.run(workload, operation, reporter);
+            } finally {
+                if (trace != null) {
+                    trace.pause();
+                }
+                if (standIns != null) {
+                    standIns.stopFaults();
+                }
+            }
+        };
 
-        System.out.println("Running read-heavy workload (90% reads, 50% cross-store)");
-        endToEndMicroserviceBenchmark.runBenchmark(1, 10000, 0.9, 0.5);
+        for (ExecutionMode mode : modes) {
+            BenchmarkEnvironment environment = new BenchmarkEnvironment(mode, timePhases, standIns, trace, bulkheads);
+            // Rows for the default mode keep their plain names
+            String suffix = mode == ExecutionMode.COORDINATED ? "" : "-" + mode.label();
+            for (String workload : workloads) {
+                switch (workload) {
+                    case "tpcc": {
+                        System.out.println("Running TPC-C Benchmark");
+                        TPCCBenchmark tpcc = new TPCCBenchmark(environment,
+                            Integer.parseInt(config.getProperty("tpcc.warehouses", "2")),
+                            Double.parseDouble(config.getProperty("tpcc.cardinality", "1.0")),
+                            Integer.parseInt(config.getProperty("tpcc.loaders", "8")));
+                        tpcc.setMix(list(config.getProperty("tpcc.mix", "45,43,4,4,4")).stream()
+                            .mapToInt(Integer::parseInt).toArray());
+                        run.run("tpcc" + suffix, tpcc::runOperation, reporter(environment, tpcc));
+                        tpcc.getCoordinator().printCoordinatorStats();
+                        break;
+                    }
+                    case "hotel": {
+                        double searchRatio = Double.parseDouble(config.getProperty("hotel.searchRatio", "0.8"));
+                        System.out.printf("Running Hotel Benchmark (%.0f%% searches)\n", searchRatio * 100);
+                        HotelBenchmark hotel = new HotelBenchmark(environment);
+                        hotel.setSearchRatio(searchRatio);
+                        run.run("hotel" + suffix, hotel::runOperation, reporter(environment, null));
+                        hotel.getCoordinator().printCoordinatorStats();
+                        break;
+                    }
+                    case "microservice": {
+                        System.out.println("Running Microservice Benchmark");
+                        EndToEndMicroserviceBenchmark microservice = new EndToEndMicroserviceBenchmark(environment);
+                        for (String mix : list(config.getProperty("microservice.mixes", "0.9:0.5,0.3:0.5,0.5:0.8"))) {
+                            String[] ratios = mix.split(":");
+                            double readRatio = Double.parseDouble(ratios[0]);
+                            double crossStoreRatio = Double.parseDouble(ratios[1]);
+                            System.out.printf("Running %.0f%% reads, %.0f%% cross-store\n", readRatio * 100,
+                                crossStoreRatio * 100);
+                            run.run("microservice-" + mix + suffix,
+                                () -> microservice.runOperation(readRatio, crossStoreRatio),
+                                reporter(environment, null));
+                        }
+                        microservice.getCoordinator().printCoordinatorStats();
+                        break;
+                    }
+                    case "cart": {
+                        System.out.println("Running Cart Benchmark");
+                        CartBenchmark cart = new CartBenchmark(environment);
+                        cart.setMix(list(config.getProperty("cart.mix", "60,20,5,15")).stream()
+                            .mapToInt(Integer::parseInt).toArray());
+                        run.run("cart" + suffix, cart::runOperation, reporter(environment, null));
+                        cart.getCoordinator().printCoordinatorStats();
+                        break;
+                    }
+                    case "ycsb": {
+                        System.out.println("Running YCSB Benchmark");
+                        YCSBBenchmark ycsb = new YCSBBenchmark(environment,
+                            list(config.getProperty("ycsb.stores", "postgres")),
+                            YCSBBenchmark.Routing.valueOf(config.getProperty("ycsb.routing", "all").toUpperCase(Locale.ROOT)),
+                            Long.parseLong(config.getProperty("ycsb.records", "100000")),
+                            Integer.parseInt(config.getProperty("ycsb.fieldCount", "10")),
+                            Integer.parseInt(config.getProperty("ycsb.fieldLength", "100")),
+                            Integer.parseInt(config.getProperty("ycsb.loaders", "8")));
+                        for (String name : list(config.getProperty("ycsb.workloads", "a,b,c,d,e,f"))) {
+                            YCSBBenchmark.Workload ycsbWorkload = YCSBBenchmark.Workload.valueOf(name.toUpperCase(Locale.ROOT));
+                            String distributionName = config.getProperty("ycsb.distribution");
+                            YCSBBenchmark.Distribution distribution = distributionName == null
+                                ? ycsbWorkload.getDefaultDistribution()
+                                : YCSBBenchmark.Distribution.valueOf(distributionName.toUpperCase(Locale.ROOT));
+                            for (String skew : list(config.getProperty("ycsb.skew", "0.5,0.8,0.9,0.99"))) {
+                                System.out.printf("Running YCSB %s, %s keys, skew %s\n", name, distribution, skew);
+                                ycsb.configure(ycsbWorkload, distribution, Double.parseDouble(skew));
+                                run.run(String.format("ycsb-%s-%s-%s%s", name,
+                                        distribution.name().toLowerCase(Locale.ROOT), skew, suffix),
+                                    ycsb::runOperation, reporter(environment, ycsb));
+                            }
+                        }
+                        ycsb.getCoordinator().printCoordinatorStats();
+                        break;
+                    }
+                    case "replay": {
+                        String file = config.getProperty("replay.trace");
+                        if (file == null) {
+                            throw new IllegalArgumentException("The replay workload needs replay.trace");
+                        }
+                        System.out.println("Replaying " + file);
+                        TraceReplay replay = new TraceReplay(environment, Trace.read(Paths.get(file)));
+                        if (standIns != null) {
+                            standIns.startFaults();
+                        }
+                        try {
+                            runner.replay("replay" + suffix, replay, list(config.getProperty("replay.speed", "1"))
+                                .stream().mapToDouble(Double::parseDouble).toArray());
+                        } finally {
+                            if (standIns != null) {
+                                standIns.stopFaults();
+                            }
+                        }
+                        replay.getCoordinator().printCoordinatorStats();
+                        break;
+                    }
+                    default:
+                        throw new IllegalArgumentException("Unknown workload: " + workload);
+                }
+            }
+        }
 
-        System.out.println("Running write-heavy workload (30% reads, 50% cross-store)");
-        endToEndMicroserviceBenchmark.runBenchmark(1, 10000, 0.3, 0.5);
+        if (trace != null) {
+            trace.printStats();
+            trace.close();
+        }
+        String output = config.getProperty("output", "results/epoxy");
+        runner.writeJson(Paths.get(output + ".json"));
+        runner.writeCsv(Paths.get(output + ".csv"));
+        System.exit(0);
+    }
 
-        System.out.println("Running mixed workload (50% reads, 80% cross-store)");
-        endToEndMicroserviceBenchmark.runBenchmark(1, 10000, 0.5, 0.8);
+    @FunctionalInterface
+    private interface Runner {
+        // reporter may be null
+        void run(String workload, OpenLoopDriver.Operation operation, ScalingRunner.Reporter reporter)
+            throws InterruptedException;
+    }
 
-        System.out.println("Running Cart Benchmark");
-        CartBenchmark cartBenchmark = new CartBenchmark();
-        cartBenchmark.runBenchmark(1, 10000);
+    // The workload's own figures, plus the phase breakdown if phases are timed; null if neither
+    private static ScalingRunner.Reporter reporter(BenchmarkEnvironment environment, ScalingRunner.Reporter workload) {
+        if (environment.getPhaseTimings() == null) {
+            return workload;
+        }
+        return workload == null ? environment : ScalingRunner.Reporter.combine(workload, environment);
+    }
 
-        System.exit(0);
+    private static Runner runner(Properties config, ScalingRunner runner, int[] threads) {
+        String mode = config.getProperty("mode", "closed");
+        switch (mode) {
+            case "closed":
+                return (workload, operation, reporter) -> {
+                    if (reporter == null) {
+                        runner.sweep(workload, threads, operation);
+                    } else {
+                        runner.sweep(workload, threads, operation, reporter);
+                    }
+                };
+            case "open": {
+                int workers = Integer.parseInt(config.getProperty("workers", "64"));
+                OpenLoopDriver driver = new OpenLoopDriver(workers,
+                    OpenLoopDriver.Arrivals.valueOf(config.getProperty("arrivals", "poisson").toUpperCase(Locale.ROOT)));
+                double startRate = Double.parseDouble(config.getProperty("rate.start", "100"));
+                double endRate = Double.parseDouble(config.getProperty("rate.end", "5000"));
+                int steps = Integer.parseInt(config.getProperty("rate.steps", "10"));
+                return (workload, operation, reporter) ->
+                    runner.ramp(workload, driver, workers, startRate, endRate, steps, operation);
+            }
+            default:
+                throw new IllegalArgumentException("Unknown mode: " + mode);
+        }
+    }
+
+    static Properties parseConfig(String[] args) throws IOException {
+        Properties overrides = new Properties();
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (eq < 0) {
+                throw new IllegalArgumentException("Expected key=value, got: " + arg);
+            }
+            String key = arg.startsWith("--") ? arg.substring(2, eq) : arg.substring(0, eq);
+            overrides.setProperty(key, arg.substring(eq + 1));
+        }
+        Properties config = new Properties();
+        String file = overrides.getProperty("config");
+        if (file != null) {
+            try (Reader reader = Files.newBufferedReader(Path.of(file))) {
+                config.load(reader);
+            }
+        }
+        config.putAll(overrides);
+        return config;
+    }
+
+    private static List<String> list(String value) {
+        return Arrays.stream(value.split(",")).map(String::trim).filter(s -> !s.isEmpty()).toList();
+    }
+
+    // Accepts 250ms, 10s, 2m; a bare number is seconds
+    static long parseMillis(String value) {
+        String v = value.trim().toLowerCase(Locale.ROOT);
+        if (v.endsWith("ms")) {
+            return Long.parseLong(v.substring(0, v.length() - 2).trim());
+        }
+        if (v.endsWith("m")) {
+            return TimeUnit.MINUTES.toMillis(Long.parseLong(v.substring(0, v.length() - 1).trim()));
+        }
+        if (v.endsWith("s")) {
+            v = v.substring(0, v.length() - 1).trim();
+        }
+        return (long) (Double.parseDouble(v) * 1000);
     }
 }
@@ -0,0 +1,113 @@
+package org.example;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Batches primary database commits so concurrent transactions share one WAL flush.
+// There is no committer thread: the first caller to find no flush in progress becomes
+// the leader, waits briefly for transactions still validating to join, then commits
+// once on behalf of its whole batch. Followers block until their batch is done.
+final class GroupCommitter {
+    private final Connection primaryDb;
+    private final int maxBatchSize;
+    private final long maxWaitNanos;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition changed = lock.newCondition();
+    // Transactions between announce() and commit()/withdraw(). The leader only
+    // waits for joiners while this is non-zero, so a lone transaction never waits.
+    private final AtomicInteger inPipeline = new AtomicInteger();
+    private Batch filling = new Batch();
+    private boolean flushing;
+
+    private long batches;
+    private long batchedCommits;
+
+    private static final class Batch {
+        int size;
+        boolean done;
+        SQLException failure;
+    }
+
+    GroupCommitter(Connection primaryDb, int maxBatchSize, long maxWait, TimeUnit unit) {
+        this.primaryDb = primaryDb;
+        this.maxBatchSize = maxBatchSize;
+        this.maxWaitNanos = unit.toNanos(maxWait);
+    }
+
+    void announce() {
+        inPipeline.incrementAndGet();
+    }
+
+    void withdraw() {
+        inPipeline.decrementAndGet();
+    }
+
+    // Blocks until the primary commit covering this transaction has completed
+    void commit() throws SQLException {
+        lock.lock();
+        try {
+            inPipeline.decrementAndGet();
+            Batch batch = filling;
+            batch.size++;
+            changed.signalAll();
+
+            while (!batch.done) {
+                if (!flushing && filling == batch) {
+                    flushAsLeader(batch);
+                } else {
+                    changed.awaitUninterruptibly();
+                }
+            }
+            if (batch.failure != null) {
+                throw batch.failure;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Called holding lock; drops it for the duration of the flush
+    private void flushAsLeader(Batch batch) {
+        flushing = true;
+        long remaining = maxWaitNanos;
+        while (batch.size < maxBatchSize && inPipeline.get() > 0 && remaining > 0) {
+            try {
+                remaining = changed.awaitNanos(remaining);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        // Later arrivals start the next batch while this one is flushing
+        filling = new Batch();
+
+        lock.unlock();
+        try {
+            primaryDb.commit();
+        } catch (SQLException e) {
+            batch.failure = e;
+        } finally {
+            lock.lock();
+        }
+
+        batch.done = true;
+        batches++;
+        batchedCommits += batch.size;
+        flushing = false;
+        changed.signalAll();
+    }
+
+    double getAverageBatchSize() {
+        lock.lock();
+        try {
+            return batches == 0 ? 0.0 : (double) batchedCommits / batches;
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package org.example;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Detects keys that keep failing validation and serializes transactions on them.
+// Every validation abort bumps an exponentially decaying abort score for the keys
+// involved, and once a key is tracked its commits are counted too. A key is hot
+// while it has seen enough recent aborts and a high enough abort rate. Transactions
+// that declare or have already failed on a hot key take that key's fair (FIFO) lock
+// before they begin, so they run one after another instead of aborting each other.
+// Cold keys are never tracked on the commit path and stay fully optimistic.
+final class HotKeyScheduler {
+    private static final double HALF_LIFE_NANOS = 1_000_000_000.0;
+    private static final double MIN_ABORTS = 4.0;
+    private static final double MIN_ABORT_RATE = 0.2;
+    private static final int MAX_TRACKED_KEYS = 10_000;
+
+    private final ConcurrentHashMap<String, KeyStats> stats = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, ReentrantLock> queues = new ConcurrentHashMap<>();
+    private final LongAdder serializedAttempts = new LongAdder();
+
+    private static final class KeyStats {
+        private double aborts;
+        private double commits;
+        private long lastUpdateNanos = System.nanoTime();
+
+        synchronized void add(double abortDelta, double commitDelta, long now) {
+            decay(now);
+            aborts += abortDelta;
+            commits += commitDelta;
+        }
+
+        synchronized boolean isHot(long now) {
+            decay(now);
+            return aborts >= MIN_ABORTS && aborts / (aborts + commits) >= MIN_ABORT_RATE;
+        }
+
+        private void decay(long now) {
+            double factor = Math.pow(0.5, (now - lastUpdateNanos) / HALF_LIFE_NANOS);
+            aborts *= factor;
+            commits *= factor;
+            lastUpdateNanos = now;
+        }
+    }
+
+    void recordAbort(Collection<String> keys) {
+        long now = System.nanoTime();
+        for (String key : keys) {
+            KeyStats keyStats = stats.get(key);
+            if (keyStats == null) {
+                if (stats.size() >= MAX_TRACKED_KEYS) {
+                    continue;
+                }
+                keyStats = stats.computeIfAbsent(key, k -> new KeyStats());
+            }
+            keyStats.add(1, 0, now);
+        }
+    }
+
+    void recordCommit(Set<String> keys) {
+        if (stats.isEmpty()) {
+            return;
+        }
+        long now = 0;
+        for (String key : keys) {
+            KeyStats keyStats = stats.get(key);
+            if (keyStats != null) {
+                if (now == 0) {
+                    now = System.nanoTime();
+                }
+                keyStats.add(0, 1, now);
+            }
+        }
+    }
+
+    boolean isHot(String key) {
+        KeyStats keyStats = stats.get(key);
+        return keyStats != null && keyStats.isHot(System.nanoTime());
+    }
+
+    boolean anyHot(Collection<String> keys) {
+        for (String key : keys) {
+            if (isHot(key)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Locks the hot keys among `keys` in sorted order (so two queued transactions can't
+    // deadlock) and returns them for unlock(). Returns an empty list if none are hot.
+    List<ReentrantLock> lockHotKeys(Collection<String> keys) {
+        if (keys.isEmpty() || !anyHot(keys)) {
+            return Collections.emptyList();
+        }
+        TreeSet<String> hot = new TreeSet<>();
+        for (String key : keys) {
+            if (isHot(key)) {
+                hot.add(key);
+            }
+        }
+        List<ReentrantLock> held = new ArrayList<>(hot.size());
+        for (String key : hot) {
+            ReentrantLock queue = queues.computeIfAbsent(key, k -> new ReentrantLock(true));
+            queue.lock();
+            held.add(queue);
+        }
+        serializedAttempts.increment();
+        return held;
+    }
+
+    void unlock(List<ReentrantLock> held) {
+        for (int i = held.size() - 1; i >= 0; i--) {
+            held.get(i).unlock();
+        }
+    }
+
+    void print() {
+        List<String> hot = new ArrayList<>();
+        long now = System.nanoTime();
+        stats.forEach((key, keyStats) -> {
+            if (keyStats.isHot(now)) {
+                hot.add(key);
+            }
+        });
+        Collections.sort(hot);
+        System.out.printf("Hot keys: %s (%d serialized attempts)\n", hot, serializedAttempts.sum());
+    }
+}
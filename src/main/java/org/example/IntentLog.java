@@ -0,0 +1,305 @@
+package org.example;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.zip.CRC32C;
+
+import org.example.shims.DataStoreShim;
+
+// Coordinator-local, append-only log of commit intents on memory-mapped segment files.
+// Each transaction records BEGIN along with its first WRITE, one WRITE per key it touches,
+// then PREPARED, COMMITTED and FINALIZED (or ABORTED). PREPARED and COMMITTED are forced
+// to disk before the coordinator moves on; concurrent callers share a single force.
+// Read-only transactions have nothing to recover and log nothing. On startup the
+// segments are scanned and every unresolved transaction is finalized on each shim
+// if it reached COMMITTED, or rolled back by key otherwise.
+//
+// Shims are identified by their position in the coordinator's store list, so they
+// must be registered in the same order across restarts.
+final class IntentLog {
+    static final byte BEGIN = 1;
+    static final byte WRITE = 2;
+    static final byte PREPARED = 3;
+    static final byte COMMITTED = 4;
+    static final byte FINALIZED = 5;
+    static final byte ABORTED = 6;
+
+    // Small segments keep recovery scans short: resolved segments are deleted as we go
+    private static final int SEGMENT_SIZE = 4 * 1024 * 1024;
+    // length(2) + type(1) + txnId(8) ... crc(4)
+    private static final int HEADER_SIZE = 11;
+    private static final int TRAILER_SIZE = 4;
+    // Lengths are stored as unsigned shorts; segments are far larger, so a record always fits
+    private static final int MAX_RECORD_SIZE = 0xFFFF;
+    private static final String SEGMENT_PREFIX = "intent-";
+    private static final String SEGMENT_SUFFIX = ".log";
+
+    private final Path directory;
+    private final List<DataStoreShim> shims;
+    private final CRC32C crc = new CRC32C();
+
+    private Segment current;
+    // Oldest first; a segment can be deleted once every transaction begun in it,
+    // and in every older segment, has resolved
+    private final ArrayDeque<Segment> segments = new ArrayDeque<>();
+
+    private final Object syncLock = new Object();
+
+    private static final class Segment {
+        final long id;
+        final Path path;
+        final FileChannel channel;
+        final MappedByteBuffer buffer;
+        int unresolved;
+        volatile int durablePosition;
+
+        Segment(long id, Path path) throws IOException {
+            this.id = id;
+            this.path = path;
+            this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, SEGMENT_SIZE);
+        }
+
+        void close() throws IOException {
+            channel.close();
+        }
+    }
+
+    // Position of an appended record, used to wait for it to become durable
+    static final class Mark {
+        private Segment segment;
+        private int position;
+    }
+
+    private IntentLog(Path directory, List<DataStoreShim> shims) {
+        this.directory = directory;
+        this.shims = shims;
+    }
+
+    static IntentLog open(Path directory, List<DataStoreShim> shims) throws IOException {
+        Files.createDirectories(directory);
+        IntentLog log = new IntentLog(directory, shims);
+        log.recover();
+        log.current = new Segment(0, directory.resolve(segmentName(0)));
+        log.segments.add(log.current);
+        return log;
+    }
+
+    void logWrite(TransactionContext txn, DataStoreShim shim, String key) {
+        int shimIndex = indexOf(shim);
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        if (HEADER_SIZE + 4 + keyBytes.length + TRAILER_SIZE > MAX_RECORD_SIZE) {
+            throw new IllegalArgumentException("Key of " + keyBytes.length + " bytes is too long for the intent log (max "
+                + (MAX_RECORD_SIZE - HEADER_SIZE - 4 - TRAILER_SIZE) + ")");
+        }
+        synchronized (this) {
+            if (!txn.logBegun) {
+                append(BEGIN, txn.getTxnId(), null, 0, null);
+                txn.logSegment = current.id;
+                txn.logBegun = true;
+                current.unresolved++;
+            }
+            append(WRITE, txn.getTxnId(), keyBytes, shimIndex, null);
+        }
+    }
+
+    synchronized void logMarker(byte type, TransactionContext txn, Mark mark) {
+        append(type, txn.getTxnId(), null, 0, mark);
+    }
+
+    // FINALIZED or ABORTED; also lets fully resolved segments be removed
+    synchronized void logResolved(byte type, TransactionContext txn) {
+        append(type, txn.getTxnId(), null, 0, null);
+        for (Segment segment : segments) {
+            if (segment.id == txn.logSegment) {
+                segment.unresolved--;
+                break;
+            }
+        }
+        retireSegments();
+    }
+
+    // Group fsync: one force covers every record appended before it started
+    void sync(Mark mark) {
+        Segment segment = mark.segment;
+        if (segment.durablePosition >= mark.position) {
+            return;
+        }
+        synchronized (syncLock) {
+            if (segment.durablePosition >= mark.position) {
+                return;
+            }
+            int target;
+            synchronized (this) {
+                target = segment.buffer.position();
+            }
+            int from = segment.durablePosition;
+            segment.buffer.force(from, target - from);
+            segment.durablePosition = target;
+        }
+    }
+
+    // Called holding this
+    private void append(byte type, long txnId, byte[] key, int shimIndex, Mark mark) {
+        int length = HEADER_SIZE + (key == null ? 0 : 4 + key.length) + TRAILER_SIZE;
+        if (current.buffer.remaining() < length + 2) {
+            rollOver();
+        }
+        MappedByteBuffer buffer = current.buffer;
+        int start = buffer.position();
+        buffer.putShort((short) length);
+        buffer.put(type);
+        buffer.putLong(txnId);
+        if (key != null) {
+            buffer.putShort((short) shimIndex);
+            buffer.putShort((short) key.length);
+            buffer.put(key);
+        }
+        crc.reset();
+        crc.update(buffer.duplicate().position(start + 2).limit(buffer.position()));
+        buffer.putInt((int) crc.getValue());
+        if (mark != null) {
+            mark.segment = current;
+            mark.position = buffer.position();
+        }
+    }
+
+    private void rollOver() {
+        // Make the tail of the old segment durable before moving on; recovery
+        // reads segments in order and stops at the first torn record. Not under
+        // syncLock, which is always taken before this monitor.
+        current.buffer.force();
+        current.durablePosition = current.buffer.position();
+        long id = current.id + 1;
+        try {
+            current = new Segment(id, directory.resolve(segmentName(id)));
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to roll intent log segment", e);
+        }
+        segments.add(current);
+        retireSegments();
+    }
+
+    private void retireSegments() {
+        while (segments.size() > 1 && segments.peekFirst().unresolved == 0) {
+            Segment retired = segments.pollFirst();
+            try {
+                retired.close();
+                Files.deleteIfExists(retired.path);
+            } catch (IOException e) {
+                throw new RuntimeException("Failed to delete intent log segment " + retired.path, e);
+            }
+        }
+    }
+
+    private int indexOf(DataStoreShim shim) {
+        shim = shim.unwrap();
+        for (int i = 0; i < shims.size(); i++) {
+            if (shims.get(i).unwrap() == shim) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("Shim is not registered with the coordinator");
+    }
+
+    private static String segmentName(long id) {
+        return String.format("%s%020d%s", SEGMENT_PREFIX, id, SEGMENT_SUFFIX);
+    }
+
+    // Per-transaction state rebuilt from the log
+    private static final class InDoubt {
+        byte state;
+        final List<Map.Entry<Integer, String>> writes = new ArrayList<>();
+    }
+
+    private void recover() throws IOException {
+        long startNanos = System.nanoTime();
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            stream.forEach(files::add);
+        }
+        if (files.isEmpty()) {
+            return;
+        }
+        Collections.sort(files);
+
+        Map<Long, InDoubt> txns = new LinkedHashMap<>();
+        for (Path file : files) {
+            scanSegment(file, txns);
+        }
+
+        int finalized = 0;
+        int rolledBack = 0;
+        for (Map.Entry<Long, InDoubt> entry : txns.entrySet()) {
+            InDoubt inDoubt = entry.getValue();
+            long txnId = entry.getKey();
+            TransactionContext txn = new TransactionContext(txnId, txnId, txnId, TransactionContext.NO_TXNS);
+            for (Map.Entry<Integer, String> write : inDoubt.writes) {
+                if (write.getKey() < shims.size()) {
+                    txn.addModifiedKey(shims.get(write.getKey()), write.getValue());
+                }
+            }
+            if (inDoubt.state == COMMITTED) {
+                for (DataStoreShim shim : shims) {
+                    shim.finalizeCommit(txn);
+                }
+                finalized++;
+            } else {
+                for (DataStoreShim shim : shims) {
+                    shim.abortTransaction(txn);
+                }
+                rolledBack++;
+            }
+        }
+
+        for (Path file : files) {
+            Files.delete(file);
+        }
+        System.out.printf("Intent log recovery: %d finalized, %d rolled back in %d ms\n",
+            finalized, rolledBack, (System.nanoTime() - startNanos) / 1_000_000);
+    }
+
+    private void scanSegment(Path file, Map<Long, InDoubt> txns) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            CRC32C check = new CRC32C();
+            while (buffer.remaining() >= HEADER_SIZE + TRAILER_SIZE) {
+                int start = buffer.position();
+                int length = buffer.getShort(start) & 0xFFFF;
+                // A zero length is unwritten space; anything that doesn't check out is a torn tail
+                if (length < HEADER_SIZE + TRAILER_SIZE || start + length > buffer.limit()) {
+                    return;
+                }
+                check.reset();
+                check.update(buffer.duplicate().position(start + 2).limit(start + length - TRAILER_SIZE));
+                if ((int) check.getValue() != buffer.getInt(start + length - TRAILER_SIZE)) {
+                    return;
+                }
+
+                byte type = buffer.get(start + 2);
+                long txnId = buffer.getLong(start + 3);
+                if (type == FINALIZED || type == ABORTED) {
+                    // Resolved before the crash; forget it so only in-doubt transactions stay in memory
+                    txns.remove(txnId);
+                    buffer.position(start + length);
+                    continue;
+                }
+                InDoubt inDoubt = txns.computeIfAbsent(txnId, id -> new InDoubt());
+                if (type == WRITE) {
+                    int shimIndex = buffer.getShort(start + HEADER_SIZE);
+                    int keyLength = buffer.getShort(start + HEADER_SIZE + 2) & 0xFFFF;
+                    byte[] key = new byte[keyLength];
+                    buffer.get(start + HEADER_SIZE + 4, key);
+                    inDoubt.writes.add(Map.entry(shimIndex, new String(key, StandardCharsets.UTF_8)));
+                } else if (type > inDoubt.state) {
+                    inDoubt.state = type;
+                }
+                buffer.position(start + length);
+            }
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package org.example;
+
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+// Where transactions spend their time, summed per phase. Begin, validate, prepare, commit
+// and finalize are timed by the coordinator; reads and writes by TimedShim wrappers around
+// the stores. Reads count only the time the transaction's own thread spends waiting, so a
+// prefetch running in the background is counted once, when its result is picked up.
+public class PhaseTimings {
+    public enum Phase {
+        // Admission, ID and active list
+        BEGIN,
+        READS,
+        WRITES,
+        // Includes waiting for the commit critical section
+        VALIDATE,
+        PREPARE,
+        // Primary commit and intent log
+        COMMIT,
+        // Store finalization and leaving the active list
+        FINALIZE
+    }
+
+    private static final Phase[] PHASES = Phase.values();
+
+    private final LongAdder[] nanos = new LongAdder[PHASES.length];
+    private final LongAdder[] calls = new LongAdder[PHASES.length];
+
+    public PhaseTimings() {
+        for (int i = 0; i < PHASES.length; i++) {
+            nanos[i] = new LongAdder();
+            calls[i] = new LongAdder();
+        }
+    }
+
+    public void record(Phase phase, long elapsedNanos) {
+        nanos[phase.ordinal()].add(elapsedNanos);
+        calls[phase.ordinal()].increment();
+    }
+
+    // Records the time since the previous mark and returns the new one, for timing
+    // consecutive phases with one clock read each
+    public long lap(Phase phase, long sinceNanos) {
+        long now = System.nanoTime();
+        record(phase, now - sinceNanos);
+        return now;
+    }
+
+    public void reset() {
+        for (int i = 0; i < PHASES.length; i++) {
+            nanos[i].reset();
+            calls[i].reset();
+        }
+    }
+
+    // Every transaction begins once, so begins are the transaction count
+    public long getTransactions() {
+        return calls[Phase.BEGIN.ordinal()].sum();
+    }
+
+    public long getNanos(Phase phase) {
+        return nanos[phase.ordinal()].sum();
+    }
+
+    // Mean microseconds per transaction in each phase, keyed e.g. "phase_validate_us"
+    public Map<String, Double> report() {
+        long transactions = getTransactions();
+        Map<String, Double> figures = new LinkedHashMap<>();
+        for (Phase phase : PHASES) {
+            figures.put("phase_" + phase.name().toLowerCase(Locale.ROOT) + "_us",
+                transactions == 0 ? 0.0 : getNanos(phase) / 1e3 / transactions);
+        }
+        return figures;
+    }
+
+    public void print(String name) {
+        long transactions = getTransactions();
+        long total = 0;
+        for (Phase phase : PHASES) {
+            total += getNanos(phase);
+        }
+        System.out.printf("%s phases over %d transactions (mean us per transaction, share):\n", name, transactions);
+        for (Phase phase : PHASES) {
+            long phaseNanos = getNanos(phase);
+            System.out.printf("  %-9s %10.1f  %5.1f%%\n", phase.name().toLowerCase(Locale.ROOT),
+                transactions == 0 ? 0.0 : phaseNanos / 1e3 / transactions,
+                total == 0 ? 0.0 : 100.0 * phaseNanos / total);
+        }
+    }
+}
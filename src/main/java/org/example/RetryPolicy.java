@@ -0,0 +1,59 @@
+package org.example;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+// How EpoxyCoordinator.execute retries transactions that fail validation: capped
+// exponential backoff with full jitter, plus a retry budget so that retries can
+// never add more than a fixed fraction of extra load on top of first attempts.
+public class RetryPolicy {
+    // Budget is kept in thousandths of a retry so deposits can be fractional
+    private static final long TOKEN_SCALE = 1000;
+
+    private final int maxAttempts;
+    private final long baseDelayNanos;
+    private final long maxDelayNanos;
+    private final long depositPerAttempt;
+    private final long maxBalance;
+    private long balance;
+
+    // retryBudgetRatio is the allowed retries per first attempt, e.g. 0.2 = at most 20% extra
+    public RetryPolicy(int maxAttempts, long baseDelay, long maxDelay, TimeUnit unit, double retryBudgetRatio) {
+        this.maxAttempts = maxAttempts;
+        this.baseDelayNanos = unit.toNanos(baseDelay);
+        this.maxDelayNanos = unit.toNanos(maxDelay);
+        this.depositPerAttempt = Math.round(retryBudgetRatio * TOKEN_SCALE);
+        // Allow a burst of retries right after startup or a quiet period
+        this.maxBalance = 100 * TOKEN_SCALE;
+        this.balance = 10 * TOKEN_SCALE;
+    }
+
+    public static RetryPolicy defaults() {
+        return new RetryPolicy(5, 1, 50, TimeUnit.MILLISECONDS, 0.2);
+    }
+
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    synchronized void recordFirstAttempt() {
+        balance = Math.min(maxBalance, balance + depositPerAttempt);
+    }
+
+    synchronized boolean tryAcquireRetry() {
+        if (balance < TOKEN_SCALE) {
+            return false;
+        }
+        balance -= TOKEN_SCALE;
+        return true;
+    }
+
+    // Full jitter: uniform in [0, min(maxDelay, baseDelay * 2^(attempt - 1))]
+    long backoffNanos(int attempt) {
+        long ceiling = baseDelayNanos << Math.min(attempt - 1, 30);
+        if (ceiling <= 0 || ceiling > maxDelayNanos) {
+            ceiling = maxDelayNanos;
+        }
+        return ThreadLocalRandom.current().nextLong(ceiling + 1);
+    }
+}
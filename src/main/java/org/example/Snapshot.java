@@ -0,0 +1,21 @@
+package org.example;
+
+// What a transaction can see: everything below xmin, plus the listed transactions that
+// committed at or above it. One snapshot is shared by every transaction that takes its
+// snapshot between the same two completions, since nothing visible changes in between.
+// The committed IDs may include ones above a given reader's own ID; each reader only
+// looks at the prefix below itself.
+//
+// Never modified while referenced. The count is maintained under the coordinator's
+// active list lock; once it drops to zero on a superseded snapshot the array may be
+// reused for a new one.
+final class Snapshot {
+    final long xmin;
+    final long[] committed;
+    int refs;
+
+    Snapshot(long xmin, long[] committed) {
+        this.xmin = xmin;
+        this.committed = committed;
+    }
+}
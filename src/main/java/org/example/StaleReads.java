@@ -0,0 +1,214 @@
+package org.example;
+
+import java.sql.SQLException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.example.shims.DataStoreShim;
+
+// Serves EpoxyCoordinator.readStale. Values are cached per store and key together with
+// how long they are known to have stayed current: until the coordinator commits a write
+// to that key, or, for values read while other commits were in flight, only up to the
+// snapshot they were read at. A read is served from the cache while that point is within
+// the caller's bound; otherwise it goes to the store through a shared read-only "stable"
+// snapshot, which is advanced in the background so misses rarely need a fresh one.
+//
+// Only commits made through this coordinator are seen.
+final class StaleReads {
+    private static final long ADVANCE_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+    private static final int MAX_ENTRIES = 100_000;
+    private static final long CURRENT = Long.MAX_VALUE;
+
+    private final EpoxyCoordinator coordinator;
+    private final ConcurrentHashMap<DataStoreShim, ConcurrentHashMap<String, Entry>> caches = new ConcurrentHashMap<>();
+    private final AtomicInteger size = new AtomicInteger();
+    // Bumped after every writing commit becomes visible
+    private final AtomicLong commitSeq = new AtomicLong();
+
+    private final Object advanceLock = new Object();
+    private volatile Stable stable;
+    private volatile boolean stableUsed;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder advances = new LongAdder();
+    private final LongAdder servedStalenessNanos = new LongAdder();
+    private final AtomicLong maxStalenessNanos = new AtomicLong();
+
+    private static final class Entry {
+        final String value;
+        // System.nanoTime() up to which value was known to be current, or CURRENT
+        final long validUntil;
+
+        Entry(String value, long validUntil) {
+            this.value = value;
+            this.validUntil = validUntil;
+        }
+    }
+
+    // A read-only transaction shared by concurrent readers. The count starts at one for
+    // the reference held in `stable`; whoever drops it to zero ends the transaction.
+    private static final class Stable {
+        final TransactionContext txn;
+        final long takenAt;
+        final long seqAtTake;
+        final AtomicInteger refs = new AtomicInteger(1);
+
+        Stable(TransactionContext txn, long takenAt, long seqAtTake) {
+            this.txn = txn;
+            this.takenAt = takenAt;
+            this.seqAtTake = seqAtTake;
+        }
+
+        boolean retain() {
+            for (int r = refs.get(); r > 0; r = refs.get()) {
+                if (refs.compareAndSet(r, r + 1)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    StaleReads(EpoxyCoordinator coordinator, ScheduledExecutorService scheduler) {
+        this.coordinator = coordinator;
+        scheduler.scheduleWithFixedDelay(this::advanceInBackground, ADVANCE_NANOS, ADVANCE_NANOS, TimeUnit.NANOSECONDS);
+    }
+
+    String read(DataStoreShim shim, String key, long maxStalenessNanos) throws SQLException {
+        DataStoreShim store = shim.unwrap();
+        ConcurrentHashMap<String, Entry> cache = caches.computeIfAbsent(store, s -> new ConcurrentHashMap<>());
+        long now = System.nanoTime();
+        Entry cached = cache.get(key);
+        if (cached != null && (cached.validUntil == CURRENT || now - cached.validUntil <= maxStalenessNanos)) {
+            hits.increment();
+            recordStaleness(cached.validUntil == CURRENT ? 0 : now - cached.validUntil);
+            return cached.value;
+        }
+
+        misses.increment();
+        Stable snapshot = acquireStable(now, maxStalenessNanos);
+        try {
+            String value = shim.query(snapshot.txn, key);
+            long[] validUntil = new long[1];
+            // Atomic with onCommit's invalidation of the same key: either we see its sequence
+            // bump and only vouch for the snapshot time, or it runs after us and invalidates
+            cache.compute(key, (k, old) -> {
+                validUntil[0] = commitSeq.get() == snapshot.seqAtTake ? CURRENT : snapshot.takenAt;
+                if (old == null) {
+                    if (size.get() >= MAX_ENTRIES) {
+                        return null;
+                    }
+                    size.incrementAndGet();
+                    return new Entry(value, validUntil[0]);
+                }
+                // Keep whichever entry is known current for longer
+                boolean newer = old.validUntil != CURRENT
+                    && (validUntil[0] == CURRENT || validUntil[0] - old.validUntil > 0);
+                return newer ? new Entry(value, validUntil[0]) : old;
+            });
+            recordStaleness(validUntil[0] == CURRENT ? 0 : Math.max(0, now - validUntil[0]));
+            return value;
+        } finally {
+            release(snapshot);
+        }
+    }
+
+    // Called once a writing commit is visible to new snapshots
+    void onCommit(DataStoreShim store, Set<String> keys) {
+        ConcurrentHashMap<String, Entry> cache = caches.get(store.unwrap());
+        if (cache == null) {
+            return;
+        }
+        long now = System.nanoTime();
+        for (String key : keys) {
+            cache.computeIfPresent(key, (k, old) ->
+                old.validUntil == CURRENT ? new Entry(old.value, now) : old);
+        }
+    }
+
+    void bumpCommitSeq() {
+        commitSeq.incrementAndGet();
+    }
+
+    private Stable acquireStable(long now, long maxStalenessNanos) throws SQLException {
+        while (true) {
+            Stable current = stable;
+            if (current == null || now - current.takenAt > maxStalenessNanos) {
+                current = advance(now, maxStalenessNanos);
+            }
+            if (current.retain()) {
+                stableUsed = true;
+                return current;
+            }
+        }
+    }
+
+    // Replaces the stable snapshot unless another thread already did so recently enough
+    private Stable advance(long now, long maxStalenessNanos) throws SQLException {
+        synchronized (advanceLock) {
+            Stable current = stable;
+            if (current != null && now - current.takenAt <= maxStalenessNanos) {
+                return current;
+            }
+            long seq = commitSeq.get();
+            long takenAt = System.nanoTime();
+            TransactionContext txn = coordinator.beginStableSnapshot();
+            Stable next = new Stable(txn, takenAt, seq);
+            stable = next;
+            advances.increment();
+            if (current != null) {
+                release(current);
+            }
+            return next;
+        }
+    }
+
+    // Keeps the stable snapshot fresh while it's being used, and drops it when it isn't so
+    // an idle reader doesn't hold back xmin
+    private void advanceInBackground() {
+        try {
+            if (stableUsed) {
+                stableUsed = false;
+                advance(System.nanoTime(), 0);
+            } else {
+                Stable current;
+                synchronized (advanceLock) {
+                    current = stable;
+                    stable = null;
+                }
+                if (current != null) {
+                    release(current);
+                }
+            }
+        } catch (Exception e) {
+            // Readers advance it themselves if this keeps failing
+            e.printStackTrace();
+        }
+    }
+
+    private void release(Stable snapshot) {
+        if (snapshot.refs.decrementAndGet() == 0) {
+            coordinator.endStableSnapshot(snapshot.txn);
+        }
+    }
+
+    private void recordStaleness(long nanos) {
+        servedStalenessNanos.add(nanos);
+        maxStalenessNanos.accumulateAndGet(nanos, Math::max);
+    }
+
+    void print() {
+        long h = hits.sum();
+        long m = misses.sum();
+        long total = h + m;
+        System.out.printf("Stale reads: %d, %.1f%% from cache, staleness avg %.2f ms max %.2f ms, %d snapshot advances\n",
+            total, total == 0 ? 0.0 : 100.0 * h / total,
+            total == 0 ? 0.0 : servedStalenessNanos.sum() / 1e6 / total, maxStalenessNanos.get() / 1e6, advances.sum());
+    }
+}
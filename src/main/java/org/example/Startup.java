@@ -0,0 +1,84 @@
+package org.example;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.example.shims.SchemaCache;
+
+// Brings up a coordinator and its stores in parallel rather than one after another,
+// timing each component. Components are independent: a shim doesn't need the coordinator
+// to be up, only the stores themselves.
+public final class Startup {
+    private final long startNanos = System.nanoTime();
+    private final List<Component> components = new ArrayList<>();
+    private final ExecutorService executor = Executors.newCachedThreadPool(r -> {
+        Thread t = new Thread(r, "epoxy-startup");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private static final class Component {
+        final String name;
+        volatile long elapsedNanos = -1;
+
+        Component(String name) {
+            this.name = name;
+        }
+    }
+
+    public <T> Future<T> start(String name, Callable<T> init) {
+        Component component = new Component(name);
+        synchronized (components) {
+            components.add(component);
+        }
+        return executor.submit(() -> {
+            long begin = System.nanoTime();
+            try {
+                return init.call();
+            } finally {
+                component.elapsedNanos = System.nanoTime() - begin;
+            }
+        });
+    }
+
+    // Waits for a component, rethrowing whatever its initialization threw
+    public <T> T await(Future<T> component) throws SQLException {
+        try {
+            return component.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof SQLException) {
+                throw (SQLException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new SQLException("Startup failed", cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted during startup", e);
+        }
+    }
+
+    public void print(String name) {
+        System.out.printf("%s startup: %.1f ms (schema DDL skipped %d, ran %d)\n", name,
+            (System.nanoTime() - startNanos) / 1e6, SchemaCache.getSkipped(), SchemaCache.getRan());
+        synchronized (components) {
+            for (Component component : components) {
+                long elapsed = component.elapsedNanos;
+                System.out.printf("  %-14s %s\n", component.name,
+                    elapsed < 0 ? "not finished" : String.format("%.1f ms", elapsed / 1e6));
+            }
+        }
+        executor.shutdown();
+    }
+}
@@ -0,0 +1,30 @@
+package org.example;
+
+import org.example.shims.DataStoreShim;
+
+// A store call was refused without being attempted, either because the store's
+// bulkhead was full or because its circuit breaker is open. Nothing was sent to
+// the store, so the transaction can be aborted and retried later.
+public class StoreUnavailableException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    public static final String SATURATED = "saturated";
+    public static final String CIRCUIT_OPEN = "circuit-open";
+
+    private final transient DataStoreShim shim;
+    private final String reason;
+
+    public StoreUnavailableException(DataStoreShim shim, String reason) {
+        super(shim.unwrap().getClass().getSimpleName() + " unavailable: " + reason);
+        this.shim = shim;
+        this.reason = reason;
+    }
+
+    public DataStoreShim getShim() {
+        return shim;
+    }
+
+    public String getReason() {
+        return reason;
+    }
+}
@@ -0,0 +1,199 @@
+package org.example;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+// A transaction trace written by TraceRecorder, read back whole for replay.
+//
+// File: magic, version byte, then records. STORE names the store a later id refers to;
+// TRANSACTION is written when a transaction ends, so they appear in completion order:
+//   session, start, duration, outcome, operation count, operations
+// and each operation (in the order they finished, prefetches running in the background):
+//   store << 3 | failed << 2 | kind, start offset, duration, key(s), [value length]
+// Numbers are unsigned varints, times microseconds, keys a varint length and UTF-8.
+// Starts are from when recording began, not counting time it was paused.
+public final class Trace {
+    static final int MAGIC = 0x45505854;
+    static final int VERSION = 1;
+    static final int STORE = 1;
+    static final int TRANSACTION = 2;
+
+    public enum Outcome {
+        COMMITTED,
+        // Rolled back by the application
+        ABORTED,
+        VALIDATION,
+        TIMEOUT,
+        // Refused by admission control or a store shedding load
+        UNAVAILABLE,
+        ERROR
+    }
+
+    public enum Kind {
+        READ,
+        WRITE,
+        // A queryAll started by TransactionContext.prefetch
+        PREFETCH
+    }
+
+    private static final Outcome[] OUTCOMES = Outcome.values();
+    private static final Kind[] KINDS = Kind.values();
+
+    public static final class Operation {
+        public final Kind kind;
+        public final int store;
+        // One key, or a prefetch's batch
+        public final List<String> keys;
+        // Length of the value written; 0 for reads
+        public final int valueLength;
+        public final long offsetMicros;
+        public final long micros;
+        public final boolean failed;
+
+        Operation(Kind kind, int store, List<String> keys, int valueLength, long offsetMicros, long micros,
+                  boolean failed) {
+            this.kind = kind;
+            this.store = store;
+            this.keys = keys;
+            this.valueLength = valueLength;
+            this.offsetMicros = offsetMicros;
+            this.micros = micros;
+            this.failed = failed;
+        }
+    }
+
+    public static final class Transaction {
+        // Which client thread ran it; a session runs one transaction at a time
+        public final int session;
+        public final long startMicros;
+        public final long micros;
+        public final Outcome outcome;
+        // In the order they started
+        public final List<Operation> operations;
+
+        Transaction(int session, long startMicros, long micros, Outcome outcome, List<Operation> operations) {
+            this.session = session;
+            this.startMicros = startMicros;
+            this.micros = micros;
+            this.outcome = outcome;
+            this.operations = operations;
+        }
+    }
+
+    private final List<String> stores;
+    private final List<Transaction> transactions;
+
+    private Trace(List<String> stores, List<Transaction> transactions) {
+        this.stores = stores;
+        this.transactions = transactions;
+    }
+
+    // Store names by id
+    public List<String> getStores() {
+        return stores;
+    }
+
+    // In the order they started
+    public List<Transaction> getTransactions() {
+        return transactions;
+    }
+
+    public static Trace read(Path file) throws IOException {
+        List<String> stores = new ArrayList<>();
+        List<Transaction> transactions = new ArrayList<>();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 16))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException(file + " is not a transaction trace");
+            }
+            int version = in.readUnsignedByte();
+            if (version != VERSION) {
+                throw new IOException(file + " is trace version " + version + ", expected " + VERSION);
+            }
+            int type;
+            // A recorder that died mid-record leaves a truncated tail; everything before it is good
+            while ((type = in.read()) >= 0) {
+                try {
+                    if (type == STORE) {
+                        int id = (int) readVarLong(in);
+                        String name = readString(in);
+                        while (stores.size() <= id) {
+                            stores.add(null);
+                        }
+                        stores.set(id, name);
+                    } else if (type == TRANSACTION) {
+                        transactions.add(readTransaction(in));
+                    } else {
+                        throw new IOException(file + ": unknown record type " + type);
+                    }
+                } catch (EOFException e) {
+                    break;
+                }
+            }
+        }
+        transactions.sort(Comparator.comparingLong(t -> t.startMicros));
+        return new Trace(Collections.unmodifiableList(stores), Collections.unmodifiableList(transactions));
+    }
+
+    private static Transaction readTransaction(DataInputStream in) throws IOException {
+        int session = (int) readVarLong(in);
+        long start = readVarLong(in);
+        long micros = readVarLong(in);
+        Outcome outcome = OUTCOMES[in.readUnsignedByte()];
+        int count = (int) readVarLong(in);
+        Operation[] operations = new Operation[count];
+        for (int i = 0; i < count; i++) {
+            long tag = readVarLong(in);
+            Kind kind = KINDS[(int) (tag & 3)];
+            long offset = readVarLong(in);
+            long duration = readVarLong(in);
+            List<String> keys;
+            if (kind == Kind.PREFETCH) {
+                String[] batch = new String[(int) readVarLong(in)];
+                for (int k = 0; k < batch.length; k++) {
+                    batch[k] = readString(in);
+                }
+                keys = Arrays.asList(batch);
+            } else {
+                keys = Collections.singletonList(readString(in));
+            }
+            int valueLength = kind == Kind.WRITE ? (int) readVarLong(in) : 0;
+            operations[i] = new Operation(kind, (int) (tag >>> 3), keys, valueLength, offset, duration,
+                (tag & 4) != 0);
+        }
+        // Recorded as they finished; a prefetch finishes after the reads that waited for it
+        Arrays.sort(operations, Comparator.comparingLong(o -> o.offsetMicros));
+        return new Transaction(session, start, micros, outcome, Arrays.asList(operations));
+    }
+
+    private static long readVarLong(InputStream in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.read();
+            if (b < 0) {
+                throw new EOFException();
+            }
+            value |= (long) (b & 0x7f) << shift;
+            if (b < 0x80) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint in trace");
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[(int) readVarLong(in)];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
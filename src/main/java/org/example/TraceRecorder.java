@@ -0,0 +1,385 @@
+package org.example;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+// Writes a Trace of every transaction a coordinator runs: when it began, on which client
+// thread, how it ended, and each read and write it made through TracedShim stores. Each
+// transaction's operations are encoded into a buffer of its own as they happen, and the
+// finished record is staged in a chunk belonging to the thread that ran it. Only full
+// chunks go to the file, so threads share a lock once per chunk, not per transaction.
+//
+// Recording can be paused; time spent paused is left out of the trace, so several
+// measured runs replay back to back without the loading in between.
+public final class TraceRecorder implements Closeable {
+    private final OutputStream out;
+    private final long startNanos;
+    private static final int CHUNK_SIZE = 16 * 1024;
+
+    private final Map<String, Integer> stores = new HashMap<>();
+    // Chunks that may hold staged records; pausing writes them out and starts afresh, so
+    // threads that have finished don't keep theirs
+    private final Queue<Chunk> chunks = new ConcurrentLinkedQueue<>();
+    private final ThreadLocal<Chunk> chunk = new ThreadLocal<>();
+    private final AtomicInteger sessions = new AtomicInteger();
+    private final ThreadLocal<Integer> session = ThreadLocal.withInitial(sessions::getAndIncrement);
+    // When the transaction issued the prefetch this thread is running, or 0 if none
+    private static final ThreadLocal<long[]> prefetchIssued = ThreadLocal.withInitial(() -> new long[1]);
+
+    private volatile boolean paused;
+    // Time spent paused so far, taken off every start
+    private volatile long pausedNanos;
+    private long pausedAt;
+
+    // Guarded by this
+    private boolean closed;
+    private IOException failure;
+    private long bytes;
+    private final LongAdder transactions = new LongAdder();
+
+    private TraceRecorder(OutputStream out) {
+        this.out = out;
+        this.startNanos = System.nanoTime();
+    }
+
+    public static TraceRecorder open(Path file) throws IOException {
+        OutputStream stream = new BufferedOutputStream(Files.newOutputStream(file), 1 << 16);
+        DataOutputStream header = new DataOutputStream(stream);
+        header.writeInt(Trace.MAGIC);
+        header.writeByte(Trace.VERSION);
+        return new TraceRecorder(stream);
+    }
+
+    // The id operations on the named store are recorded under; the same name always gets
+    // the same id, so a store that is recreated (e.g. per benchmark) stays one store
+    public synchronized int registerStore(String name) {
+        Integer id = stores.get(name);
+        if (id != null) {
+            return id;
+        }
+        id = stores.size();
+        stores.put(name, id);
+        byte[] encoded = name.getBytes(StandardCharsets.UTF_8);
+        byte[] record = new byte[1 + 5 + 5 + encoded.length];
+        int length = 0;
+        record[length++] = Trace.STORE;
+        length = putVarLong(record, length, id);
+        length = putVarLong(record, length, encoded.length);
+        System.arraycopy(encoded, 0, record, length, encoded.length);
+        write(record, length + encoded.length);
+        return id;
+    }
+
+    // Transactions begun while paused aren't recorded. Everything recorded so far is
+    // written out.
+    public void pause() {
+        synchronized (this) {
+            if (!paused) {
+                pausedAt = System.nanoTime();
+                paused = true;
+            }
+        }
+        flushChunks();
+    }
+
+    public synchronized void resume() {
+        if (paused) {
+            pausedNanos += System.nanoTime() - pausedAt;
+            paused = false;
+        }
+    }
+
+    // Called by the coordinator once txn has its ID and begin time
+    void begin(TransactionContext txn) {
+        if (paused) {
+            return;
+        }
+        Buffer buffer = txn.trace;
+        if (buffer == null || buffer.recorder != this) {
+            buffer = new Buffer(this);
+            txn.trace = buffer;
+        }
+        long startMicros = Math.max(0, (txn.beginNanos - startNanos - pausedNanos) / 1000);
+        buffer.start(txn.getGeneration(), txn.beginNanos, session.get(), startMicros);
+    }
+
+    // Called by TracedShim when a read or write returns; generation is txn's when the
+    // call started, so a call still running when its transaction ended isn't recorded
+    // against the next one to use the context
+    public void recordOperation(TransactionContext txn, int generation, int store, Trace.Kind kind, String key,
+                                int valueLength, long startNanos, boolean failed) {
+        Buffer buffer = txn.trace;
+        if (buffer != null && buffer.recorder == this) {
+            buffer.add(generation, store, kind, key, null, valueLength, startNanos, failed);
+        }
+    }
+
+    public void recordPrefetch(TransactionContext txn, int generation, int store, Collection<String> keys,
+                               long startNanos, boolean failed) {
+        Buffer buffer = txn.trace;
+        if (buffer != null && buffer.recorder == this) {
+            buffer.add(generation, store, Trace.Kind.PREFETCH, null, keys, 0, startNanos, failed);
+        }
+    }
+
+    // Wraps a prefetch's read so TracedShim can time it from when the transaction issued
+    // it, not from when a prefetch thread got round to it
+    static <T> Callable<T> issuedNow(Callable<T> read) {
+        long issued = System.nanoTime();
+        return () -> {
+            long[] at = prefetchIssued.get();
+            at[0] = issued;
+            try {
+                return read.call();
+            } finally {
+                at[0] = 0;
+            }
+        };
+    }
+
+    // For TracedShim.queryAll: when its prefetch was issued, or now if it isn't running one
+    public static long prefetchIssuedNanos() {
+        long issued = prefetchIssued.get()[0];
+        return issued != 0 ? issued : System.nanoTime();
+    }
+
+    // A finished transaction's record, staged in this thread's chunk
+    private void append(byte[] head, int headLength, byte[] body, int bodyLength) {
+        int length = headLength + bodyLength;
+        while (true) {
+            Chunk staged = chunk.get();
+            if (staged == null) {
+                staged = newChunk();
+            }
+            synchronized (staged) {
+                if (staged.retired) {
+                    // Written out by pause() since this thread last used it
+                    chunk.remove();
+                    continue;
+                }
+                if (staged.length + length > staged.data.length) {
+                    staged.flush();
+                }
+                if (length > staged.data.length) {
+                    // Bigger than a chunk; rare enough to write straight out
+                    byte[] record = Arrays.copyOf(head, length);
+                    System.arraycopy(body, 0, record, headLength, bodyLength);
+                    write(record, length);
+                } else {
+                    System.arraycopy(head, 0, staged.data, staged.length, headLength);
+                    System.arraycopy(body, 0, staged.data, staged.length + headLength, bodyLength);
+                    staged.length += length;
+                }
+            }
+            transactions.increment();
+            return;
+        }
+    }
+
+    private Chunk newChunk() {
+        Chunk staged = new Chunk();
+        chunk.set(staged);
+        chunks.add(staged);
+        return staged;
+    }
+
+    // Not holding this: chunks are locked before it
+    private void flushChunks() {
+        Chunk staged;
+        while ((staged = chunks.poll()) != null) {
+            synchronized (staged) {
+                staged.flush();
+                staged.retired = true;
+            }
+        }
+    }
+
+    private synchronized void write(byte[] bytes, int length) {
+        if (closed || failure != null) {
+            return;
+        }
+        try {
+            out.write(bytes, 0, length);
+            this.bytes += length;
+        } catch (IOException e) {
+            // A full disk stops the trace, not the transactions; close() reports it
+            failure = e;
+        }
+    }
+
+    public long getTransactions() {
+        return transactions.sum();
+    }
+
+    // Bytes are those written out so far; pause() or close() first for all of them
+    public synchronized void printStats() {
+        long recorded = transactions.sum();
+        System.out.printf("Trace: %d transactions, %d bytes (%.1f per transaction)%s\n", recorded, bytes,
+            recorded == 0 ? 0.0 : (double) bytes / recorded,
+            failure == null ? "" : ", stopped by " + failure);
+    }
+
+    @Override
+    public void close() throws IOException {
+        flushChunks();
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            out.close();
+            if (failure != null) {
+                throw new IOException("Trace recording failed", failure);
+            }
+        }
+    }
+
+    private static int putVarLong(byte[] to, int at, long value) {
+        while ((value & ~0x7fL) != 0) {
+            to[at++] = (byte) ((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        to[at++] = (byte) value;
+        return at;
+    }
+
+    private final class Chunk {
+        final byte[] data = new byte[CHUNK_SIZE];
+        int length;
+        // Written out by pause(); the thread that owned it starts a new one
+        boolean retired;
+
+        // Called holding this chunk
+        void flush() {
+            if (length > 0) {
+                write(data, length);
+                length = 0;
+            }
+        }
+    }
+
+    // One transaction's record while it runs. Kept on the TransactionContext across
+    // recycling, so its arrays are reused. Operations can come from prefetch threads,
+    // hence the lock; it is otherwise only ever taken by the transaction's own thread.
+    static final class Buffer {
+        // type, session, start, duration, outcome, operation count
+        private static final int MAX_HEADER = 1 + 5 + 10 + 10 + 1 + 5;
+
+        final TraceRecorder recorder;
+        private final byte[] header = new byte[MAX_HEADER];
+        private byte[] data = new byte[256];
+        private int length;
+        private int operations;
+        private int generation;
+        private boolean active;
+        private int session;
+        private long beginNanos;
+        private long startMicros;
+        // What an abort means for this transaction; set by the coordinator when it aborts
+        // for a reason of its own
+        Trace.Outcome abortOutcome;
+
+        Buffer(TraceRecorder recorder) {
+            this.recorder = recorder;
+        }
+
+        synchronized void start(int generation, long beginNanos, int session, long startMicros) {
+            this.generation = generation;
+            this.beginNanos = beginNanos;
+            this.session = session;
+            this.startMicros = startMicros;
+            this.length = 0;
+            this.operations = 0;
+            this.abortOutcome = Trace.Outcome.ABORTED;
+            this.active = true;
+        }
+
+        synchronized void add(int generation, int store, Trace.Kind kind, String key, Collection<String> keys,
+                              int valueLength, long startNanos, boolean failed) {
+            if (!active || generation != this.generation) {
+                return;
+            }
+            long now = System.nanoTime();
+            ensure(1 + 5 + 10 + 10 + 5);
+            length = putVarLong(data, length, (long) store << 3 | (failed ? 4 : 0) | kind.ordinal());
+            length = putVarLong(data, length, Math.max(0, (startNanos - beginNanos) / 1000));
+            length = putVarLong(data, length, (now - startNanos) / 1000);
+            if (keys != null) {
+                length = putVarLong(data, length, keys.size());
+                for (String k : keys) {
+                    putString(k);
+                }
+            } else {
+                putString(key);
+            }
+            if (kind == Trace.Kind.WRITE) {
+                ensure(5);
+                length = putVarLong(data, length, valueLength);
+            }
+            operations++;
+        }
+
+        // Writes the record out; called by the coordinator as the transaction completes
+        void finish(boolean committed) {
+            int headerLength;
+            synchronized (this) {
+                if (!active) {
+                    return;
+                }
+                active = false;
+                Trace.Outcome outcome = committed ? Trace.Outcome.COMMITTED : abortOutcome;
+                headerLength = 0;
+                header[headerLength++] = Trace.TRANSACTION;
+                headerLength = putVarLong(header, headerLength, session);
+                headerLength = putVarLong(header, headerLength, startMicros);
+                headerLength = putVarLong(header, headerLength, (System.nanoTime() - beginNanos) / 1000);
+                header[headerLength++] = (byte) outcome.ordinal();
+                headerLength = putVarLong(header, headerLength, operations);
+            }
+            // Inactive now, so nothing touches the arrays until this thread starts the next transaction
+            recorder.append(header, headerLength, data, length);
+        }
+
+        private void putString(String s) {
+            int n = s.length();
+            ensure(5 + n);
+            int lengthAt = length;
+            int at = putVarLong(data, length, n);
+            for (int i = 0; i < n; i++) {
+                char c = s.charAt(i);
+                if (c >= 0x80) {
+                    // Not ASCII: the byte count differs from the char count
+                    byte[] encoded = s.getBytes(StandardCharsets.UTF_8);
+                    ensure(5 + encoded.length);
+                    at = putVarLong(data, lengthAt, encoded.length);
+                    System.arraycopy(encoded, 0, data, at, encoded.length);
+                    length = at + encoded.length;
+                    return;
+                }
+                data[at++] = (byte) c;
+            }
+            length = at;
+        }
+
+        private void ensure(int more) {
+            if (length + more > data.length) {
+                data = Arrays.copyOf(data, Math.max(data.length * 2, length + more));
+            }
+        }
+    }
+}
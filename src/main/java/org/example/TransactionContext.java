@@ -1,47 +1,426 @@
 package org.example;
 
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicBoolean;
 import org.example.shims.DataStoreShim;
 
-import java.util.*;
-
 public class TransactionContext {
-    private final long txnId;
-    private final long xmin;
-    private final long xmax;
-    private final Set<Long> rcTxns;
-    private final Map<DataStoreShim, Set<String>> modifiedKeys;
+    static final long[] NO_TXNS = new long[0];
+    static final long NO_DEADLINE = Long.MAX_VALUE;
+    private static final int INITIAL_SLOTS = 4;
+    // Key sets larger than this are dropped on recycle rather than cleared and kept
+    private static final int MAX_RETAINED_KEYS = 64;
+
+    private long txnId;
+    private long xmax;
+    // Taken on first use, so transactions that never read don't pay for one. Until
+    // then snapshotSource is set and snapshot is null. snapshotSource is also told
+    // about every key written, and is null for contexts no coordinator began.
+    private Snapshot snapshot;
+    EpoxyCoordinator snapshotSource;
+    private long xmin;
+    // Sorted ascending so membership checks can use binary search. Only the first
+    // rcCount entries of rcShared are below our ID; rcTxns is that prefix as its own
+    // array, made on demand unless it is the whole of rcShared.
+    private long[] rcShared;
+    private int rcCount;
+    private long[] rcTxns;
+    private List<Long> rcTxnList;
+    // System.nanoTime() value after which store calls fail, or NO_DEADLINE
+    private long deadlineNanos;
+
+    // Per-shim key sets, looked up by identity. A transaction only ever touches
+    // a handful of stores, so a linear scan beats hashing the shim.
+    private DataStoreShim[] slotShims;
+    private Set<String>[] slotKeys;
+    private int slotCount;
+
+    // Contexts are pooled; the generation is bumped every time one is recycled so
+    // code that may outlive a transaction (e.g. a store call still running) can
+    // capture it up front and compare. The pool keeps a completed context out of
+    // circulation for a while, so using one after commit or abort fails here.
+    private int generation;
+    private boolean live;
+
+    // Reads started by prefetch(), in the order they were declared. Only touched by the
+    // thread running the transaction.
+    private List<Prefetch> prefetches;
+
+    private static final class Prefetch {
+        final DataStoreShim store;
+        final Set<String> keys;
+        final FutureTask<Map<String, String>> values;
+        // Claimed by whichever comes first: the read starting, or the transaction ending
+        final AtomicBoolean claimed;
+
+        Prefetch(DataStoreShim store, Set<String> keys, FutureTask<Map<String, String>> values,
+                 AtomicBoolean claimed) {
+            this.store = store;
+            this.keys = keys;
+            this.values = values;
+            this.claimed = claimed;
+        }
+    }
+
+    // Set by the coordinator when an intent log is enabled. Nothing is logged until the
+    // first write, so logBegun says whether the transaction has any records to resolve.
+    IntentLog intentLog;
+    IntentLog.Mark logMark;
+    long logSegment;
+    boolean logBegun;
 
-    public TransactionContext(long txnId, long xmin, long xmax, Set<Long> rcTxns) {
+    // Set by the coordinator while a TraceRecorder is recording; kept across recycling so
+    // the buffer is reused
+    TraceRecorder.Buffer trace;
+
+    // Set when admission control let this transaction in; used to release its slot
+    boolean admitted;
+    long beginNanos;
+
+    // Intrusive links for the coordinator's active transaction list
+    TransactionContext prevActive;
+    TransactionContext nextActive;
+
+    public TransactionContext(long txnId, long xmin, long xmax, long[] rcTxns) {
+        reset(txnId, xmax);
+        useSnapshot(xmin, rcTxns);
+    }
+
+    TransactionContext() {
+    }
+
+    void reset(long txnId, long xmax) {
         this.txnId = txnId;
-        this.xmin = xmin;
         this.xmax = xmax;
-        this.rcTxns = rcTxns;
-        this.modifiedKeys = new HashMap<>();
+        this.rcTxnList = null;
+        this.deadlineNanos = NO_DEADLINE;
+        this.live = true;
+    }
+
+    // Called by the coordinator, holding its active list lock
+    void useSnapshot(Snapshot shared) {
+        snapshot = shared;
+        shared.refs++;
+        useSnapshot(shared.xmin, shared.committed);
+    }
+
+    private void useSnapshot(long xmin, long[] committed) {
+        this.xmin = xmin;
+        this.rcShared = committed;
+        int n = committed.length;
+        // Usually every entry is below us; only search when the last one isn't
+        if (n > 0 && committed[n - 1] >= txnId) {
+            int i = Arrays.binarySearch(committed, txnId);
+            n = i >= 0 ? i : -i - 1;
+        }
+        this.rcCount = n;
+        this.rcTxns = n == committed.length ? committed : null;
+    }
+
+    // Returns the shared snapshot, if any, so the coordinator can drop its reference
+    Snapshot detachSnapshot() {
+        Snapshot shared = snapshot;
+        snapshot = null;
+        return shared;
+    }
+
+    private void ensureSnapshot() {
+        if (rcShared == null) {
+            snapshotSource.takeSnapshot(this);
+        }
+    }
+
+    void recycle() {
+        for (int i = 0; i < slotCount; i++) {
+            slotShims[i] = null;
+            if (slotKeys[i].size() > MAX_RETAINED_KEYS) {
+                slotKeys[i] = null;
+            } else {
+                slotKeys[i].clear();
+            }
+        }
+        slotCount = 0;
+        if (prefetches != null) {
+            prefetches.clear();
+        }
+        snapshot = null;
+        snapshotSource = null;
+        rcShared = null;
+        rcTxns = null;
+        rcTxnList = null;
+        prevActive = null;
+        nextActive = null;
+        intentLog = null;
+        logBegun = false;
+        admitted = false;
+        live = false;
+        generation++;
     }
 
     public void addModifiedKey(DataStoreShim shim, String key) {
-        modifiedKeys.computeIfAbsent(shim, k -> new HashSet<>()).add(key);
+        ensureLive();
+        shim = shim.unwrap();
+        int slot = slotOf(shim);
+        if (slot < 0) {
+            slot = registerSlot(shim);
+        }
+        if (slotKeys[slot].add(key)) {
+            if (snapshotSource != null) {
+                snapshotSource.startWrite(shim, key);
+            }
+            if (intentLog != null) {
+                intentLog.logWrite(this, shim, key);
+            }
+        }
     }
 
     public long getTxnId() {
+        ensureLive();
         return txnId;
     }
 
     public long getXmin() {
+        ensureLive();
+        ensureSnapshot();
         return xmin;
     }
 
     public long getXmax() {
+        ensureLive();
         return xmax;
     }
 
-    public Set<Long> getRcTxns() {
+    // Returns the backing array; callers must not modify it
+    public long[] getRcTxns() {
+        ensureLive();
+        ensureSnapshot();
+        if (rcTxns == null) {
+            rcTxns = Arrays.copyOf(rcShared, rcCount);
+        }
         return rcTxns;
     }
 
+    // Boxed view for drivers that only accept collections (e.g. Mongo $in)
+    public List<Long> getRcTxnList() {
+        ensureLive();
+        ensureSnapshot();
+        if (rcTxnList == null) {
+            long[] txns = rcShared;
+            int count = rcCount;
+            rcTxnList = count == 0 ? Collections.emptyList() : new AbstractList<>() {
+                @Override
+                public Long get(int index) {
+                    Objects.checkIndex(index, count);
+                    return txns[index];
+                }
+
+                @Override
+                public int size() {
+                    return count;
+                }
+            };
+        }
+        return rcTxnList;
+    }
+
+    public boolean isRecentlyCommitted(long otherTxnId) {
+        ensureLive();
+        ensureSnapshot();
+        return rcCount != 0 && Arrays.binarySearch(rcShared, 0, rcCount, otherTxnId) >= 0;
+    }
+
     public Set<String> getModifiedKeys(DataStoreShim shim) {
-        return modifiedKeys.getOrDefault(shim, new HashSet<>());
+        ensureLive();
+        int slot = slotOf(shim.unwrap());
+        return slot < 0 ? Collections.emptySet() : slotKeys[slot];
+    }
+
+    void setDeadline(long deadlineNanos) {
+        this.deadlineNanos = deadlineNanos;
+    }
+
+    public boolean hasDeadline() {
+        return deadlineNanos != NO_DEADLINE;
+    }
+
+    public boolean isExpired() {
+        return deadlineNanos != NO_DEADLINE && System.nanoTime() - deadlineNanos >= 0;
+    }
+
+    // Time left before the deadline, rounded up so a store never gets a zero
+    // (usually meaning "no limit") timeout. Only meaningful if hasDeadline().
+    public long remainingMillis() {
+        long remaining = deadlineNanos - System.nanoTime();
+        return remaining <= 0 ? 1 : (remaining + 999_999) / 1_000_000;
+    }
+
+    // Called by shims before doing work on behalf of the transaction
+    public void checkDeadline(DataStoreShim shim, String operation) {
+        ensureLive();
+        if (isExpired()) {
+            throw new TransactionTimeoutException(txnId, shim, operation, null);
+        }
+    }
+
+    // Starts reading keys from shim in the background with one queryAll call. Later
+    // queries for those keys are answered from its result, so declaring the read set up
+    // front costs one round trip per store, with all stores read in parallel.
+    public void prefetch(DataStoreShim shim, String... keys) {
+        prefetch(shim, Arrays.asList(keys));
+    }
+
+    public void prefetch(DataStoreShim shim, Collection<String> keys) {
+        ensureLive();
+        // Take the snapshot here so the background read only ever reads it
+        getRcTxns();
+        getRcTxnList();
+        List<String> batch = List.copyOf(keys);
+        Callable<Map<String, String>> read = () -> shim.queryAll(this, batch);
+        Callable<Map<String, String>> timed = trace == null ? read : TraceRecorder.issuedNow(read);
+        AtomicBoolean claimed = new AtomicBoolean();
+        // A read still queued when the transaction ends never starts, so it can't touch
+        // the context once it has been recycled
+        FutureTask<Map<String, String>> values = new FutureTask<>(
+            () -> claimed.compareAndSet(false, true) ? timed.call() : null);
+        Executor executor = snapshotSource != null ? snapshotSource.prefetchExecutor() : null;
+        if (executor == null) {
+            values.run();
+        } else {
+            executor.execute(values);
+        }
+        if (prefetches == null) {
+            prefetches = new ArrayList<>(INITIAL_SLOTS);
+        }
+        prefetches.add(new Prefetch(shim.unwrap(), new HashSet<>(batch), values, claimed));
+    }
+
+    // Called by the coordinator before the context is released. Reads that haven't started
+    // are dropped; ones already running are waited for, since they read this context's
+    // snapshot. Their results and failures no longer matter.
+    void awaitPrefetches() {
+        if (prefetches == null) {
+            return;
+        }
+        boolean interrupted = false;
+        for (Prefetch prefetch : prefetches) {
+            if (prefetch.claimed.compareAndSet(false, true)) {
+                continue;
+            }
+            while (true) {
+                try {
+                    prefetch.values.get();
+                    break;
+                } catch (ExecutionException e) {
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Whether query(shim, key) can be answered by getPrefetched. Keys we've written since
+    // must be read from the store so we see our own write.
+    public boolean isPrefetched(DataStoreShim shim, String key) {
+        return findPrefetch(shim, key) != null && !getModifiedKeys(shim).contains(key);
+    }
+
+    // Waits for the prefetch holding key if it is still running. A failed prefetch
+    // throws what the store threw.
+    public String getPrefetched(DataStoreShim shim, String key) {
+        Prefetch prefetch = findPrefetch(shim, key);
+        if (prefetch == null) {
+            throw new IllegalStateException(key + " was not prefetched");
+        }
+        try {
+            return prefetch.values.get().get(key);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new RuntimeException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+    }
+
+    private Prefetch findPrefetch(DataStoreShim shim, String key) {
+        ensureLive();
+        if (prefetches == null) {
+            return null;
+        }
+        DataStoreShim store = shim.unwrap();
+        for (Prefetch prefetch : prefetches) {
+            if (prefetch.store == store && prefetch.keys.contains(key)) {
+                return prefetch;
+            }
+        }
+        return null;
+    }
+
+    boolean hasWrites() {
+        for (int i = 0; i < slotCount; i++) {
+            if (!slotKeys[i].isEmpty()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public int getGeneration() {
+        return generation;
+    }
+
+    public boolean isLive() {
+        return live;
+    }
+
+    private void ensureLive() {
+        if (!live) {
+            throw new IllegalStateException("Transaction " + txnId + " has already completed");
+        }
+    }
+
+    private int slotOf(DataStoreShim shim) {
+        for (int i = 0; i < slotCount; i++) {
+            if (slotShims[i] == shim) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    @SuppressWarnings("unchecked")
+    private int registerSlot(DataStoreShim shim) {
+        if (slotShims == null) {
+            slotShims = new DataStoreShim[INITIAL_SLOTS];
+            slotKeys = (Set<String>[]) new Set<?>[INITIAL_SLOTS];
+        } else if (slotCount == slotShims.length) {
+            slotShims = Arrays.copyOf(slotShims, slotCount * 2);
+            slotKeys = Arrays.copyOf(slotKeys, slotCount * 2);
+        }
+        slotShims[slotCount] = shim;
+        // Key sets survive recycling, so reuse one left behind by an earlier transaction
+        if (slotKeys[slotCount] == null) {
+            slotKeys[slotCount] = new HashSet<>();
+        }
+        return slotCount++;
     }
 }
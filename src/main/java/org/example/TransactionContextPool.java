@@ -0,0 +1,35 @@
+package org.example;
+
+import java.util.ArrayDeque;
+
+// Thread-local free lists of TransactionContext objects. A context goes back
+// to the pool of whichever thread completes it. The lists are FIFO and only
+// hand a context out again once MIN_FREE_PER_THREAD others are queued ahead
+// of it, so a handle kept past commit or abort keeps failing for at least
+// that many of the thread's later transactions instead of silently acting
+// as the very next one.
+final class TransactionContextPool {
+    private static final int MIN_FREE_PER_THREAD = 16;
+    private static final int MAX_POOLED_PER_THREAD = 64;
+
+    private final ThreadLocal<ArrayDeque<TransactionContext>> freeLists =
+        ThreadLocal.withInitial(() -> new ArrayDeque<>(MAX_POOLED_PER_THREAD));
+
+    TransactionContext acquire(long txnId, long xmax) {
+        ArrayDeque<TransactionContext> freeList = freeLists.get();
+        TransactionContext txn = freeList.size() > MIN_FREE_PER_THREAD ? freeList.pollFirst() : null;
+        if (txn == null) {
+            txn = new TransactionContext();
+        }
+        txn.reset(txnId, xmax);
+        return txn;
+    }
+
+    void release(TransactionContext txn) {
+        txn.recycle();
+        ArrayDeque<TransactionContext> freeList = freeLists.get();
+        if (freeList.size() < MAX_POOLED_PER_THREAD) {
+            freeList.addLast(txn);
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package org.example;
+
+import org.example.shims.DataStoreShim;
+
+// A transaction ran past its deadline. Thrown by the store call that noticed, so the
+// shim it names is the one that was slow (null if the deadline passed in the coordinator).
+// Unchecked because shim methods can't throw SQLException.
+public class TransactionTimeoutException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    private final transient DataStoreShim shim;
+    private final String operation;
+
+    public TransactionTimeoutException(long txnId, DataStoreShim shim, String operation, Throwable cause) {
+        super("Transaction " + txnId + " exceeded its deadline in "
+            + (shim == null ? "coordinator" : shim.unwrap().getClass().getSimpleName()) + "." + operation, cause);
+        this.shim = shim;
+        this.operation = operation;
+    }
+
+    public DataStoreShim getShim() {
+        return shim;
+    }
+
+    public String getOperation() {
+        return operation;
+    }
+}
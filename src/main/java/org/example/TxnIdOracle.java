@@ -0,0 +1,191 @@
+package org.example;
+
+import java.sql.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.example.shims.SchemaCache;
+
+// Hands out transaction IDs from blocks reserved durably in the primary database,
+// so IDs are never reused across restarts. IDs within a block are handed out with a
+// single atomic increment; the next block is reserved in the background once half
+// the current one is used.
+//
+// Only ID uniqueness is durable. xmin, the recently committed set, the conflict filters
+// and garbage collection all stay local to one coordinator, and blocks from different
+// coordinators interleave, so coordinators must not share stores: one would read
+// another's in-flight writes as committed and collect versions it still needs.
+final class TxnIdOracle {
+    static final int DEFAULT_BLOCK_SIZE = 10_000;
+    private static final String ORACLE_DDL =
+        "CREATE TABLE IF NOT EXISTS epoxy_txn_oracle (" +
+        "id INT PRIMARY KEY, " +
+        "next_txn BIGINT NOT NULL" +
+        ")";
+    // Coordinators that predate the oracle counted from 1 on every start and wrote IDs into
+    // stores other than Postgres too, which the seed can't see; no single run of one got
+    // anywhere near this many transactions
+    private static final long SEED_MARGIN = 1L << 32;
+    private static final String SEED_SQL =
+        "INSERT INTO epoxy_txn_oracle (id, next_txn) " +
+        "SELECT 1, COALESCE(MAX(begin_txn), 0) + 1 + " + SEED_MARGIN + " FROM epoxy_data " +
+        "ON CONFLICT (id) DO NOTHING";
+
+    private final Connection connection;
+    private final int blockSize;
+    private final ExecutorService prefetcher;
+    private volatile Block current;
+    private CompletableFuture<Block> upcoming;
+
+    private static final class Block {
+        final long end;
+        final long prefetchAt;
+        final AtomicLong next;
+
+        Block(long start, long end, long prefetchAt) {
+            this.end = end;
+            this.prefetchAt = prefetchAt;
+            this.next = new AtomicLong(start);
+        }
+    }
+
+    private TxnIdOracle(Connection connection, int blockSize) {
+        this.connection = connection;
+        this.blockSize = blockSize;
+        this.prefetcher = connection == null ? null : Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "epoxy-txn-oracle");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    // Not durable: IDs start at 1 and are never reserved. For in-process coordinators only.
+    static TxnIdOracle inMemory() {
+        TxnIdOracle oracle = new TxnIdOracle(null, 0);
+        oracle.current = new Block(1, Long.MAX_VALUE, -1);
+        return oracle;
+    }
+
+    static TxnIdOracle durable(String jdbcUrl, String username, String password, int blockSize) throws SQLException {
+        // Own autocommit connection so reservations never ride along with user transactions
+        Connection connection = SchemaCache.open(jdbcUrl, ORACLE_DDL + SEED_SQL,
+            () -> connectSeeded(jdbcUrl, username, password),
+            () -> {
+                Connection created = DriverManager.getConnection(jdbcUrl, username, password);
+                try (Statement stmt = created.createStatement()) {
+                    stmt.execute(ORACLE_DDL);
+                    // Seed past any IDs already written by coordinators that predate the oracle
+                    stmt.execute(SEED_SQL);
+                }
+                return created;
+            });
+        TxnIdOracle oracle = new TxnIdOracle(connection, blockSize);
+        oracle.current = oracle.reserveBlock();
+        return oracle;
+    }
+
+    // Fails unless the oracle row is already there
+    private static Connection connectSeeded(String jdbcUrl, String username, String password) throws SQLException {
+        Connection connection = DriverManager.getConnection(jdbcUrl, username, password);
+        try (Statement stmt = connection.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT 1 FROM epoxy_txn_oracle WHERE id = 1")) {
+            if (!rs.next()) {
+                throw new SQLException("epoxy_txn_oracle is not seeded");
+            }
+        } catch (SQLException e) {
+            connection.close();
+            throw e;
+        }
+        return connection;
+    }
+
+    long nextId() throws SQLException {
+        while (true) {
+            long id = tryNextId();
+            if (id >= 0) {
+                return id;
+            }
+            awaitBlock();
+        }
+    }
+
+    // Never waits on the database, so it is safe under the coordinator's locks. Returns -1
+    // once the current block is used up; call awaitBlock() without holding them and retry.
+    long tryNextId() {
+        Block block = current;
+        long id = block.next.getAndIncrement();
+        if (id >= block.end) {
+            return -1;
+        }
+        if (id == block.prefetchAt) {
+            prefetch();
+        }
+        return id;
+    }
+
+    // Waits for the next block if the current one is used up
+    void awaitBlock() throws SQLException {
+        Block block = current;
+        if (block.next.get() >= block.end) {
+            advance(block);
+        }
+    }
+
+    // Lower bound on the next ID this oracle will hand out
+    long peekNext() {
+        Block block = current;
+        return Math.min(block.next.get(), block.end);
+    }
+
+    private synchronized void prefetch() {
+        if (upcoming == null) {
+            upcoming = CompletableFuture.supplyAsync(() -> {
+                try {
+                    return reserveBlock();
+                } catch (SQLException e) {
+                    throw new CompletionException(e);
+                }
+            }, prefetcher);
+        }
+    }
+
+    private synchronized void advance(Block exhausted) throws SQLException {
+        if (current != exhausted) {
+            return;
+        }
+        Block next;
+        if (upcoming != null) {
+            try {
+                next = upcoming.join();
+            } catch (CompletionException e) {
+                // Prefetch failed; try once more synchronously
+                next = reserveBlock();
+            } finally {
+                upcoming = null;
+            }
+        } else {
+            next = reserveBlock();
+        }
+        current = next;
+    }
+
+    private Block reserveBlock() throws SQLException {
+        // The row lock serializes reservations, so no two ever get overlapping blocks
+        String sql = "UPDATE epoxy_txn_oracle SET next_txn = next_txn + ? WHERE id = 1 RETURNING next_txn";
+        synchronized (connection) {
+            try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+                stmt.setLong(1, blockSize);
+                ResultSet rs = stmt.executeQuery();
+                if (!rs.next()) {
+                    throw new SQLException("Transaction ID oracle row is missing");
+                }
+                long end = rs.getLong(1);
+                long start = end - blockSize;
+                return new Block(start, end, start + blockSize / 2);
+            }
+        }
+    }
+}
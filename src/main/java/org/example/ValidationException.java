@@ -0,0 +1,30 @@
+package org.example;
+
+import java.sql.SQLException;
+import java.util.Set;
+
+import org.example.shims.DataStoreShim;
+
+// Commit-time conflict: another transaction wrote one of our keys after our snapshot.
+// Unlike other commit failures this is safe to retry from the top.
+public class ValidationException extends SQLException {
+    private static final long serialVersionUID = 1L;
+
+    private final transient DataStoreShim shim;
+    private final Set<String> conflictKeys;
+
+    public ValidationException(DataStoreShim shim, Set<String> conflictKeys) {
+        super("Transaction validation failed");
+        this.shim = shim;
+        this.conflictKeys = conflictKeys;
+    }
+
+    public DataStoreShim getShim() {
+        return shim;
+    }
+
+    // The transaction's write set on the store that reported the conflict
+    public Set<String> getConflictKeys() {
+        return conflictKeys;
+    }
+}
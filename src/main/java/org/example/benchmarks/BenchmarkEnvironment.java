@@ -0,0 +1,131 @@
+package org.example.benchmarks;
+
+import org.example.EpoxyCoordinator;
+import org.example.PhaseTimings;
+import org.example.Startup;
+import org.example.TraceRecorder;
+import org.example.shims.DataStoreShim;
+import org.example.shims.NoopShim;
+import org.example.shims.TimedShim;
+import org.example.shims.TracedShim;
+
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+
+// How a benchmark wires up its coordinator and stores: the execution mode, real or
+// stand-in stores and the bulkheads in front of them, whether to break transaction time
+// down by phase, and whether to trace transactions. As a reporter it gives the phase breakdown for each measured run.
+public final class BenchmarkEnvironment implements ScalingRunner.Reporter {
+    private final ExecutionMode mode;
+    // Null unless phases are timed
+    private final PhaseTimings timings;
+    // Null for the real stores
+    private final StandInStores standIns;
+    // Null unless transactions are traced
+    private final TraceRecorder trace;
+    private final Bulkheads bulkheads;
+
+    public BenchmarkEnvironment(ExecutionMode mode, boolean timePhases) {
+        this(mode, timePhases, null);
+    }
+
+    // standIns replaces every store, and the primary database with an in-process
+    // coordinator; null means the real ones
+    public BenchmarkEnvironment(ExecutionMode mode, boolean timePhases, StandInStores standIns) {
+        this(mode, timePhases, standIns, null);
+    }
+
+    // trace records coordinated transactions and what they do through each store; null for none
+    public BenchmarkEnvironment(ExecutionMode mode, boolean timePhases, StandInStores standIns, TraceRecorder trace) {
+        this(mode, timePhases, standIns, trace, Bulkheads.defaults());
+    }
+
+    public BenchmarkEnvironment(ExecutionMode mode, boolean timePhases, StandInStores standIns, TraceRecorder trace,
+                                Bulkheads bulkheads) {
+        this.mode = mode;
+        this.timings = timePhases ? new PhaseTimings() : null;
+        this.standIns = standIns;
+        this.trace = trace;
+        this.bulkheads = bulkheads;
+    }
+
+    public static BenchmarkEnvironment coordinated() {
+        return new BenchmarkEnvironment(ExecutionMode.COORDINATED, false);
+    }
+
+    public ExecutionMode getMode() {
+        return mode;
+    }
+
+    // Null unless phases are timed
+    public PhaseTimings getPhaseTimings() {
+        return timings;
+    }
+
+    // Coordinator-only and stand-in runs are in process: the primary database is a store like any other
+    Future<EpoxyCoordinator> startCoordinator(Startup startup, String jdbcUrl, String username, String password) {
+        if (mode == ExecutionMode.COORDINATOR_ONLY || standIns != null) {
+            return startup.start("coordinator", EpoxyCoordinator::inProcess);
+        }
+        return startup.start("coordinator", () -> new EpoxyCoordinator(jdbcUrl, username, password));
+    }
+
+    // The bulkhead sits right in front of the store, so tracing and phase timings include
+    // the time spent waiting for a slot
+    Future<DataStoreShim> startStore(Startup startup, String name, Callable<DataStoreShim> connect) {
+        Callable<DataStoreShim> create = connect;
+        if (mode == ExecutionMode.COORDINATOR_ONLY) {
+            create = NoopShim::remembering;
+        } else if (standIns != null) {
+            create = () -> standIns.create(name);
+        }
+        Callable<DataStoreShim> store = create;
+        if (trace == null) {
+            return startup.start(name, () -> bulkheads.wrap(store.call()));
+        }
+        return startup.start(name, () -> new TracedShim(bulkheads.wrap(store.call()), name, trace));
+    }
+
+    EpoxyCoordinator coordinator(Startup startup, Future<EpoxyCoordinator> init) throws SQLException {
+        EpoxyCoordinator coordinator = startup.await(init);
+        // Direct runs only use the coordinator to load and for IDs, which aren't phases
+        if (timings != null && mode != ExecutionMode.DIRECT) {
+            coordinator.setPhaseTimings(timings);
+        }
+        if (trace != null) {
+            coordinator.setTraceRecorder(trace);
+        }
+        return coordinator;
+    }
+
+    DataStoreShim store(Startup startup, Future<DataStoreShim> init) throws SQLException {
+        DataStoreShim store = startup.await(init);
+        return timings == null ? store : new TimedShim(store, timings);
+    }
+
+    Transactions transactions(EpoxyCoordinator coordinator, DataStoreShim... stores) {
+        if (mode == ExecutionMode.DIRECT) {
+            return Transactions.direct(coordinator, stores, timings);
+        }
+        return Transactions.coordinated(coordinator);
+    }
+
+    @Override
+    public void reset() {
+        if (timings != null) {
+            timings.reset();
+        }
+    }
+
+    @Override
+    public Map<String, Double> report(double seconds) {
+        if (timings == null) {
+            return Collections.emptyMap();
+        }
+        timings.print(mode.label());
+        return timings.report();
+    }
+}
@@ -1,42 +1,139 @@
 package org.example.benchmarks;
 
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.List;
-import java.util.concurrent.TimeUnit;
+import org.example.AdmissionRejectedException;
+import org.example.StoreUnavailableException;
+import org.example.TransactionTimeoutException;
+import org.example.ValidationException;
+
+import java.util.Map;
+import java.util.Queue;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.LongAdder;
 
 class BenchmarkMetrics {
-    private final List<Long> latencies = Collections.synchronizedList(new ArrayList<>());
+    // Every worker thread records into its own histogram, so recording never contends;
+    // they are merged when the results are read, after the workers are done
+    private final Queue<LatencyHistogram> recorders = new ConcurrentLinkedQueue<>();
+    private volatile ThreadLocal<LatencyHistogram> recorder = newRecorder();
     private long startTime;
     private long endTime;
-    private int totalOperations;
+    // Operations that committed, that the coordinator gave up on or the application rolled
+    // back (by reason), and that failed some other way. Only commits count towards goodput
+    // and latency.
+    private final LongAdder committed = new LongAdder();
+    private final ConcurrentHashMap<String, LongAdder> aborted = new ConcurrentHashMap<>();
+    private final LongAdder errored = new LongAdder();
 
     public void start(int operations) {
-        this.totalOperations = operations;
-        this.startTime = System.currentTimeMillis();
-        this.latencies.clear();
+        this.startTime = System.nanoTime();
+        // Threads from an earlier run must not keep recording into its histograms
+        this.recorders.clear();
+        this.recorder = newRecorder();
+        this.committed.reset();
+        this.aborted.clear();
+        this.errored.reset();
+    }
+
+    private ThreadLocal<LatencyHistogram> newRecorder() {
+        return ThreadLocal.withInitial(() -> {
+            LatencyHistogram histogram = new LatencyHistogram();
+            recorders.add(histogram);
+            return histogram;
+        });
     }
 
     public void recordLatency(long startNanos) {
-        latencies.add(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+        recorder.get().record(System.nanoTime() - startNanos);
+    }
+
+    public void recordCommit(long startNanos) {
+        recordLatency(startNanos);
+        committed.increment();
+    }
+
+    public void recordFailure(Throwable failure) {
+        String reason = abortReason(failure);
+        if (reason == null) {
+            errored.increment();
+        } else {
+            aborted.computeIfAbsent(reason, r -> new LongAdder()).increment();
+        }
+    }
+
+    // Failures that are the coordinator aborting the transaction, named as AbortStats names
+    // them, or the application rolling it back; anything else (a store error, a bug) is null
+    static String abortReason(Throwable failure) {
+        if (failure instanceof RolledBackException) {
+            return "rollback";
+        }
+        if (failure instanceof ValidationException) {
+            return "validation";
+        }
+        if (failure instanceof TransactionTimeoutException) {
+            return "timeout";
+        }
+        if (failure instanceof AdmissionRejectedException) {
+            return "admission";
+        }
+        if (failure instanceof StoreUnavailableException) {
+            return ((StoreUnavailableException) failure).getReason();
+        }
+        return null;
     }
 
     public void end() {
-        this.endTime = System.currentTimeMillis();
+        this.endTime = System.nanoTime();
+    }
+
+    double getElapsedSeconds() {
+        return (endTime - startTime) / 1e9;
+    }
+
+    long getCommitted() {
+        return committed.sum();
+    }
+
+    long getAborted() {
+        long sum = 0;
+        for (LongAdder counter : aborted.values()) {
+            sum += counter.sum();
+        }
+        return sum;
+    }
+
+    Map<String, Long> getAbortReasons() {
+        Map<String, Long> reasons = new TreeMap<>();
+        aborted.forEach((reason, counter) -> reasons.put(reason, counter.sum()));
+        return reasons;
+    }
+
+    long getErrored() {
+        return errored.sum();
+    }
+
+    LatencyHistogram latencies() {
+        LatencyHistogram merged = new LatencyHistogram();
+        for (LatencyHistogram histogram : recorders) {
+            merged.add(histogram);
+        }
+        return merged;
     }
 
     public void printMetrics(String benchmarkName) {
-        double durationSeconds = (endTime - startTime) / 1000.0;
-        double throughput = totalOperations / durationSeconds;
-        
-        Collections.sort(latencies);
-        long p50 = latencies.get((int)(latencies.size() * 0.5));
-        long p99 = latencies.get((int)(latencies.size() * 0.99));
+        double durationSeconds = getElapsedSeconds();
+        double goodput = getCommitted() / durationSeconds;
+        LatencyHistogram latencies = latencies();
 
         System.out.printf("%s Results:\n", benchmarkName);
-        System.out.printf("Throughput (QPS): %.2f\n", throughput);
-        System.out.printf("P50 Latency (ms): %d\n", p50);
-        System.out.printf("P99 Latency (ms): %d\n", p99);
+        System.out.printf("Goodput (commits/s): %.2f\n", goodput);
+        System.out.printf("Committed %d, aborted %d %s, errored %d\n", getCommitted(), getAborted(), getAbortReasons(),
+            getErrored());
+        System.out.printf("Commit latency (us): p50 %.1f, p90 %.1f, p99 %.1f, p99.9 %.1f, max %.1f, mean %.1f over %d ops\n",
+            latencies.percentile(0.5) / 1e3, latencies.percentile(0.9) / 1e3, latencies.percentile(0.99) / 1e3,
+            latencies.percentile(0.999) / 1e3, latencies.getMax() / 1e3, latencies.getMean() / 1e3,
+            latencies.getCount());
         System.out.println("----------------------------------------");
     }
 }
@@ -0,0 +1,44 @@
+package org.example.benchmarks;
+
+import org.example.shims.BulkheadShim;
+import org.example.shims.DataStoreShim;
+import org.example.shims.LatencyModel;
+
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+// Puts every store a benchmark creates behind its own BulkheadShim, with limits from the
+// bulkhead.* keys (see EpoxyRunner), so a slow store can only tie up the workers that
+// are waiting on it:
+//   concurrent    calls in flight per store (default 32)
+//   queued        callers allowed to wait for a slot (default 64)
+//   wait          longest a caller waits for one (default 100ms)
+//   failures      consecutive failures that open the circuit breaker (default 5)
+//   open          how long it stays open before a trial call (default 1s)
+public final class Bulkheads {
+    private final int maxConcurrent;
+    private final int maxQueued;
+    private final long maxQueueWaitNanos;
+    private final int failureThreshold;
+    private final long openNanos;
+
+    public Bulkheads(Properties config) {
+        this.maxConcurrent = Integer.parseInt(config.getProperty("bulkhead.concurrent", "32"));
+        this.maxQueued = Integer.parseInt(config.getProperty("bulkhead.queued", "64"));
+        this.maxQueueWaitNanos = LatencyModel.parseNanos(config.getProperty("bulkhead.wait", "100ms"));
+        this.failureThreshold = Integer.parseInt(config.getProperty("bulkhead.failures", "5"));
+        this.openNanos = LatencyModel.parseNanos(config.getProperty("bulkhead.open", "1s"));
+        if (maxConcurrent <= 0) {
+            throw new IllegalArgumentException("bulkhead.concurrent must be positive, got " + maxConcurrent);
+        }
+    }
+
+    public static Bulkheads defaults() {
+        return new Bulkheads(new Properties());
+    }
+
+    DataStoreShim wrap(DataStoreShim store) {
+        return new BulkheadShim(store, maxConcurrent, maxQueued, maxQueueWaitNanos, TimeUnit.NANOSECONDS,
+            failureThreshold, openNanos, TimeUnit.NANOSECONDS);
+    }
+}
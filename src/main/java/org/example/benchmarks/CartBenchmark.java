@@ -1,55 +1,79 @@
 package org.example.benchmarks;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
 import org.example.EpoxyCoordinator;
-import org.example.TransactionContext;
+import org.example.Startup;
+import org.example.shims.DataStoreShim;
 import org.example.shims.PostgresShim;
 import org.example.shims.ElasticsearchShim;
 
 import java.sql.SQLException;
-import java.util.Random;
+import java.util.List;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
 
 public class CartBenchmark {
+    public enum Operation {
+        ADD_TO_CART, CHECKOUT, INSERT_ITEM, UPDATE_ITEM
+    }
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final int NUM_CARTS = 1000;
+    // Mostly shoppers browsing and filling carts, some checking out, and the catalog
+    // occasionally changing underneath them
+    private static final int[] DEFAULT_MIX = {60, 20, 5, 15};
+
+    private final Operation[] operations = Operation.values();
+    private volatile int[] mixThresholds = thresholds(DEFAULT_MIX);
     private final EpoxyCoordinator coordinator;
-    private final PostgresShim postgresShim;
-    private final ElasticsearchShim elasticsearchShim;
-    private final Random random;
+    private final Transactions transactions;
+    private final DataStoreShim postgresShim;
+    private final DataStoreShim elasticsearchShim;
     private static final int NUM_ITEMS = 1000; // Smaller number for testing
 
     public CartBenchmark() throws SQLException {
-        coordinator = new EpoxyCoordinator("jdbc:postgresql://localhost:5432/epoxy_test", "postgres", "test987");
-        postgresShim = new PostgresShim("jdbc:postgresql://localhost:5432/epoxy_test", "postgres", "test987");
-        
-        // Fix: Add http:// protocol to Elasticsearch URL
-        elasticsearchShim = new ElasticsearchShim("localhost");
-        
+        this(BenchmarkEnvironment.coordinated());
+    }
+
+    public CartBenchmark(BenchmarkEnvironment environment) throws SQLException {
+        Startup startup = new Startup();
+        Future<EpoxyCoordinator> coordinatorInit = environment.startCoordinator(startup,
+            "jdbc:postgresql://localhost:5432/epoxy_test", "postgres", "test987");
+        Future<DataStoreShim> postgresInit = environment.startStore(startup, "postgres",
+            () -> new PostgresShim("jdbc:postgresql://localhost:5432/epoxy_test", "postgres", "test987"));
+        Future<DataStoreShim> elasticsearchInit = environment.startStore(startup, "elasticsearch",
+            () -> new ElasticsearchShim("localhost"));
+        coordinator = environment.coordinator(startup, coordinatorInit);
+        postgresShim = environment.store(startup, postgresInit);
+        elasticsearchShim = environment.store(startup, elasticsearchInit);
+        startup.print("Cart Benchmark");
+
         coordinator.addSecondaryStore(postgresShim);
         coordinator.addSecondaryStore(elasticsearchShim);
-        random = new Random();
+        transactions = environment.transactions(coordinator, postgresShim, elasticsearchShim);
         initializeCatalog();
     }
 
     private void initializeCatalog() throws SQLException {
-        TransactionContext txn = coordinator.beginTransaction();
-        try {
+        coordinator.execute(txn -> {
             // Initialize catalog with items
             for (int i = 0; i < NUM_ITEMS; i++) {
                 String itemId = "item" + i;
-                double price = 10.0 + random.nextDouble() * 90.0; // Random price between 10 and 100
+                double price = 10.0 + ThreadLocalRandom.current().nextDouble() * 90.0; // Random price between 10 and 100
                 String itemInfo = String.format("{\"name\":\"Item %d\",\"price\":%.2f}", i, price);
                 
                 // Store in both Postgres and Elasticsearch
                 postgresShim.update(txn, "catalog_" + itemId, itemInfo);
                 elasticsearchShim.update(txn, "catalog_" + itemId, itemInfo);
             }
-            coordinator.commitTransaction(txn);
-        } catch (Exception e) {
-            coordinator.abortTransaction(txn);
-            throw e;
-        }
+            return null;
+        });
     }
 
     public void runBenchmark(int numThreads, int numOperations) throws InterruptedException {
@@ -62,13 +86,15 @@ public class CartBenchmark {
 
         for (int i = 0; i < numOperations; i++) {
             executor.submit(() -> {
+                long startTime = System.nanoTime();
                 try {
-                    long startTime = System.nanoTime();
-                    searchAndAddToCart();
-                    metrics.recordLatency(startTime);
-                } catch (SQLException e) {
-                    System.out.println("Error in searchAndAddToCart: " + e.getMessage());
-                    e.printStackTrace();
+                    runOperation();
+                    metrics.recordCommit(startTime);
+                } catch (SQLException | RuntimeException e) {
+                    metrics.recordFailure(e);
+                    if (BenchmarkMetrics.abortReason(e) == null) {
+                        e.printStackTrace();
+                    }
                 } finally {
                     latch.countDown();
                 }
@@ -83,83 +109,123 @@ public class CartBenchmark {
         }
 
         metrics.printMetrics("Cart Benchmark");
+        coordinator.printCoordinatorStats();
+    }
+
+    public EpoxyCoordinator getCoordinator() {
+        return coordinator;
+    }
+
+    // Weights of add-to-cart, checkout, catalog insert and catalog update, in that order
+    public void setMix(int... weights) {
+        if (weights.length != operations.length) {
+            throw new IllegalArgumentException("Expected " + operations.length + " weights, got " + weights.length);
+        }
+        mixThresholds = thresholds(weights);
+    }
+
+    private static int[] thresholds(int[] weights) {
+        int[] thresholds = new int[weights.length];
+        int total = 0;
+        for (int i = 0; i < weights.length; i++) {
+            total += weights[i];
+            thresholds[i] = total;
+        }
+        return thresholds;
+    }
+
+    // One operation picked from the mix
+    public void runOperation() throws SQLException {
+        int[] thresholds = mixThresholds;
+        int pick = ThreadLocalRandom.current().nextInt(thresholds[thresholds.length - 1]);
+        int op = 0;
+        while (pick >= thresholds[op]) {
+            op++;
+        }
+        switch (operations[op]) {
+            case ADD_TO_CART:
+                searchAndAddToCart();
+                break;
+            case CHECKOUT:
+                checkout();
+                break;
+            case INSERT_ITEM:
+                insertCatalogItem();
+                break;
+            case UPDATE_ITEM:
+                updateCatalogItem();
+                break;
+        }
     }
 
     private void searchAndAddToCart() throws SQLException {
-        TransactionContext txn = coordinator.beginTransaction();
-        try {
-            String itemId = "item" + random.nextInt(NUM_ITEMS);
-            String cartId = "cart" + random.nextInt(1000);
-            
+        String itemId = "item" + ThreadLocalRandom.current().nextInt(NUM_ITEMS);
+        String cartId = "cart" + ThreadLocalRandom.current().nextInt(NUM_CARTS);
+
+        transactions.execute(List.of(cartId), txn -> {
             // Search in Elasticsearch
             String itemInfo = elasticsearchShim.query(txn, "catalog_" + itemId);
-            
+
             if (itemInfo != null) {
-                // Add to cart in Postgres
-                String cartKey = cartId + "_" + itemId;
-                postgresShim.update(txn, cartKey, itemInfo);
+                // Add to the cart document in Postgres
+                ArrayNode cart = parseCart(postgresShim.query(txn, cartId));
+                cart.add(itemId);
+                postgresShim.update(txn, cartId, cart.toString());
             }
-            
-            coordinator.commitTransaction(txn);
-        } catch (Exception e) {
-            coordinator.abortTransaction(txn);
-            throw e;
-        }
+            return null;
+        });
     }
 
     private void checkout() throws SQLException {
-        TransactionContext txn = coordinator.beginTransaction();
-        try {
-            String cartId = "cart" + random.nextInt(1000);
-            String orderId = "order_" + System.nanoTime();
-            
+        String cartId = "cart" + ThreadLocalRandom.current().nextInt(NUM_CARTS);
+        String orderId = "order_" + System.nanoTime();
+
+        transactions.execute(List.of(cartId), txn -> {
             // Move items from cart to order
             String cartItems = postgresShim.query(txn, cartId);
-            if (cartItems != null) {
+            if (parseCart(cartItems).size() > 0) {
                 postgresShim.update(txn, orderId, cartItems);
-                postgresShim.update(txn, cartId, null); // Clear cart
+                postgresShim.update(txn, cartId, "[]"); // Clear cart
             }
-            
-            coordinator.commitTransaction(txn);
-        } catch (Exception e) {
-            coordinator.abortTransaction(txn);
-            throw e;
+            return null;
+        });
+    }
+
+    // A cart is a JSON array of item ids; one never added to reads as null
+    private static ArrayNode parseCart(String json) {
+        if (json == null) {
+            return MAPPER.createArrayNode();
+        }
+        try {
+            return (ArrayNode) MAPPER.readTree(json);
+        } catch (JsonProcessingException e) {
+            throw new RuntimeException("Malformed cart: " + json, e);
         }
     }
 
     private void insertCatalogItem() throws SQLException {
-        TransactionContext txn = coordinator.beginTransaction();
-        try {
-            String itemId = "item_" + System.nanoTime();
-            double price = 10.0 + random.nextDouble() * 90.0;
-            String itemInfo = String.format("{\"name\":\"%s\",\"price\":%.2f}", itemId, price);
-            
+        String itemId = "item_" + System.nanoTime();
+        double price = 10.0 + ThreadLocalRandom.current().nextDouble() * 90.0;
+        String itemInfo = String.format("{\"name\":\"%s\",\"price\":%.2f}", itemId, price);
+
+        transactions.execute(txn -> {
             // Insert in both stores
             postgresShim.update(txn, "catalog_" + itemId, itemInfo);
             elasticsearchShim.update(txn, "catalog_" + itemId, itemInfo);
-            
-            coordinator.commitTransaction(txn);
-        } catch (Exception e) {
-            coordinator.abortTransaction(txn);
-            throw e;
-        }
+            return null;
+        });
     }
 
     private void updateCatalogItem() throws SQLException {
-        TransactionContext txn = coordinator.beginTransaction();
-        try {
-            String itemId = "item" + random.nextInt(NUM_ITEMS);
-            double newPrice = 10.0 + random.nextDouble() * 90.0;
-            String itemInfo = String.format("{\"name\":\"Item %s\",\"price\":%.2f}", itemId, newPrice);
-            
+        String itemId = "item" + ThreadLocalRandom.current().nextInt(NUM_ITEMS);
+        double newPrice = 10.0 + ThreadLocalRandom.current().nextDouble() * 90.0;
+        String itemInfo = String.format("{\"name\":\"Item %s\",\"price\":%.2f}", itemId, newPrice);
+
+        transactions.execute(txn -> {
             // Update in both stores
             postgresShim.update(txn, "catalog_" + itemId, itemInfo);
             elasticsearchShim.update(txn, "catalog_" + itemId, itemInfo);
-            
-            coordinator.commitTransaction(txn);
-        } catch (Exception e) {
-            coordinator.abortTransaction(txn);
-            throw e;
-        }
+            return null;
+        });
     }
 }
\ No newline at end of file
@@ -4,25 +4,37 @@ import java.sql.SQLException;
 import java.util.concurrent.*;
 
 import org.example.EpoxyCoordinator;
-import org.example.TransactionContext;
+import org.example.Startup;
+import org.example.shims.DataStoreShim;
 import org.example.shims.MongoDBShim;
 import org.example.shims.PostgresShim;
 
-import java.util.Random;
 
 public class EndToEndMicroserviceBenchmark {
     private EpoxyCoordinator coordinator;
-    private PostgresShim postgresShim;
-    private MongoDBShim mongoDBShim;
-    private Random random;
+    private Transactions transactions;
+    private DataStoreShim postgresShim;
+    private DataStoreShim mongoDBShim;
 
     public EndToEndMicroserviceBenchmark() throws SQLException {
-        coordinator = new EpoxyCoordinator("jdbc:postgresql://localhost:5432/epoxy_test", "postgres", "test987");
-        postgresShim = new PostgresShim("jdbc:postgresql://localhost:5432/epoxy_test", "postgres", "test987");
-        mongoDBShim = new MongoDBShim("mongodb://localhost:27017", "epoxy_test");
+        this(BenchmarkEnvironment.coordinated());
+    }
+
+    public EndToEndMicroserviceBenchmark(BenchmarkEnvironment environment) throws SQLException {
+        Startup startup = new Startup();
+        Future<EpoxyCoordinator> coordinatorInit = environment.startCoordinator(startup,
+            "jdbc:postgresql://localhost:5432/epoxy_test", "postgres", "test987");
+        Future<DataStoreShim> postgresInit = environment.startStore(startup, "postgres",
+            () -> new PostgresShim("jdbc:postgresql://localhost:5432/epoxy_test", "postgres", "test987"));
+        Future<DataStoreShim> mongoInit = environment.startStore(startup, "mongodb",
+            () -> new MongoDBShim("mongodb://localhost:27017", "epoxy_test"));
+        coordinator = environment.coordinator(startup, coordinatorInit);
+        postgresShim = environment.store(startup, postgresInit);
+        mongoDBShim = environment.store(startup, mongoInit);
+        startup.print("Microservice Benchmark");
         coordinator.addSecondaryStore(postgresShim);
         coordinator.addSecondaryStore(mongoDBShim);
-        random = new Random();
+        transactions = environment.transactions(coordinator, postgresShim, mongoDBShim);
     }
 
     public void runBenchmark(int numThreads, int numTransactions, double readWriteRatio, double crossStoreRatio) throws InterruptedException {
@@ -36,15 +48,14 @@ public class EndToEndMicroserviceBenchmark {
             executor.submit(() -> {
                 long txnStartTime = System.nanoTime();
                 try {
-                    if (random.nextDouble() < readWriteRatio) {
-                        runReadTransaction(crossStoreRatio);
-                    } else {
-                        runWriteTransaction(crossStoreRatio);
+                    runOperation(readWriteRatio, crossStoreRatio);
+                    metrics.recordCommit(txnStartTime);
+                } catch (SQLException | RuntimeException e) {
+                    metrics.recordFailure(e);
+                    if (BenchmarkMetrics.abortReason(e) == null) {
+                        e.printStackTrace();
                     }
-                } catch (SQLException e) {
-                    e.printStackTrace();
                 } finally {
-                    metrics.recordLatency(txnStartTime);
                     latch.countDown();
                 }
             });
@@ -56,29 +67,43 @@ public class EndToEndMicroserviceBenchmark {
 
         metrics.end();
         metrics.printMetrics("Microservice Benchmark");
+        coordinator.printCoordinatorStats();
+    }
+
+    public EpoxyCoordinator getCoordinator() {
+        return coordinator;
+    }
+
+    // One transaction: a read with probability readWriteRatio, otherwise a write, each
+    // touching both stores with probability crossStoreRatio
+    public void runOperation(double readWriteRatio, double crossStoreRatio) throws SQLException {
+        if (ThreadLocalRandom.current().nextDouble() < readWriteRatio) {
+            runReadTransaction(crossStoreRatio);
+        } else {
+            runWriteTransaction(crossStoreRatio);
+        }
     }
 
     private void runReadTransaction(double crossStoreRatio) throws SQLException {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
         String key = "key" + random.nextInt(1000);
+        // Chosen up front so a retry after a conflict repeats the same transaction
+        boolean crossStore = random.nextDouble() < crossStoreRatio;
+        boolean readPostgres = crossStore || random.nextBoolean();
+        boolean readMongo = crossStore || !readPostgres;
         Object lock = coordinator.acquireGlobalLock(key);
         
         synchronized(lock) {
-            TransactionContext txn = coordinator.beginTransaction();
             try {
-                if (random.nextDouble() < crossStoreRatio) {
-                    postgresShim.query(txn, key);
-                    mongoDBShim.query(txn, key);
-                } else {
-                    if (random.nextBoolean()) {
+                transactions.execute(txn -> {
+                    if (readPostgres) {
                         postgresShim.query(txn, key);
-                    } else {
+                    }
+                    if (readMongo) {
                         mongoDBShim.query(txn, key);
                     }
-                }
-                coordinator.commitTransaction(txn);
-            } catch (Exception e) {
-                coordinator.abortTransaction(txn);
-                throw e;
+                    return null;
+                });
             } finally {
                 coordinator.releaseGlobalLock(key);
             }
@@ -86,28 +111,26 @@ public class EndToEndMicroserviceBenchmark {
     }
 
     private void runWriteTransaction(double crossStoreRatio) throws SQLException {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
         String key = "key_" + System.nanoTime() + "_" + random.nextInt(1000);
+        // Chosen up front so a retry after a conflict repeats the same transaction
+        String value = "value_" + System.nanoTime();
+        boolean crossStore = random.nextDouble() < crossStoreRatio;
+        boolean writePostgres = crossStore || random.nextBoolean();
+        boolean writeMongo = crossStore || !writePostgres;
         Object lock = coordinator.acquireGlobalLock(key);
         
         synchronized(lock) {
-            TransactionContext txn = coordinator.beginTransaction();
             try {
-                String value = "value_" + System.nanoTime();
-                
-                if (random.nextDouble() < crossStoreRatio) {
-                    postgresShim.update(txn, key, value);
-                    mongoDBShim.update(txn, key, value);
-                } else {
-                    if (random.nextBoolean()) {
+                transactions.execute(txn -> {
+                    if (writePostgres) {
                         postgresShim.update(txn, key, value);
-                    } else {
+                    }
+                    if (writeMongo) {
                         mongoDBShim.update(txn, key, value);
                     }
-                }
-                coordinator.commitTransaction(txn);
-            } catch (Exception e) {
-                coordinator.abortTransaction(txn);
-                throw e;
+                    return null;
+                });
             } finally {
                 coordinator.releaseGlobalLock(key);
             }
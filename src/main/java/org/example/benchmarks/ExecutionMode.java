@@ -0,0 +1,25 @@
+package org.example.benchmarks;
+
+import java.util.Locale;
+
+// What sits between a benchmark's operations and its stores. Running the same workload
+// in each mode separates what the stores cost from what the coordinator adds.
+public enum ExecutionMode {
+    // Through the coordinator to the real stores
+    COORDINATED,
+    // The same store calls with no coordinated transaction around them: no snapshot,
+    // validation or primary commit, and no isolation, so a floor for what the stores cost
+    DIRECT,
+    // Through an in-process coordinator to stores that do no work, so all that is left is
+    // the coordinator's own bookkeeping
+    COORDINATOR_ONLY;
+
+    // Accepts the names as written on the command line, e.g. coordinator-only
+    public static ExecutionMode parse(String name) {
+        return valueOf(name.trim().toUpperCase(Locale.ROOT).replace('-', '_'));
+    }
+
+    public String label() {
+        return name().toLowerCase(Locale.ROOT).replace('_', '-');
+    }
+}
@@ -3,54 +3,63 @@ package org.example.benchmarks;
 import java.sql.SQLException;
 import java.util.concurrent.*;
 
+import org.example.shims.DataStoreShim;
 import org.example.shims.PostgresShim;
 import org.example.EpoxyCoordinator;
-import org.example.TransactionContext;
+import org.example.Startup;
 import org.example.shims.MongoDBShim;
 
-import java.util.Random;
 import java.util.List;
 import java.util.ArrayList;
 import java.util.Collections;
 
 public class HotelBenchmark {
     private EpoxyCoordinator coordinator;
-    private PostgresShim postgresShim;
-    private MongoDBShim mongoDBShim;
-    private Random random;
+    private Transactions transactions;
+    private DataStoreShim postgresShim;
+    private DataStoreShim mongoDBShim;
     private static final int NUM_HOTELS = 100;
+    private volatile double searchRatio = 0.8;
 
     public HotelBenchmark() throws SQLException {
-        // Now connect to the database and create table if needed
-        coordinator = new EpoxyCoordinator("jdbc:postgresql://localhost:5432/epoxy_test", "postgres", "test987");
-        postgresShim = new PostgresShim("jdbc:postgresql://localhost:5432/epoxy_test", "postgres", "test987");
-        mongoDBShim = new MongoDBShim("mongodb://localhost:27017", "epoxy_test");
+        this(BenchmarkEnvironment.coordinated());
+    }
+
+    public HotelBenchmark(BenchmarkEnvironment environment) throws SQLException {
+        // Connect to every store at once; tables are only created the first time
+        Startup startup = new Startup();
+        Future<EpoxyCoordinator> coordinatorInit = environment.startCoordinator(startup,
+            "jdbc:postgresql://localhost:5432/epoxy_test", "postgres", "test987");
+        Future<DataStoreShim> postgresInit = environment.startStore(startup, "postgres",
+            () -> new PostgresShim("jdbc:postgresql://localhost:5432/epoxy_test", "postgres", "test987"));
+        Future<DataStoreShim> mongoInit = environment.startStore(startup, "mongodb",
+            () -> new MongoDBShim("mongodb://localhost:27017", "epoxy_test"));
+        coordinator = environment.coordinator(startup, coordinatorInit);
+        postgresShim = environment.store(startup, postgresInit);
+        mongoDBShim = environment.store(startup, mongoInit);
+        startup.print("Hotel Benchmark");
         coordinator.addSecondaryStore(postgresShim);
         coordinator.addSecondaryStore(mongoDBShim);
-        random = new Random();
+        transactions = environment.transactions(coordinator, postgresShim, mongoDBShim);
         initializeHotels();
     }
 
     private void initializeHotels() throws SQLException {
-        TransactionContext txn = coordinator.beginTransaction();
-        try {
+        coordinator.execute(txn -> {
             for (int i = 0; i < NUM_HOTELS; i++) {
                 String hotelId = "hotel" + i;
                 // Initialize room availability in Postgres
                 postgresShim.update(txn, hotelId + "_rooms", "50"); // Each hotel starts with 50 rooms
                 
                 // Initialize hotel info in MongoDB with random coordinates
-                double lat = random.nextDouble() * 180 - 90; // Random latitude between -90 and 90
-                double lon = random.nextDouble() * 360 - 180; // Random longitude between -180 and 180
+                double lat = ThreadLocalRandom.current().nextDouble() * 180 - 90; // Random latitude between -90 and 90
+                double lon = ThreadLocalRandom.current().nextDouble() * 360 - 180; // Random longitude between -180 and 180
                 String hotelInfo = String.format("{\"name\":\"Hotel %d\",\"location\":{\"type\":\"Point\",\"coordinates\":[%f,%f]}}", 
                     i, lon, lat);
                 mongoDBShim.update(txn, hotelId + "_info", hotelInfo);
             }
-            coordinator.commitTransaction(txn);
-        } catch (Exception e) {
-            coordinator.abortTransaction(txn);
-            throw e;
-        }
+            return null;
+        });
     }
 
     public void runBenchmark(int numThreads, int numOperations) throws InterruptedException {
@@ -64,15 +73,14 @@ public class HotelBenchmark {
                 executor.submit(() -> {
                     long startTime = System.nanoTime();
                     try {
-                        if (random.nextDouble() < 0.8) {
-                            searchAvailableRooms();
-                        } else {
-                            makeReservation();
+                        runOperation();
+                        metrics.recordCommit(startTime);
+                    } catch (SQLException | RuntimeException e) {
+                        metrics.recordFailure(e);
+                        if (BenchmarkMetrics.abortReason(e) == null) {
+                            e.printStackTrace();
                         }
-                    } catch (SQLException e) {
-                        e.printStackTrace();
                     } finally {
-                        metrics.recordLatency(startTime);
                         latch.countDown();
                     }
                 });
@@ -86,53 +94,69 @@ public class HotelBenchmark {
                 System.err.println("Executor did not terminate in the specified time.");
             }
             metrics.printMetrics("Hotel Benchmark");
+            coordinator.printCoordinatorStats();
+        }
+    }
+
+    // Fraction of operations that are searches; the rest are reservations
+    public void setSearchRatio(double searchRatio) {
+        this.searchRatio = searchRatio;
+    }
+
+    public EpoxyCoordinator getCoordinator() {
+        return coordinator;
+    }
+
+    // One transaction from the mix: searches, otherwise reservations
+    public void runOperation() throws SQLException {
+        if (ThreadLocalRandom.current().nextDouble() < searchRatio) {
+            searchAvailableRooms();
+        } else {
+            makeReservation();
         }
     }
 
     private void searchAvailableRooms() throws SQLException {
-        TransactionContext txn = coordinator.beginTransaction();
-        try {
-            String hotelId = "hotel" + random.nextInt(NUM_HOTELS);
-            
+        String hotelId = "hotel" + ThreadLocalRandom.current().nextInt(NUM_HOTELS);
+
+        transactions.execute(txn -> {
+            // Read both stores at once rather than one after the other
+            txn.prefetch(postgresShim, hotelId + "_rooms");
+            txn.prefetch(mongoDBShim, hotelId + "_info");
+
             // Query room availability from Postgres
             String availableRooms = postgresShim.query(txn, hotelId + "_rooms");
             
             // Query hotel info from MongoDB (including geospatial data)
             String hotelInfo = mongoDBShim.query(txn, hotelId + "_info");
-            
-            coordinator.commitTransaction(txn);
-        } catch (Exception e) {
-            coordinator.abortTransaction(txn);
-            throw e;
-        }
+            return null;
+        });
     }
 
     private void makeReservation() throws SQLException {
-        TransactionContext txn = coordinator.beginTransaction();
-        try {
-            String hotelId = "hotel" + random.nextInt(NUM_HOTELS);
-            
+        String hotelId = "hotel" + ThreadLocalRandom.current().nextInt(NUM_HOTELS);
+        String reservationId = "res_" + System.currentTimeMillis() + "_" + ThreadLocalRandom.current().nextInt(1000);
+        String roomsKey = hotelId + "_rooms";
+
+        // The room count is the contended key; declaring it lets the coordinator
+        // queue reservations for a hot hotel instead of letting them abort
+        transactions.execute(List.of(roomsKey), txn -> {
             // Check and update room availability in Postgres
-            String currentRooms = postgresShim.query(txn, hotelId + "_rooms");
+            String currentRooms = postgresShim.query(txn, roomsKey);
             int availableRooms = Integer.parseInt(currentRooms);
             
+            // Sold out: nothing has been written, so committing the read-only
+            // transaction is equivalent to aborting it
             if (availableRooms > 0) {
                 // Update room count in Postgres
-                postgresShim.update(txn, hotelId + "_rooms", String.valueOf(availableRooms - 1));
+                postgresShim.update(txn, roomsKey, String.valueOf(availableRooms - 1));
                 
                 // Create reservation in MongoDB
-                String reservationId = "res_" + System.currentTimeMillis() + "_" + random.nextInt(1000);
                 String reservationInfo = String.format("{\"hotelId\":\"%s\",\"timestamp\":%d}", 
                     hotelId, System.currentTimeMillis());
                 mongoDBShim.update(txn, reservationId, reservationInfo);
-                
-                coordinator.commitTransaction(txn);
-            } else {
-                coordinator.abortTransaction(txn);
             }
-        } catch (Exception e) {
-            coordinator.abortTransaction(txn);
-            throw e;
-        }
+            return null;
+        });
     }
 }
\ No newline at end of file
@@ -0,0 +1,133 @@
+package org.example.benchmarks;
+
+import java.util.Random;
+
+// Picks record numbers in [0, itemCount) the way YCSB's generators do. itemCount may
+// grow between calls as records are inserted. Implementations are thread-safe; the
+// caller supplies the random source.
+abstract class KeyDistribution {
+    abstract long next(Random random, long itemCount);
+
+    static KeyDistribution uniform() {
+        return new KeyDistribution() {
+            @Override
+            long next(Random random, long itemCount) {
+                return (long) (random.nextDouble() * itemCount);
+            }
+        };
+    }
+
+    // Zipfian with the popular records scattered across the key space by hashing, as YCSB's
+    // scrambled zipfian does, so they don't all land on neighbouring keys
+    static KeyDistribution zipfian(double theta) {
+        Zipfian ranks = new Zipfian(theta);
+        return new KeyDistribution() {
+            @Override
+            long next(Random random, long itemCount) {
+                return Long.remainderUnsigned(fnv64(ranks.next(random, itemCount)), itemCount);
+            }
+        };
+    }
+
+    // Zipfian over recency: the newest record is the most popular
+    static KeyDistribution latest(double theta) {
+        Zipfian ranks = new Zipfian(theta);
+        return new KeyDistribution() {
+            @Override
+            long next(Random random, long itemCount) {
+                return itemCount - 1 - ranks.next(random, itemCount);
+            }
+        };
+    }
+
+    // hotOperationFraction of picks go uniformly to the first hotSetFraction of records,
+    // the rest uniformly to the others
+    static KeyDistribution hotspot(double hotSetFraction, double hotOperationFraction) {
+        return new KeyDistribution() {
+            @Override
+            long next(Random random, long itemCount) {
+                long hot = Math.max(1, Math.min(itemCount, (long) (itemCount * hotSetFraction)));
+                if (hot == itemCount || random.nextDouble() < hotOperationFraction) {
+                    return (long) (random.nextDouble() * hot);
+                }
+                return hot + (long) (random.nextDouble() * (itemCount - hot));
+            }
+        };
+    }
+
+    private static long fnv64(long value) {
+        long hash = 0xCBF29CE484222325L;
+        for (int i = 0; i < 8; i++) {
+            hash ^= value & 0xff;
+            hash *= 0x100000001B3L;
+            value >>>= 8;
+        }
+        return hash;
+    }
+
+    // Rank 0 is the most popular. Uses the rejection-free method of Gray et al., "Quickly
+    // Generating Billion-Record Synthetic Databases", which needs zeta(n) = sum of
+    // 1/i^theta for i = 1..n; that is computed once and extended as n grows.
+    private static final class Zipfian {
+        private final double theta;
+        private final double alpha;
+        private final double zeta2;
+        private volatile State state;
+
+        private static final class State {
+            final long items;
+            final double zetaN;
+            final double eta;
+
+            State(long items, double zetaN, double eta) {
+                this.items = items;
+                this.zetaN = zetaN;
+                this.eta = eta;
+            }
+        }
+
+        Zipfian(double theta) {
+            if (theta <= 0 || theta >= 1) {
+                throw new IllegalArgumentException("Zipfian theta must be in (0, 1), got " + theta);
+            }
+            this.theta = theta;
+            this.alpha = 1 / (1 - theta);
+            this.zeta2 = 1 + Math.pow(0.5, theta);
+            this.state = new State(0, 0, 0);
+        }
+
+        long next(Random random, long itemCount) {
+            State s = state;
+            if (s.items < itemCount) {
+                s = stateFor(itemCount);
+            }
+            // A caller with a slightly stale count is served from the larger state and clamped
+            double u = random.nextDouble();
+            double uz = u * s.zetaN;
+            if (uz < 1) {
+                return 0;
+            }
+            if (uz < zeta2) {
+                return Math.min(1, itemCount - 1);
+            }
+            long rank = (long) (s.items * Math.pow(s.eta * u - s.eta + 1, alpha));
+            return Math.min(rank, itemCount - 1);
+        }
+
+        // Inserts only ever grow the count, so the sum is extended rather than redone
+        private synchronized State stateFor(long itemCount) {
+            State s = state;
+            if (s.items >= itemCount) {
+                return s;
+            }
+            double zetaN = s.zetaN;
+            for (long i = s.items + 1; i <= itemCount; i++) {
+                zetaN += 1 / Math.pow(i, theta);
+            }
+            double eta = (1 - Math.pow(2.0 / itemCount, 1 - theta)) / (1 - zeta2 / zetaN);
+            s = new State(itemCount, zetaN, eta);
+            state = s;
+            return s;
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package org.example.benchmarks;
+
+import org.example.EpoxyCoordinator;
+import org.example.shims.DataStoreShim;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.LongAdder;
+
+// Rows for one shim during an initial load, committed through the coordinator every
+// maxRows so no single transaction grows without bound. Not thread-safe; each loader
+// task uses its own.
+final class LoadBatch {
+    private final EpoxyCoordinator coordinator;
+    private final DataStoreShim shim;
+    private final int maxRows;
+    private final LongAdder loaded;
+    private final List<String> keys;
+    private final List<String> values;
+
+    LoadBatch(EpoxyCoordinator coordinator, DataStoreShim shim, int maxRows, LongAdder loaded) {
+        this.coordinator = coordinator;
+        this.shim = shim;
+        this.maxRows = maxRows;
+        this.loaded = loaded;
+        this.keys = new ArrayList<>(maxRows);
+        this.values = new ArrayList<>(maxRows);
+    }
+
+    void add(String key, String value) throws SQLException {
+        keys.add(key);
+        values.add(value);
+        if (keys.size() >= maxRows) {
+            flush();
+        }
+    }
+
+    void flush() throws SQLException {
+        if (keys.isEmpty()) {
+            return;
+        }
+        coordinator.execute(txn -> {
+            for (int i = 0; i < keys.size(); i++) {
+                shim.update(txn, keys.get(i), values.get(i));
+            }
+            return null;
+        });
+        loaded.add(keys.size());
+        keys.clear();
+        values.clear();
+    }
+
+    // Waits for a loader task, rethrowing whatever it failed with
+    static void await(Future<Void> task) throws SQLException {
+        try {
+            task.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof SQLException) {
+                throw (SQLException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new SQLException("Load failed", cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted during load", e);
+        }
+    }
+}
@@ -0,0 +1,189 @@
+package org.example.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+// Issues operations on a fixed arrival schedule, whether or not earlier ones have finished
+// (open loop), instead of starting the next one whenever a worker frees up. Response time
+// is measured from when an operation was scheduled to start, so time spent queued behind
+// a slow store counts against it rather than silently lowering the offered load
+// (coordinated omission). Service time, from when a worker actually picked it up, is
+// reported alongside to show how much of the response time was queueing.
+public final class OpenLoopDriver {
+    // Queueing is only called saturation once it exceeds both the service time and this
+    private static final long MIN_QUEUEING_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final double MIN_ACHIEVED_FRACTION = 0.95;
+
+    @FunctionalInterface
+    public interface Operation {
+        void run() throws Exception;
+    }
+
+    public enum Arrivals {
+        // Evenly spaced
+        CONSTANT,
+        // Exponentially distributed gaps, as from many independent clients
+        POISSON
+    }
+
+    public static final class Step {
+        final double offeredRate;
+        // What the schedule actually issued per second; with Poisson arrivals it varies around offeredRate
+        final double scheduledRate;
+        final double achievedRate;
+        final long issued;
+        final long failed;
+        // Of the failures, those where the coordinator gave up on the transaction
+        final long aborted;
+        // Both only over operations that committed
+        final LatencyHistogram responseTime;
+        final LatencyHistogram serviceTime;
+
+        Step(double offeredRate, double scheduledRate, double achievedRate, long issued, long failed, long aborted,
+             LatencyHistogram responseTime, LatencyHistogram serviceTime) {
+            this.offeredRate = offeredRate;
+            this.scheduledRate = scheduledRate;
+            this.achievedRate = achievedRate;
+            this.issued = issued;
+            this.failed = failed;
+            this.aborted = aborted;
+            this.responseTime = responseTime;
+            this.serviceTime = serviceTime;
+        }
+
+        // Fell behind the schedule, or requests spent longer queued than being served
+        public boolean isSaturated() {
+            long queueing = responseTime.percentile(0.5) - serviceTime.percentile(0.5);
+            return achievedRate < MIN_ACHIEVED_FRACTION * scheduledRate
+                || queueing > Math.max(serviceTime.percentile(0.5), MIN_QUEUEING_NANOS);
+        }
+
+        public double getOfferedRate() {
+            return offeredRate;
+        }
+
+        public double getAchievedRate() {
+            return achievedRate;
+        }
+
+        public long getIssued() {
+            return issued;
+        }
+
+        public long getFailed() {
+            return failed;
+        }
+
+        // In nanoseconds, from the scheduled start
+        public long getResponseTime(double percentile) {
+            return responseTime.percentile(percentile);
+        }
+
+        public long getServiceTime(double percentile) {
+            return serviceTime.percentile(percentile);
+        }
+
+        void print(String name) {
+            System.out.printf("%s @ %.0f/s (%s): achieved %.0f/s, %d issued, %d failed (%d aborted)%n", name,
+                offeredRate, isSaturated() ? "saturated" : "ok", achievedRate, issued, failed, aborted);
+            System.out.printf("  response (us): p50 %.1f, p90 %.1f, p99 %.1f, p99.9 %.1f, max %.1f%n",
+                responseTime.percentile(0.5) / 1e3, responseTime.percentile(0.9) / 1e3,
+                responseTime.percentile(0.99) / 1e3, responseTime.percentile(0.999) / 1e3,
+                responseTime.getMax() / 1e3);
+            System.out.printf("  service  (us): p50 %.1f, p99 %.1f%n",
+                serviceTime.percentile(0.5) / 1e3, serviceTime.percentile(0.99) / 1e3);
+        }
+    }
+
+    private final int workers;
+    private final Arrivals arrivals;
+
+    // workers bounds how many operations run at once; it should comfortably exceed
+    // rate x service time, or the pool itself becomes the queue
+    public OpenLoopDriver(int workers, Arrivals arrivals) {
+        this.workers = workers;
+        this.arrivals = arrivals;
+    }
+
+    // Offers ratePerSecond for the duration, then waits for everything issued to finish
+    public Step run(String name, double ratePerSecond, long duration, TimeUnit unit, Operation operation)
+            throws InterruptedException {
+        ExecutorService pool = Executors.newFixedThreadPool(workers, r -> {
+            Thread t = new Thread(r, "open-loop-worker");
+            t.setDaemon(true);
+            return t;
+        });
+        BenchmarkMetrics response = new BenchmarkMetrics();
+        BenchmarkMetrics service = new BenchmarkMetrics();
+        response.start(0);
+        service.start(0);
+        LongAdder failed = new LongAdder();
+        SplittableRandom random = new SplittableRandom();
+
+        double gapNanos = 1e9 / ratePerSecond;
+        long start = System.nanoTime();
+        long durationNanos = unit.toNanos(duration);
+        // Offset of the next scheduled start; kept fractional so rounding doesn't drift the rate
+        double next = 0;
+        long issued = 0;
+        while (next < durationNanos) {
+            long intendedStart = start + (long) next;
+            long wait = intendedStart - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+            }
+            // If we woke late, the operation still counts from when it should have started
+            pool.execute(() -> {
+                long began = System.nanoTime();
+                try {
+                    operation.run();
+                    response.recordCommit(intendedStart);
+                    service.recordLatency(began);
+                } catch (Exception e) {
+                    failed.increment();
+                    response.recordFailure(e);
+                }
+            });
+            issued++;
+            next += arrivals == Arrivals.POISSON ? -Math.log(1 - random.nextDouble()) * gapNanos : gapNanos;
+        }
+        pool.shutdown();
+        pool.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        double elapsedSeconds = (System.nanoTime() - start) / 1e9;
+
+        Step step = new Step(ratePerSecond, issued / (durationNanos / 1e9), issued / elapsedSeconds, issued, failed.sum(),
+            response.getAborted(), response.latencies(), service.latencies());
+        step.print(name);
+        return step;
+    }
+
+    // Steps the rate from startRate to endRate, holding each for stepDuration, and stops
+    // after the first saturated step. The knee is the last rate that kept up.
+    public List<Step> ramp(String name, double startRate, double endRate, int steps, long stepDuration,
+                           TimeUnit unit, Operation operation) throws InterruptedException {
+        List<Step> results = new ArrayList<>();
+        double knee = 0;
+        for (int i = 0; i < steps; i++) {
+            double rate = steps == 1 ? startRate : startRate + (endRate - startRate) * i / (steps - 1);
+            Step step = run(name, rate, stepDuration, unit, operation);
+            results.add(step);
+            if (step.isSaturated()) {
+                break;
+            }
+            knee = rate;
+        }
+        if (knee == 0) {
+            System.out.printf("%s: saturated already at %.0f/s%n", name, startRate);
+        } else {
+            System.out.printf("%s: knee at %.0f/s%s%n", name, knee,
+                results.get(results.size() - 1).isSaturated() ? "" : " (never saturated; raise endRate)");
+        }
+        return results;
+    }
+}
@@ -0,0 +1,13 @@
+package org.example.benchmarks;
+
+// Thrown by a workload operation whose transaction the application rolled back on
+// purpose (e.g. a TPC-C NewOrder on an unused item), after it has counted it itself.
+// BenchmarkMetrics counts it as an abort, so it stays out of commits and goodput.
+final class RolledBackException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    RolledBackException(String message) {
+        // Expected and frequent, so skip the stack trace
+        super(message, null, false, false);
+    }
+}
@@ -0,0 +1,261 @@
+package org.example.benchmarks;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+// Runs workloads for a fixed time at each point of a thread-count sweep (closed loop) or
+// rate ramp (open loop), after an unmeasured warmup, and collects one result row per point
+// for writing out as JSON or CSV. Trace replays add a row per speed.
+public final class ScalingRunner {
+    private static final String[] COLUMNS = {
+        "workload", "mode", "threads", "offered_rate", "seconds", "committed", "aborted", "errored",
+        "goodput", "p50_us", "p90_us", "p99_us", "p999_us", "max_us", "mean_us", "extra"
+    };
+
+    private static final ObjectMapper JSON = new ObjectMapper();
+
+    // Lets a workload report figures of its own (tpmC, per-transaction counts) for exactly
+    // the measured window of each run; they are printed and written out with the row
+    public interface Reporter {
+        void reset();
+
+        Map<String, Double> report(double seconds);
+
+        // Each reporter's figures in turn, later ones winning on a name clash
+        static Reporter combine(Reporter... reporters) {
+            return new Reporter() {
+                @Override
+                public void reset() {
+                    for (Reporter reporter : reporters) {
+                        reporter.reset();
+                    }
+                }
+
+                @Override
+                public Map<String, Double> report(double seconds) {
+                    Map<String, Double> figures = new LinkedHashMap<>();
+                    for (Reporter reporter : reporters) {
+                        figures.putAll(reporter.report(seconds));
+                    }
+                    return figures;
+                }
+            };
+        }
+    }
+
+    private static final Reporter NO_REPORTER = new Reporter() {
+        @Override
+        public void reset() {
+        }
+
+        @Override
+        public Map<String, Double> report(double seconds) {
+            return Collections.emptyMap();
+        }
+    };
+
+    private final long warmupNanos;
+    private final long durationNanos;
+    private final List<Object[]> rows = new ArrayList<>();
+
+    public ScalingRunner(long warmup, long duration, TimeUnit unit) {
+        this.warmupNanos = unit.toNanos(warmup);
+        this.durationNanos = unit.toNanos(duration);
+    }
+
+    // Each thread runs operations back to back; the warmup runs at each thread count first
+    // so every point starts with the same JIT and connection state
+    public void sweep(String workload, int[] threadCounts, OpenLoopDriver.Operation operation)
+            throws InterruptedException {
+        sweep(workload, threadCounts, operation, NO_REPORTER);
+    }
+
+    public void sweep(String workload, int[] threadCounts, OpenLoopDriver.Operation operation, Reporter reporter)
+            throws InterruptedException {
+        for (int threads : threadCounts) {
+            if (warmupNanos > 0) {
+                runClosed(threads, warmupNanos, operation, new BenchmarkMetrics(), () -> { });
+            }
+            BenchmarkMetrics metrics = new BenchmarkMetrics();
+            double seconds = runClosed(threads, durationNanos, operation, metrics, reporter::reset);
+            LatencyHistogram latencies = metrics.latencies();
+            double goodput = metrics.getCommitted() / seconds;
+            System.out.printf("%s, %d threads: %.1f commits/s, %d aborted %s, %d errored, p50 %.1f us, p99 %.1f us, p99.9 %.1f us%n",
+                workload, threads, goodput, metrics.getAborted(), metrics.getAbortReasons(), metrics.getErrored(),
+                latencies.percentile(0.5) / 1e3, latencies.percentile(0.99) / 1e3, latencies.percentile(0.999) / 1e3);
+            Map<String, Double> extra = new LinkedHashMap<>();
+            metrics.getAbortReasons().forEach((reason, count) -> extra.put("aborted_" + reason, (double) count));
+            extra.putAll(reporter.report(seconds));
+            addRow(workload, "closed", threads, Double.NaN, seconds, metrics.getCommitted(), metrics.getAborted(),
+                metrics.getErrored(), goodput, latencies, extra);
+        }
+    }
+
+    // Open loop: warms up at the starting rate, then ramps until saturation. Workload
+    // reporters aren't consulted, since a ramp's steps aren't separate runs of it.
+    public void ramp(String workload, OpenLoopDriver driver, int workers, double startRate, double endRate,
+                     int steps, OpenLoopDriver.Operation operation) throws InterruptedException {
+        if (warmupNanos > 0) {
+            driver.run(workload + " warmup", startRate, warmupNanos, TimeUnit.NANOSECONDS, operation);
+        }
+        for (OpenLoopDriver.Step step : driver.ramp(workload, startRate, endRate, steps, durationNanos,
+                TimeUnit.NANOSECONDS, operation)) {
+            double seconds = step.issued / step.achievedRate;
+            long committed = step.issued - step.failed;
+            addRow(workload, "open", workers, step.offeredRate, seconds, committed, step.aborted,
+                step.failed - step.aborted, committed / seconds, step.responseTime, Collections.emptyMap());
+        }
+    }
+
+    // Replays the whole trace once at each speed; no warmup, the schedule is the trace's
+    public void replay(String workload, TraceReplay replay, double[] speeds) throws InterruptedException {
+        for (double speed : speeds) {
+            TraceReplay.Result result = replay.run(speed);
+            result.print(workload);
+            double seconds = result.getSeconds();
+            addRow(workload, "replay", replay.getThreads(), replay.getRecordedRate() * speed, seconds,
+                result.getCommitted(), result.getAborted(), result.getErrored(), result.getCommitted() / seconds,
+                result.getLatencies(), result.report());
+        }
+    }
+
+    private double runClosed(int threads, long nanos, OpenLoopDriver.Operation operation,
+                             BenchmarkMetrics metrics, Runnable onStart) throws InterruptedException {
+        CountDownLatch ready = new CountDownLatch(threads);
+        CountDownLatch go = new CountDownLatch(1);
+        long[] end = new long[1];
+        List<Thread> workers = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            Thread worker = new Thread(() -> {
+                ready.countDown();
+                try {
+                    go.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                while (System.nanoTime() - end[0] < 0) {
+                    long start = System.nanoTime();
+                    try {
+                        operation.run();
+                        metrics.recordCommit(start);
+                    } catch (Exception e) {
+                        metrics.recordFailure(e);
+                    }
+                }
+            }, "benchmark-worker-" + i);
+            worker.setDaemon(true);
+            workers.add(worker);
+            worker.start();
+        }
+        ready.await();
+        onStart.run();
+        metrics.start(0);
+        long start = System.nanoTime();
+        end[0] = start + nanos;
+        go.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        metrics.end();
+        return (System.nanoTime() - start) / 1e9;
+    }
+
+    private void addRow(String workload, String mode, int threads, double offeredRate, double seconds,
+                        long committed, long aborted, long errored, double goodput, LatencyHistogram latencies,
+                        Map<String, Double> extra) {
+        rows.add(new Object[] {
+            workload, mode, threads, offeredRate, seconds, committed, aborted, errored, goodput,
+            latencies.percentile(0.5) / 1e3, latencies.percentile(0.9) / 1e3, latencies.percentile(0.99) / 1e3,
+            latencies.percentile(0.999) / 1e3, latencies.getMax() / 1e3, latencies.getMean() / 1e3,
+            new LinkedHashMap<>(extra)
+        });
+    }
+
+    public void writeCsv(Path file) throws IOException {
+        StringBuilder out = new StringBuilder(String.join(",", COLUMNS)).append('\n');
+        for (Object[] row : rows) {
+            for (int i = 0; i < row.length; i++) {
+                if (i > 0) {
+                    out.append(',');
+                }
+                if (row[i] instanceof Map) {
+                    StringBuilder extra = new StringBuilder();
+                    for (Map.Entry<?, ?> entry : ((Map<?, ?>) row[i]).entrySet()) {
+                        if (extra.length() > 0) {
+                            extra.append(';');
+                        }
+                        extra.append(entry.getKey()).append('=').append(format(entry.getValue()));
+                    }
+                    out.append(csvQuote(extra.toString()));
+                } else {
+                    out.append(row[i] instanceof String ? csvQuote((String) row[i]) : format(row[i]));
+                }
+            }
+            out.append('\n');
+        }
+        write(file, out);
+    }
+
+    public void writeJson(Path file) throws IOException {
+        List<Map<String, Object>> out = new ArrayList<>();
+        for (Object[] row : rows) {
+            Map<String, Object> fields = new LinkedHashMap<>();
+            for (int i = 0; i < row.length; i++) {
+                if (row[i] instanceof Map) {
+                    Map<String, Object> extra = new LinkedHashMap<>();
+                    for (Map.Entry<?, ?> entry : ((Map<?, ?>) row[i]).entrySet()) {
+                        extra.put(String.valueOf(entry.getKey()), jsonValue(entry.getValue()));
+                    }
+                    fields.put(COLUMNS[i], extra);
+                } else {
+                    fields.put(COLUMNS[i], jsonValue(row[i]));
+                }
+            }
+            out.add(fields);
+        }
+        write(file, JSON.writerWithDefaultPrettyPrinter().writeValueAsString(out) + "\n");
+    }
+
+    // Same three decimals as the CSV; JSON has no NaN or infinity, so those become null
+    private static Object jsonValue(Object value) {
+        if (value instanceof Double) {
+            double d = (Double) value;
+            return Double.isFinite(d) ? BigDecimal.valueOf(d).setScale(3, RoundingMode.HALF_UP) : null;
+        }
+        return value;
+    }
+
+    private static String format(Object value) {
+        if (value instanceof Double) {
+            double d = (Double) value;
+            return Double.isNaN(d) ? "" : String.format(Locale.ROOT, "%.3f", d);
+        }
+        return String.valueOf(value);
+    }
+
+    private static String csvQuote(String value) {
+        return value.contains(",") || value.contains("\"") ? '"' + value.replace("\"", "\"\"") + '"' : value;
+    }
+
+    private static void write(Path file, CharSequence content) throws IOException {
+        if (file.getParent() != null) {
+            Files.createDirectories(file.getParent());
+        }
+        Files.writeString(file, content, StandardCharsets.UTF_8);
+        System.out.println("Wrote " + file);
+    }
+}
@@ -0,0 +1,121 @@
+package org.example.benchmarks;
+
+import org.example.shims.LatencyModel;
+import org.example.shims.StandInShim;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+// Makes stand-in stores in place of the real ones, starting from StandInShim's profile
+// for each store and applying any standin.<store>.* overrides (see EpoxyRunner):
+//   read, write, commit    latency models, as LatencyModel.parse takes them
+//   slots                  calls in flight at once, 0 for no limit
+//   errors, timeouts       fraction of calls failed or timed out
+//   hang                   how long a timed-out call hangs without a deadline (default 1s)
+//   stalls                 <duration>/<period>, e.g. 200ms/10s: every period, stall for duration
+// Faults are only injected between startFaults and stopFaults, so loading isn't hit by them.
+public final class StandInStores {
+    private final Properties config;
+    private final List<Faults> faults = new ArrayList<>();
+    private final List<ScheduledFuture<?>> stalling = new ArrayList<>();
+    private ScheduledExecutorService stalls;
+
+    public StandInStores(Properties config) {
+        this.config = config;
+    }
+
+    StandInShim create(String store) throws IOException {
+        StandInShim profile = StandInShim.forStore(store);
+        String prefix = "standin." + store + ".";
+        StandInShim shim = new StandInShim(store,
+            model(prefix + "read", profile.getReads()),
+            model(prefix + "write", profile.getWrites()),
+            model(prefix + "commit", profile.getCommits()),
+            Integer.parseInt(config.getProperty(prefix + "slots", String.valueOf(profile.getMaxConcurrent()))));
+        long stallNanos = 0;
+        long periodNanos = 0;
+        String stall = config.getProperty(prefix + "stalls");
+        if (stall != null) {
+            String[] parts = stall.split("/");
+            if (parts.length != 2) {
+                throw new IllegalArgumentException("Expected " + prefix + "stalls=<duration>/<period>, got: " + stall);
+            }
+            stallNanos = LatencyModel.parseNanos(parts[0]);
+            periodNanos = LatencyModel.parseNanos(parts[1]);
+        }
+        synchronized (this) {
+            faults.add(new Faults(shim,
+                Double.parseDouble(config.getProperty(prefix + "errors", "0")),
+                Double.parseDouble(config.getProperty(prefix + "timeouts", "0")),
+                LatencyModel.parseNanos(config.getProperty(prefix + "hang", "1s")),
+                stallNanos, periodNanos));
+        }
+        return shim;
+    }
+
+    private LatencyModel model(String key, LatencyModel fallback) throws IOException {
+        String spec = config.getProperty(key);
+        return spec == null ? fallback : LatencyModel.parse(spec);
+    }
+
+    // Switches on the configured faults of every stand-in made so far
+    public synchronized void startFaults() {
+        for (Faults f : faults) {
+            f.shim.injectErrors(f.errorRate);
+            f.shim.injectTimeouts(f.timeoutRate, f.hangNanos, TimeUnit.NANOSECONDS);
+            if (f.periodNanos > 0) {
+                stalling.add(scheduler().scheduleAtFixedRate(() -> f.shim.stall(f.stallNanos, TimeUnit.NANOSECONDS),
+                    f.periodNanos, f.periodNanos, TimeUnit.NANOSECONDS));
+            }
+        }
+    }
+
+    public synchronized void stopFaults() {
+        for (ScheduledFuture<?> stall : stalling) {
+            stall.cancel(false);
+        }
+        stalling.clear();
+        for (Faults f : faults) {
+            f.shim.injectErrors(0);
+            f.shim.injectTimeouts(0, f.hangNanos, TimeUnit.NANOSECONDS);
+            f.shim.stall(0, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private ScheduledExecutorService scheduler() {
+        if (stalls == null) {
+            stalls = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "epoxy-standin-stalls");
+                t.setDaemon(true);
+                return t;
+            });
+        }
+        return stalls;
+    }
+
+    private static final class Faults {
+        final StandInShim shim;
+        final double errorRate;
+        final double timeoutRate;
+        final long hangNanos;
+        final long stallNanos;
+        // 0 for no stalls
+        final long periodNanos;
+
+        Faults(StandInShim shim, double errorRate, double timeoutRate, long hangNanos, long stallNanos,
+               long periodNanos) {
+            this.shim = shim;
+            this.errorRate = errorRate;
+            this.timeoutRate = timeoutRate;
+            this.hangNanos = hangNanos;
+            this.stallNanos = stallNanos;
+            this.periodNanos = periodNanos;
+        }
+    }
+}
@@ -1,172 +1,586 @@
 package org.example.benchmarks;
 
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
 import org.example.EpoxyCoordinator;
+import org.example.Startup;
 import org.example.TransactionContext;
+import org.example.shims.DataStoreShim;
 import org.example.shims.PostgresShim;
 import org.example.shims.MySQLShim;
 
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Random;
+import java.util.Set;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAdder;
+
+import static org.example.benchmarks.TPCCSchema.*;
+
+// TPC-C (clause 2) over Postgres and MySQL: NewOrder, Payment, OrderStatus, Delivery and
+// StockLevel in the standard mix, with NURand keying, 1% of order lines supplied by and
+// 15% of payments made to a remote warehouse. Warehouses are split between the two
+// stores, so those remote accesses are the cross-store transactions. Each operation
+// picks a home warehouse at random instead of binding terminals to warehouses, and runs
+// without keying or think time, so tpmC here is a throughput ceiling and not a
+// compliant result.
+public class TPCCBenchmark implements ScalingRunner.Reporter {
+    public enum TransactionType {
+        NEW_ORDER, PAYMENT, ORDER_STATUS, DELIVERY, STOCK_LEVEL
+    }
+
+    // Minimum mix of clause 5.2.3, with NewOrder taking the rest
+    private static final int[] STANDARD_MIX = {45, 43, 4, 4, 4};
+    private static final int MAX_ORDER_LINES = 15;
+    private static final int STOCK_LEVEL_ORDERS = 20;
 
-public class TPCCBenchmark {
     private EpoxyCoordinator coordinator;
-    private PostgresShim postgresShim;
-    private MySQLShim mysqlShim;
-    private Random random;
-    private static final int NUM_WAREHOUSES = 40;
+    private Transactions transactions;
+    private TPCCSchema schema;
+    // NURand run-time constants (clause 2.1.6.1)
+    private int cLast;
+    private int cId;
+    private int cItem;
+    private volatile int[] mixThresholds = thresholds(STANDARD_MIX);
+
+    private final TransactionType[] types = TransactionType.values();
+    private final LongAdder[] committed = adders();
+    private final LongAdder[] rolledBack = adders();
+    private final LongAdder[] failed = adders();
+    private final LongAdder lowStock = new LongAdder();
+    private final BenchmarkMetrics[] latencies = metrics();
 
     public TPCCBenchmark() throws SQLException {
-        coordinator = new EpoxyCoordinator(
-            "jdbc:postgresql://localhost:5432/epoxy_test", 
-            "postgres", 
+        this(2, 1.0, 8);
+    }
+
+    public TPCCBenchmark(int warehouses, double cardinality, int loaderThreads) throws SQLException {
+        this(BenchmarkEnvironment.coordinated(), warehouses, cardinality, loaderThreads);
+    }
+
+    public TPCCBenchmark(BenchmarkEnvironment environment, int warehouses, double cardinality, int loaderThreads)
+            throws SQLException {
+        Startup startup = new Startup();
+        Future<EpoxyCoordinator> coordinatorInit = environment.startCoordinator(startup,
+            "jdbc:postgresql://localhost:5432/epoxy_test",
+            "postgres",
             "test987"
         );
-        postgresShim = new PostgresShim(
+        Future<DataStoreShim> postgresInit = environment.startStore(startup, "postgres", () -> new PostgresShim(
             "jdbc:postgresql://localhost:5432/epoxy_test",
             "postgres",
             "test987"
-        );
-        mysqlShim = new MySQLShim(
+        ));
+        Future<DataStoreShim> mysqlInit = environment.startStore(startup, "mysql", () -> new MySQLShim(
             "jdbc:mysql://localhost:3306/epoxy_test",
             "mysql",
             "test987"
-        );
-        
-        coordinator.addSecondaryStore(postgresShim);
-        coordinator.addSecondaryStore(mysqlShim);
-        random = new Random();
-        initializeWarehouses();
+        ));
+        coordinator = environment.coordinator(startup, coordinatorInit);
+        DataStoreShim postgresShim = environment.store(startup, postgresInit);
+        DataStoreShim mysqlShim = environment.store(startup, mysqlInit);
+        startup.print("TPC-C Benchmark");
+        transactions = environment.transactions(coordinator, postgresShim, mysqlShim);
+        init(warehouses, cardinality, loaderThreads, postgresShim, mysqlShim);
     }
 
-    private void initializeWarehouses() throws SQLException {
-        TransactionContext txn = coordinator.beginTransaction();
-        try {
-            for (int i = 0; i < NUM_WAREHOUSES; i++) {
-                String wId = String.format("W_%d", i);
-                String data = String.format("{\"name\":\"Warehouse %d\",\"ytd\":0.0}", i);
-                
-                if (i < NUM_WAREHOUSES/2) {
-                    postgresShim.update(txn, wId, data);
-                } else {
-                    mysqlShim.update(txn, wId, data);
-                }
+    // Warehouses are split across stores in the order given
+    TPCCBenchmark(EpoxyCoordinator coordinator, int warehouses, double cardinality, int loaderThreads,
+                  DataStoreShim... stores) throws SQLException {
+        this.coordinator = coordinator;
+        this.transactions = Transactions.coordinated(coordinator);
+        init(warehouses, cardinality, loaderThreads, stores);
+    }
 
-                // Initialize districts for this warehouse
-                for (int d = 0; d < 10; d++) {
-                    String dId = String.format("D_%d_%d", i, d);
-                    String dData = String.format("{\"name\":\"District %d-%d\",\"ytd\":0.0}", i, d);
-                    
-                    if (i < NUM_WAREHOUSES/2) {
-                        postgresShim.update(txn, dId, dData);
-                    } else {
-                        mysqlShim.update(txn, dId, dData);
-                    }
-                }
+    private void init(int warehouses, double cardinality, int loaderThreads, DataStoreShim... stores)
+            throws SQLException {
+        for (DataStoreShim store : stores) {
+            coordinator.addSecondaryStore(store);
+        }
+        schema = new TPCCSchema(warehouses, cardinality, stores);
+        cLast = runConstantFor(TPCCLoader.load(coordinator, schema, loaderThreads));
+        cId = ThreadLocalRandom.current().nextInt(1024);
+        cItem = ThreadLocalRandom.current().nextInt(8192);
+    }
+
+    // Clause 2.1.6.1: the run-time C for last names must differ from the load-time one
+    // by 65..119, excluding 96 and 112
+    private static int runConstantFor(int loadConstant) {
+        while (true) {
+            int c = ThreadLocalRandom.current().nextInt(256);
+            int delta = Math.abs(c - loadConstant);
+            if (delta >= 65 && delta <= 119 && delta != 96 && delta != 112) {
+                return c;
             }
-            coordinator.commitTransaction(txn);
-        } catch (Exception e) {
-            coordinator.abortTransaction(txn);
-            throw e;
         }
     }
 
-    private void newOrderTransaction() throws SQLException {
-        TransactionContext txn = coordinator.beginTransaction();
+    // Relative weights of NewOrder, Payment, OrderStatus, Delivery and StockLevel
+    public void setMix(int... weights) {
+        if (weights.length != types.length) {
+            throw new IllegalArgumentException("Expected " + types.length + " weights, got " + weights.length);
+        }
+        mixThresholds = thresholds(weights);
+    }
+
+    private static int[] thresholds(int[] weights) {
+        int[] thresholds = new int[weights.length];
+        int total = 0;
+        for (int i = 0; i < weights.length; i++) {
+            total += weights[i];
+            thresholds[i] = total;
+        }
+        return thresholds;
+    }
+
+    public EpoxyCoordinator getCoordinator() {
+        return coordinator;
+    }
+
+    // One transaction from the mix. A NewOrder that rolls back on an unused item (1%, as
+    // the spec requires) is counted separately here and then throws RolledBackException,
+    // so callers count it as an abort rather than a commit.
+    public void runOperation() throws SQLException {
+        int[] thresholds = mixThresholds;
+        int pick = ThreadLocalRandom.current().nextInt(thresholds[thresholds.length - 1]);
+        int type = 0;
+        while (pick >= thresholds[type]) {
+            type++;
+        }
+        long startTime = System.nanoTime();
+        boolean completed;
         try {
-            int wId = random.nextInt(NUM_WAREHOUSES);
-            int dId = random.nextInt(10);
-            String warehouseKey = String.format("W_%d", wId);
-            String districtKey = String.format("D_%d_%d", wId, dId);
-            
-            // Access warehouse and district data
-            String warehouseData = (wId < NUM_WAREHOUSES/2) ? 
-                postgresShim.query(txn, warehouseKey) :
-                mysqlShim.query(txn, warehouseKey);
-                
-            String districtData = (wId < NUM_WAREHOUSES/2) ?
-                postgresShim.query(txn, districtKey) :
-                mysqlShim.query(txn, districtKey);
-                
-            // Create new order
-            String orderId = String.format("O_%d_%d_%d", wId, dId, System.nanoTime());
-            String orderData = String.format("{\"w_id\":%d,\"d_id\":%d,\"timestamp\":%d}", 
-                wId, dId, System.currentTimeMillis());
-                
-            if (wId < NUM_WAREHOUSES/2) {
-                postgresShim.update(txn, orderId, orderData);
-            } else {
-                mysqlShim.update(txn, orderId, orderData);
+            switch (types[type]) {
+                case NEW_ORDER:
+                    completed = newOrderTransaction();
+                    break;
+                case PAYMENT:
+                    completed = paymentTransaction();
+                    break;
+                case ORDER_STATUS:
+                    completed = orderStatusTransaction();
+                    break;
+                case DELIVERY:
+                    completed = deliveryTransaction();
+                    break;
+                default:
+                    completed = stockLevelTransaction();
+                    break;
             }
-            
-            coordinator.commitTransaction(txn);
-        } catch (Exception e) {
-            coordinator.abortTransaction(txn);
+        } catch (SQLException | RuntimeException e) {
+            failed[type].increment();
             throw e;
         }
+        (completed ? committed : rolledBack)[type].increment();
+        latencies[type].recordLatency(startTime);
+        if (!completed) {
+            throw new RolledBackException(types[type] + " rolled back");
+        }
     }
 
-    private void paymentTransaction() throws SQLException {
-        TransactionContext txn = coordinator.beginTransaction();
-        try {
-            int wId = random.nextInt(NUM_WAREHOUSES);
-            int dId = random.nextInt(10);
-            String warehouseKey = String.format("W_%d", wId);
-            String districtKey = String.format("D_%d_%d", wId, dId);
-            
-            // Update warehouse and district YTD
-            double paymentAmount = 100.0 + random.nextDouble() * 900.0;
-            
-            if (wId < NUM_WAREHOUSES/2) {
-                String currentData = postgresShim.query(txn, warehouseKey);
-                // Update YTD in warehouse data
-                postgresShim.update(txn, warehouseKey, updateYTD(currentData, paymentAmount));
-                
-                currentData = postgresShim.query(txn, districtKey);
-                // Update YTD in district data
-                postgresShim.update(txn, districtKey, updateYTD(currentData, paymentAmount));
+    // Clause 2.4
+    private boolean newOrderTransaction() throws SQLException {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int w = uniform(random, 1, schema.warehouses);
+        int d = uniform(random, 1, DISTRICTS_PER_WAREHOUSE);
+        int c = customerId(random);
+        int lines = uniform(random, 5, MAX_ORDER_LINES);
+        int[] itemIds = new int[lines];
+        int[] supplyWarehouses = new int[lines];
+        int[] quantities = new int[lines];
+        for (int i = 0; i < lines; i++) {
+            itemIds[i] = nuRand(random, 8191, cItem, 1, schema.items);
+            supplyWarehouses[i] = schema.warehouses > 1 && random.nextInt(100) == 0 ? otherWarehouse(random, w) : w;
+            quantities[i] = uniform(random, 1, 10);
+        }
+        // An unused item id makes the transaction roll back once it gets to the last line
+        if (random.nextInt(100) == 0) {
+            itemIds[lines - 1] = schema.items + 1;
+        }
+
+        // The district's next order id is the hot row; stock rows of popular items can be too
+        List<String> declaredKeys = new ArrayList<>(lines + 1);
+        declaredKeys.add(district(w, d));
+        for (int i = 0; i < lines; i++) {
+            declaredKeys.add(stock(supplyWarehouses[i], itemIds[i]));
+        }
+
+        return transactions.execute(declaredKeys, txn -> {
+            DataStoreShim home = schema.shimFor(w);
+            // Everything the transaction reads, in one round trip per store
+            Map<DataStoreShim, List<String>> reads = new LinkedHashMap<>();
+            reads.computeIfAbsent(home, s -> new ArrayList<>())
+                .addAll(List.of(warehouse(w), district(w, d), customer(w, d, c)));
+            for (int i = 0; i < lines; i++) {
+                reads.get(home).add(item(itemIds[i]));
+                reads.computeIfAbsent(schema.shimFor(supplyWarehouses[i]), s -> new ArrayList<>())
+                    .add(stock(supplyWarehouses[i], itemIds[i]));
+            }
+            reads.forEach(txn::prefetch);
+
+            // Warehouse tax and customer discount only go into the total shown to the terminal
+            read(home, txn, warehouse(w));
+            read(home, txn, customer(w, d, c));
+            ObjectNode districtRow = read(home, txn, district(w, d));
+            int orderId = districtRow.get("next_o_id").asInt();
+            write(home, txn, district(w, d), districtRow.put("next_o_id", orderId + 1));
+
+            boolean allLocal = true;
+            for (int supplyWarehouse : supplyWarehouses) {
+                allLocal &= supplyWarehouse == w;
+            }
+            write(home, txn, order(w, d, orderId), newRow()
+                .put("c_id", c)
+                .put("entry_d", System.currentTimeMillis())
+                .putNull("carrier_id")
+                .put("ol_cnt", lines)
+                .put("all_local", allLocal ? 1 : 0));
+            write(home, txn, lastOrder(w, d, c), newRow().put("o_id", orderId));
+
+            for (int i = 0; i < lines; i++) {
+                ObjectNode itemRow = read(home, txn, item(itemIds[i]));
+                if (itemRow == null) {
+                    rollBack(txn);
+                    return false;
+                }
+                DataStoreShim supplier = schema.shimFor(supplyWarehouses[i]);
+                String stockKey = stock(supplyWarehouses[i], itemIds[i]);
+                ObjectNode stockRow = read(supplier, txn, stockKey);
+                int quantity = stockRow.get("quantity").asInt();
+                stockRow.put("quantity", quantity >= quantities[i] + 10 ? quantity - quantities[i] : quantity - quantities[i] + 91);
+                stockRow.put("ytd", stockRow.get("ytd").asInt() + quantities[i]);
+                stockRow.put("order_cnt", stockRow.get("order_cnt").asInt() + 1);
+                if (supplyWarehouses[i] != w) {
+                    stockRow.put("remote_cnt", stockRow.get("remote_cnt").asInt() + 1);
+                }
+                write(supplier, txn, stockKey, stockRow);
+
+                write(home, txn, orderLine(w, d, orderId, i + 1), newRow()
+                    .put("i_id", itemIds[i])
+                    .put("supply_w_id", supplyWarehouses[i])
+                    .putNull("delivery_d")
+                    .put("quantity", quantities[i])
+                    .put("amount", quantities[i] * itemRow.get("price").asDouble())
+                    .put("dist_info", stockRow.get("dist").get(d - 1).asText()));
+            }
+            return true;
+        });
+    }
+
+    // Clause 2.5
+    private boolean paymentTransaction() throws SQLException {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int w = uniform(random, 1, schema.warehouses);
+        int d = uniform(random, 1, DISTRICTS_PER_WAREHOUSE);
+        boolean remote = schema.warehouses > 1 && random.nextInt(100) < 15;
+        int customerW = remote ? otherWarehouse(random, w) : w;
+        int customerD = remote ? uniform(random, 1, DISTRICTS_PER_WAREHOUSE) : d;
+        String lastName = random.nextInt(100) < 60 ? randomLastName(random) : null;
+        int customerId = lastName == null ? customerId(random) : 0;
+        double amount = uniform(random, 100, 500_000) / 100.0;
+        long historyId = random.nextLong() & Long.MAX_VALUE;
+
+        List<String> declaredKeys = new ArrayList<>(List.of(warehouse(w), district(w, d)));
+        if (lastName == null) {
+            declaredKeys.add(customer(customerW, customerD, customerId));
+        }
+
+        return transactions.execute(declaredKeys, txn -> {
+            DataStoreShim home = schema.shimFor(w);
+            DataStoreShim customerShim = schema.shimFor(customerW);
+            String customerLookup = lastName == null
+                ? customer(customerW, customerD, customerId)
+                : customersByLastName(customerW, customerD, lastName);
+            if (customerShim == home) {
+                txn.prefetch(home, warehouse(w), district(w, d), customerLookup);
             } else {
-                String currentData = mysqlShim.query(txn, warehouseKey);
-                // Update YTD in warehouse data
-                mysqlShim.update(txn, warehouseKey, updateYTD(currentData, paymentAmount));
-                
-                currentData = mysqlShim.query(txn, districtKey);
-                // Update YTD in district data
-                mysqlShim.update(txn, districtKey, updateYTD(currentData, paymentAmount));
-            }
-            
-            coordinator.commitTransaction(txn);
-        } catch (Exception e) {
-            coordinator.abortTransaction(txn);
-            throw e;
+                txn.prefetch(home, warehouse(w), district(w, d));
+                txn.prefetch(customerShim, customerLookup);
+            }
+
+            ObjectNode warehouseRow = read(home, txn, warehouse(w));
+            write(home, txn, warehouse(w), warehouseRow.put("ytd", warehouseRow.get("ytd").asDouble() + amount));
+            ObjectNode districtRow = read(home, txn, district(w, d));
+            write(home, txn, district(w, d), districtRow.put("ytd", districtRow.get("ytd").asDouble() + amount));
+
+            int c = lastName == null ? customerId : middleCustomer(customerShim, txn, customerW, customerD, lastName);
+            ObjectNode customerRow = read(customerShim, txn, customer(customerW, customerD, c));
+            customerRow.put("balance", customerRow.get("balance").asDouble() - amount);
+            customerRow.put("ytd_payment", customerRow.get("ytd_payment").asDouble() + amount);
+            customerRow.put("payment_cnt", customerRow.get("payment_cnt").asInt() + 1);
+            if ("BC".equals(customerRow.get("credit").asText())) {
+                String data = String.format(Locale.ROOT, "%d %d %d %d %d %.2f|%s", c, customerD, customerW, d, w,
+                    amount, customerRow.get("data").asText());
+                customerRow.put("data", data.length() > 500 ? data.substring(0, 500) : data);
+            }
+            write(customerShim, txn, customer(customerW, customerD, c), customerRow);
+            write(customerShim, txn, history(customerW, customerD, c, historyId), newRow()
+                .put("w_id", w)
+                .put("d_id", d)
+                .put("date", System.currentTimeMillis())
+                .put("amount", amount)
+                .put("data", warehouseRow.get("name").asText() + "    " + districtRow.get("name").asText()));
+            return true;
+        });
+    }
+
+    // Clause 2.6; read-only
+    private boolean orderStatusTransaction() throws SQLException {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int w = uniform(random, 1, schema.warehouses);
+        int d = uniform(random, 1, DISTRICTS_PER_WAREHOUSE);
+        String lastName = random.nextInt(100) < 60 ? randomLastName(random) : null;
+        int customerId = lastName == null ? customerId(random) : 0;
+
+        return transactions.execute(txn -> {
+            DataStoreShim shim = schema.shimFor(w);
+            int c = lastName == null ? customerId : middleCustomer(shim, txn, w, d, lastName);
+            txn.prefetch(shim, customer(w, d, c), lastOrder(w, d, c));
+            read(shim, txn, customer(w, d, c));
+            ObjectNode last = read(shim, txn, lastOrder(w, d, c));
+            if (last == null) {
+                return true;
+            }
+            int orderId = last.get("o_id").asInt();
+            // The order and every line it could have, in one round trip
+            List<String> keys = new ArrayList<>(MAX_ORDER_LINES + 1);
+            keys.add(order(w, d, orderId));
+            for (int line = 1; line <= MAX_ORDER_LINES; line++) {
+                keys.add(orderLine(w, d, orderId, line));
+            }
+            txn.prefetch(shim, keys);
+            ObjectNode orderRow = read(shim, txn, order(w, d, orderId));
+            for (int line = 1; line <= orderRow.get("ol_cnt").asInt(); line++) {
+                read(shim, txn, orderLine(w, d, orderId, line));
+            }
+            return true;
+        });
+    }
+
+    // Clause 2.7, run as a single transaction over all ten districts. A district with no
+    // undelivered order is skipped.
+    private boolean deliveryTransaction() throws SQLException {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int w = uniform(random, 1, schema.warehouses);
+        int carrier = uniform(random, 1, 10);
+        List<String> declaredKeys = new ArrayList<>(DISTRICTS_PER_WAREHOUSE);
+        for (int d = 1; d <= DISTRICTS_PER_WAREHOUSE; d++) {
+            declaredKeys.add(newOrders(w, d));
         }
+
+        return transactions.execute(declaredKeys, txn -> {
+            DataStoreShim shim = schema.shimFor(w);
+            List<String> keys = new ArrayList<>(declaredKeys);
+            for (int d = 1; d <= DISTRICTS_PER_WAREHOUSE; d++) {
+                keys.add(district(w, d));
+            }
+            txn.prefetch(shim, keys);
+
+            int[] orderIds = new int[DISTRICTS_PER_WAREHOUSE + 1];
+            List<String> orderKeys = new ArrayList<>();
+            for (int d = 1; d <= DISTRICTS_PER_WAREHOUSE; d++) {
+                int next = read(shim, txn, newOrders(w, d)).get("next").asInt();
+                if (next < read(shim, txn, district(w, d)).get("next_o_id").asInt()) {
+                    orderIds[d] = next;
+                    orderKeys.add(order(w, d, next));
+                }
+            }
+            if (orderKeys.isEmpty()) {
+                return true;
+            }
+            txn.prefetch(shim, orderKeys);
+
+            ObjectNode[] orders = new ObjectNode[DISTRICTS_PER_WAREHOUSE + 1];
+            List<String> lineAndCustomerKeys = new ArrayList<>();
+            for (int d = 1; d <= DISTRICTS_PER_WAREHOUSE; d++) {
+                if (orderIds[d] == 0) {
+                    continue;
+                }
+                orders[d] = read(shim, txn, order(w, d, orderIds[d]));
+                lineAndCustomerKeys.add(customer(w, d, orders[d].get("c_id").asInt()));
+                for (int line = 1; line <= orders[d].get("ol_cnt").asInt(); line++) {
+                    lineAndCustomerKeys.add(orderLine(w, d, orderIds[d], line));
+                }
+            }
+            txn.prefetch(shim, lineAndCustomerKeys);
+
+            long now = System.currentTimeMillis();
+            for (int d = 1; d <= DISTRICTS_PER_WAREHOUSE; d++) {
+                if (orderIds[d] == 0) {
+                    continue;
+                }
+                int o = orderIds[d];
+                write(shim, txn, newOrders(w, d), newRow().put("next", o + 1));
+                write(shim, txn, order(w, d, o), orders[d].put("carrier_id", carrier));
+                double amount = 0;
+                for (int line = 1; line <= orders[d].get("ol_cnt").asInt(); line++) {
+                    ObjectNode lineRow = read(shim, txn, orderLine(w, d, o, line));
+                    amount += lineRow.get("amount").asDouble();
+                    write(shim, txn, orderLine(w, d, o, line), lineRow.put("delivery_d", now));
+                }
+                int c = orders[d].get("c_id").asInt();
+                ObjectNode customerRow = read(shim, txn, customer(w, d, c));
+                customerRow.put("balance", customerRow.get("balance").asDouble() + amount);
+                customerRow.put("delivery_cnt", customerRow.get("delivery_cnt").asInt() + 1);
+                write(shim, txn, customer(w, d, c), customerRow);
+            }
+            return true;
+        });
     }
 
-    private String updateYTD(String data, double amount) {
-        // Simple string manipulation to update YTD in JSON data
-        // In real implementation, use proper JSON parsing
-        return data.replaceFirst("\"ytd\":[0-9.]+", String.format("\"ytd\":%.2f", amount));
+    // Clause 2.8; read-only. Lines of the last 20 orders are fetched for every possible
+    // line number, since the stores can't scan for them; missing ones come back empty.
+    private boolean stockLevelTransaction() throws SQLException {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int w = uniform(random, 1, schema.warehouses);
+        int d = uniform(random, 1, DISTRICTS_PER_WAREHOUSE);
+        int threshold = uniform(random, 10, 20);
+
+        int[] lowStockCount = new int[1];
+        boolean completed = transactions.execute(txn -> {
+            DataStoreShim shim = schema.shimFor(w);
+            int next = read(shim, txn, district(w, d)).get("next_o_id").asInt();
+            List<String> lineKeys = new ArrayList<>(STOCK_LEVEL_ORDERS * MAX_ORDER_LINES);
+            for (int o = Math.max(1, next - STOCK_LEVEL_ORDERS); o < next; o++) {
+                for (int line = 1; line <= MAX_ORDER_LINES; line++) {
+                    lineKeys.add(orderLine(w, d, o, line));
+                }
+            }
+            txn.prefetch(shim, lineKeys);
+            Set<Integer> itemIds = new HashSet<>();
+            for (String key : lineKeys) {
+                ObjectNode lineRow = read(shim, txn, key);
+                if (lineRow != null) {
+                    itemIds.add(lineRow.get("i_id").asInt());
+                }
+            }
+            List<String> stockKeys = new ArrayList<>(itemIds.size());
+            for (int i : itemIds) {
+                stockKeys.add(stock(w, i));
+            }
+            txn.prefetch(shim, stockKeys);
+            // The count of low stock is what the terminal displays; a retry starts it over
+            lowStockCount[0] = 0;
+            for (String key : stockKeys) {
+                if (read(shim, txn, key).get("quantity").asInt() < threshold) {
+                    lowStockCount[0]++;
+                }
+            }
+            return true;
+        });
+        if (completed) {
+            lowStock.add(lowStockCount[0]);
+        }
+        return completed;
+    }
+
+    private int customerId(Random random) {
+        return nuRand(random, 1023, cId, 1, schema.customersPerDistrict);
+    }
+
+    private String randomLastName(Random random) {
+        return lastName(nuRand(random, 255, cLast, 0, Math.min(LAST_NAMES, schema.customersPerDistrict) - 1));
+    }
+
+    private int otherWarehouse(Random random, int w) {
+        int other = uniform(random, 1, schema.warehouses - 1);
+        return other >= w ? other + 1 : other;
+    }
+
+    // Clause 2.5.2.2: of the customers with that last name, sorted by first name, the one at position ceil(n/2)
+    private static int middleCustomer(DataStoreShim shim, TransactionContext txn, int w, int d, String lastName) {
+        ObjectNode index = read(shim, txn, customersByLastName(w, d, lastName));
+        if (index == null) {
+            throw new IllegalStateException("No customer named " + lastName + " in district " + w + "/" + d);
+        }
+        JsonNode ids = index.get("ids");
+        return ids.get((ids.size() - 1) / 2).asInt();
+    }
+
+    private void rollBack(TransactionContext txn) {
+        try {
+            transactions.abort(txn);
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static BenchmarkMetrics[] metrics() {
+        BenchmarkMetrics[] metrics = new BenchmarkMetrics[TransactionType.values().length];
+        for (int i = 0; i < metrics.length; i++) {
+            metrics[i] = new BenchmarkMetrics();
+        }
+        return metrics;
+    }
+
+    private static LongAdder[] adders() {
+        LongAdder[] adders = new LongAdder[TransactionType.values().length];
+        for (int i = 0; i < adders.length; i++) {
+            adders[i] = new LongAdder();
+        }
+        return adders;
+    }
+
+    @Override
+    public void reset() {
+        for (int i = 0; i < types.length; i++) {
+            committed[i].reset();
+            rolledBack[i].reset();
+            failed[i].reset();
+            latencies[i].start(0);
+        }
+        lowStock.reset();
+    }
+
+    // tpmC counts NewOrder transactions that completed, including the ones that rolled back
+    @Override
+    public Map<String, Double> report(double seconds) {
+        Map<String, Double> figures = new LinkedHashMap<>();
+        int newOrder = TransactionType.NEW_ORDER.ordinal();
+        double tpmC = (committed[newOrder].sum() + rolledBack[newOrder].sum()) * 60 / seconds;
+        figures.put("tpmC", tpmC);
+        System.out.printf("TPC-C: %.0f tpmC over %d warehouses\n", tpmC, schema.warehouses);
+        for (int i = 0; i < types.length; i++) {
+            String name = types[i].name().toLowerCase(Locale.ROOT);
+            LatencyHistogram histogram = latencies[i].latencies();
+            System.out.printf("  %-12s %8d committed, %5d rolled back, %5d failed, p90 %.1f ms\n", name,
+                committed[i].sum(), rolledBack[i].sum(), failed[i].sum(), histogram.percentile(0.9) / 1e6);
+            figures.put(name + "_committed", (double) committed[i].sum());
+            figures.put(name + "_failed", (double) failed[i].sum());
+            figures.put(name + "_p90_ms", histogram.percentile(0.9) / 1e6);
+        }
+        figures.put("new_order_rolled_back", (double) rolledBack[newOrder].sum());
+        // Mean low-stock items per StockLevel, the figure its terminal displays
+        long stockLevels = committed[TransactionType.STOCK_LEVEL.ordinal()].sum();
+        figures.put("stock_level_low_stock", stockLevels == 0 ? Double.NaN : (double) lowStock.sum() / stockLevels);
+        return figures;
     }
 
     public void runBenchmark(int numThreads, int numTransactions) throws InterruptedException {
         ExecutorService executor = Executors.newFixedThreadPool(numThreads);
         CountDownLatch latch = new CountDownLatch(numTransactions);
         BenchmarkMetrics metrics = new BenchmarkMetrics();
+        reset();
         metrics.start(numTransactions);
 
         for (int i = 0; i < numTransactions; i++) {
             executor.submit(() -> {
                 long startTime = System.nanoTime();
                 try {
-                    if (random.nextBoolean()) {
-                        newOrderTransaction();
-                    } else {
-                        paymentTransaction();
+                    runOperation();
+                    metrics.recordCommit(startTime);
+                } catch (SQLException | RuntimeException e) {
+                    metrics.recordFailure(e);
+                    if (BenchmarkMetrics.abortReason(e) == null) {
+                        e.printStackTrace();
                     }
-                } catch (SQLException e) {
-                    e.printStackTrace();
                 } finally {
-                    metrics.recordLatency(startTime);
                     latch.countDown();
                 }
             });
@@ -179,5 +593,7 @@ public class TPCCBenchmark {
             System.err.println("Executor did not terminate in the specified time.");
         }
         metrics.printMetrics("TPC-C Benchmark");
+        report(metrics.getElapsedSeconds());
+        coordinator.printCoordinatorStats();
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,274 @@
+package org.example.benchmarks;
+
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.example.EpoxyCoordinator;
+import org.example.shims.DataStoreShim;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+import static org.example.benchmarks.TPCCSchema.*;
+
+// Populates the initial database of clause 4.3.3 through the coordinator, in transactions
+// of BATCH_ROWS rows. Items, each warehouse's stock and each district are independent
+// tasks loaded in parallel. A marker row is written to every shim at the end, so a
+// later run at the same scale skips loading.
+final class TPCCLoader {
+    private static final int BATCH_ROWS = 1000;
+
+    private final EpoxyCoordinator coordinator;
+    private final TPCCSchema schema;
+    private final LongAdder rows = new LongAdder();
+
+    private TPCCLoader(EpoxyCoordinator coordinator, TPCCSchema schema) {
+        this.coordinator = coordinator;
+        this.schema = schema;
+    }
+
+    // Returns the NURand C constant customer last names were generated with, which the
+    // run-time constant must be chosen relative to
+    static int load(EpoxyCoordinator coordinator, TPCCSchema schema, int threads) throws SQLException {
+        return new TPCCLoader(coordinator, schema).load(threads);
+    }
+
+    private int load(int threads) throws SQLException {
+        Integer loaded = existingLoad();
+        if (loaded != null) {
+            System.out.printf("TPC-C: reusing %d warehouses already loaded\n", schema.warehouses);
+            return loaded;
+        }
+        int cLast = ThreadLocalRandom.current().nextInt(256);
+        long start = System.nanoTime();
+        ExecutorService executor = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "tpcc-loader");
+            t.setDaemon(true);
+            return t;
+        });
+        List<Future<Void>> tasks = new ArrayList<>();
+        try {
+            for (DataStoreShim shim : schema.stores()) {
+                for (int first = 1; first <= schema.items; first += BATCH_ROWS) {
+                    int from = first;
+                    tasks.add(executor.submit(() -> loadItems(shim, from, Math.min(from + BATCH_ROWS - 1, schema.items))));
+                }
+            }
+            for (int w = 1; w <= schema.warehouses; w++) {
+                int wId = w;
+                tasks.add(executor.submit(() -> loadWarehouse(wId)));
+                for (int first = 1; first <= schema.items; first += BATCH_ROWS) {
+                    int from = first;
+                    tasks.add(executor.submit(() -> loadStock(wId, from, Math.min(from + BATCH_ROWS - 1, schema.items))));
+                }
+                for (int d = 1; d <= DISTRICTS_PER_WAREHOUSE; d++) {
+                    int dId = d;
+                    tasks.add(executor.submit(() -> loadDistrict(wId, dId, cLast)));
+                }
+            }
+            for (Future<Void> task : tasks) {
+                LoadBatch.await(task);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        ObjectNode marker = expectedMarker().put("c_last", cLast);
+        for (DataStoreShim shim : schema.stores()) {
+            coordinator.execute(txn -> {
+                write(shim, txn, loadMarker(), marker);
+                return null;
+            });
+        }
+        System.out.printf("TPC-C: loaded %d warehouses, %d rows in %.1f s\n", schema.warehouses, rows.sum(),
+            (System.nanoTime() - start) / 1e9);
+        return cLast;
+    }
+
+    private Integer existingLoad() throws SQLException {
+        ObjectNode expected = expectedMarker();
+        Integer cLast = null;
+        for (DataStoreShim shim : schema.stores()) {
+            ObjectNode marker = coordinator.execute(txn -> read(shim, txn, loadMarker()));
+            if (marker == null || !marker.has("c_last")) {
+                return null;
+            }
+            int markerCLast = marker.get("c_last").asInt();
+            marker.remove("c_last");
+            if (!marker.equals(expected) || (cLast != null && cLast != markerCLast)) {
+                return null;
+            }
+            cLast = markerCLast;
+        }
+        return cLast;
+    }
+
+    private ObjectNode expectedMarker() {
+        return newRow()
+            .put("warehouses", schema.warehouses)
+            .put("items", schema.items)
+            .put("customers", schema.customersPerDistrict);
+    }
+
+    // Every shim gets an identical copy, so items are generated from a seed and not shared randomness
+    private Void loadItems(DataStoreShim shim, int from, int to) throws SQLException {
+        Random random = new Random(from);
+        LoadBatch batch = batch(shim);
+        for (int i = from; i <= to; i++) {
+            batch.add(item(i), newRow()
+                .put("im_id", uniform(random, 1, 10_000))
+                .put("name", randomString(random, 14, 24))
+                .put("price", uniform(random, 100, 10_000) / 100.0)
+                .put("data", data(random)).toString());
+        }
+        batch.flush();
+        return null;
+    }
+
+    private Void loadWarehouse(int w) throws SQLException {
+        Random random = ThreadLocalRandom.current();
+        LoadBatch batch = batch(schema.shimFor(w));
+        batch.add(warehouse(w), newRow()
+            .put("name", randomString(random, 6, 10))
+            .put("tax", uniform(random, 0, 2000) / 10_000.0)
+            .put("ytd", 300_000.0).toString());
+        batch.flush();
+        return null;
+    }
+
+    private Void loadStock(int w, int from, int to) throws SQLException {
+        Random random = ThreadLocalRandom.current();
+        LoadBatch batch = batch(schema.shimFor(w));
+        for (int i = from; i <= to; i++) {
+            ObjectNode stock = newRow()
+                .put("quantity", uniform(random, 10, 100))
+                .put("ytd", 0)
+                .put("order_cnt", 0)
+                .put("remote_cnt", 0)
+                .put("data", data(random));
+            ArrayNode dist = stock.putArray("dist");
+            for (int d = 0; d < DISTRICTS_PER_WAREHOUSE; d++) {
+                dist.add(randomString(random, 24, 24));
+            }
+            batch.add(stock(w, i), stock.toString());
+        }
+        batch.flush();
+        return null;
+    }
+
+    // The district row, its customers with their history and last-name index, and the
+    // initial orders, of which the last UNDELIVERED_FRACTION are still waiting for delivery
+    private Void loadDistrict(int w, int d, int cLast) throws SQLException {
+        Random random = ThreadLocalRandom.current();
+        int customers = schema.customersPerDistrict;
+        int delivered = customers - (int) Math.round(customers * UNDELIVERED_FRACTION);
+        long now = System.currentTimeMillis();
+        LoadBatch batch = batch(schema.shimFor(w));
+
+        Map<String, List<ObjectNode>> byLastName = new TreeMap<>();
+        for (int c = 1; c <= customers; c++) {
+            String last = lastName(c <= LAST_NAMES ? c - 1 : nuRand(random, 255, cLast, 0, LAST_NAMES - 1));
+            ObjectNode customer = newRow()
+                .put("first", randomString(random, 8, 16))
+                .put("middle", "OE")
+                .put("last", last)
+                .put("since", now)
+                .put("credit", random.nextInt(10) == 0 ? "BC" : "GC")
+                .put("credit_lim", 50_000.0)
+                .put("discount", uniform(random, 0, 5000) / 10_000.0)
+                .put("balance", -10.0)
+                .put("ytd_payment", 10.0)
+                .put("payment_cnt", 1)
+                .put("delivery_cnt", 0)
+                .put("data", randomString(random, 300, 500));
+            batch.add(customer(w, d, c), customer.toString());
+            batch.add(history(w, d, c, 0), newRow()
+                .put("w_id", w)
+                .put("d_id", d)
+                .put("date", now)
+                .put("amount", 10.0)
+                .put("data", randomString(random, 12, 24)).toString());
+            byLastName.computeIfAbsent(last, k -> new ArrayList<>()).add(customer.put("id", c));
+        }
+        // Clause 2.5.2.2 picks the middle customer by first name, so the index is kept in that order
+        for (Map.Entry<String, List<ObjectNode>> entry : byLastName.entrySet()) {
+            ObjectNode index = newRow();
+            ArrayNode ids = index.putArray("ids");
+            entry.getValue().sort(Comparator.comparing(customer -> customer.get("first").asText()));
+            for (ObjectNode customer : entry.getValue()) {
+                ids.add(customer.get("id").asInt());
+            }
+            batch.add(customersByLastName(w, d, entry.getKey()), index.toString());
+        }
+
+        // Each customer places exactly one of the initial orders, in random order
+        List<Integer> placedBy = new ArrayList<>(customers);
+        for (int c = 1; c <= customers; c++) {
+            placedBy.add(c);
+        }
+        Collections.shuffle(placedBy, random);
+        for (int o = 1; o <= customers; o++) {
+            int c = placedBy.get(o - 1);
+            int lines = uniform(random, 5, 15);
+            boolean isDelivered = o <= delivered;
+            ObjectNode order = newRow()
+                .put("c_id", c)
+                .put("entry_d", now)
+                .put("ol_cnt", lines)
+                .put("all_local", 1);
+            if (isDelivered) {
+                order.put("carrier_id", uniform(random, 1, 10));
+            } else {
+                order.putNull("carrier_id");
+            }
+            batch.add(order(w, d, o), order.toString());
+            batch.add(lastOrder(w, d, c), newRow().put("o_id", o).toString());
+            for (int line = 1; line <= lines; line++) {
+                ObjectNode orderLine = newRow()
+                    .put("i_id", uniform(random, 1, schema.items))
+                    .put("supply_w_id", w)
+                    .put("quantity", 5)
+                    .put("amount", isDelivered ? 0.0 : uniform(random, 1, 999_999) / 100.0)
+                    .put("dist_info", randomString(random, 24, 24));
+                if (isDelivered) {
+                    orderLine.put("delivery_d", now);
+                } else {
+                    orderLine.putNull("delivery_d");
+                }
+                batch.add(orderLine(w, d, o, line), orderLine.toString());
+            }
+        }
+        batch.add(newOrders(w, d), newRow().put("next", delivered + 1).toString());
+        batch.add(district(w, d), newRow()
+            .put("name", randomString(random, 6, 10))
+            .put("tax", uniform(random, 0, 2000) / 10_000.0)
+            .put("ytd", 30_000.0)
+            .put("next_o_id", customers + 1).toString());
+        batch.flush();
+        return null;
+    }
+
+    // I_DATA and S_DATA: 10% contain "ORIGINAL" somewhere
+    private static String data(Random random) {
+        String data = randomString(random, 26, 50);
+        if (random.nextInt(10) == 0) {
+            int at = random.nextInt(data.length() - 8);
+            data = data.substring(0, at) + "ORIGINAL" + data.substring(at + 8);
+        }
+        return data;
+    }
+
+    private LoadBatch batch(DataStoreShim shim) {
+        return new LoadBatch(coordinator, shim, BATCH_ROWS, rows);
+    }
+}
@@ -0,0 +1,150 @@
+package org.example.benchmarks;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.example.TransactionContext;
+import org.example.shims.DataStoreShim;
+
+import java.util.Random;
+
+// Layout of the TPC-C tables on key-value shims. Each row is a JSON document under a key
+// built from its primary key. The stores can't scan, so the two access paths TPC-C
+// needs beyond primary keys are kept as rows of their own: CL_ maps a customer last
+// name to the matching customer ids, and CO_ holds each customer's latest order. The
+// NEW-ORDER table is a per-district NO_ row with the oldest undelivered order id, which
+// works because order ids are assigned in sequence and delivered in that order.
+//
+// Warehouses are split into contiguous ranges, one per shim, and every row belonging to
+// a warehouse (districts, customers, orders, stock) lives on its shim. ITEM is read-only
+// and copied to every shim, so only remote stock and remote customers cross stores.
+final class TPCCSchema {
+    static final int DISTRICTS_PER_WAREHOUSE = 10;
+    static final int FULL_ITEMS = 100_000;
+    static final int FULL_CUSTOMERS_PER_DISTRICT = 3_000;
+    // Of the initial orders in each district, the last 900 of 3000 are still undelivered
+    static final double UNDELIVERED_FRACTION = 0.3;
+    static final int LAST_NAMES = 1000;
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final String[] SYLLABLES = {
+        "BAR", "OUGHT", "ABLE", "PRI", "PRES", "ESE", "ANTI", "CALLY", "ATION", "EING"
+    };
+
+    final int warehouses;
+    final int items;
+    final int customersPerDistrict;
+    private final DataStoreShim[] stores;
+
+    // cardinality scales ITEM, CUSTOMER, ORDER and STOCK down from the spec for quicker
+    // loads; tpmC is only comparable with published results at 1.0
+    TPCCSchema(int warehouses, double cardinality, DataStoreShim... stores) {
+        this.warehouses = warehouses;
+        this.items = Math.max(1, (int) Math.round(FULL_ITEMS * cardinality));
+        this.customersPerDistrict = Math.max(1, (int) Math.round(FULL_CUSTOMERS_PER_DISTRICT * cardinality));
+        this.stores = stores;
+    }
+
+    DataStoreShim shimFor(int wId) {
+        return stores[(wId - 1) * stores.length / warehouses];
+    }
+
+    DataStoreShim[] stores() {
+        return stores;
+    }
+
+    static String warehouse(int w) {
+        return "W_" + w;
+    }
+
+    static String district(int w, int d) {
+        return "D_" + w + "_" + d;
+    }
+
+    static String customer(int w, int d, int c) {
+        return "C_" + w + "_" + d + "_" + c;
+    }
+
+    static String customersByLastName(int w, int d, String lastName) {
+        return "CL_" + w + "_" + d + "_" + lastName;
+    }
+
+    static String lastOrder(int w, int d, int c) {
+        return "CO_" + w + "_" + d + "_" + c;
+    }
+
+    static String history(int w, int d, int c, long id) {
+        return "H_" + w + "_" + d + "_" + c + "_" + id;
+    }
+
+    static String newOrders(int w, int d) {
+        return "NO_" + w + "_" + d;
+    }
+
+    static String order(int w, int d, int o) {
+        return "O_" + w + "_" + d + "_" + o;
+    }
+
+    static String orderLine(int w, int d, int o, int line) {
+        return "OL_" + w + "_" + d + "_" + o + "_" + line;
+    }
+
+    static String item(int i) {
+        return "I_" + i;
+    }
+
+    static String stock(int w, int i) {
+        return "S_" + w + "_" + i;
+    }
+
+    // Written to every shim once a load completes, so later runs can reuse the data
+    static String loadMarker() {
+        return "TPCC_LOADED";
+    }
+
+    // Customer last names are three syllables picked by the digits of a number below 1000
+    static String lastName(int number) {
+        return SYLLABLES[number / 100] + SYLLABLES[number / 10 % 10] + SYLLABLES[number % 10];
+    }
+
+    // NURand(A, x, y) from clause 2.1.6: non-uniform, with a few values much hotter than the rest
+    static int nuRand(Random random, int a, int c, int x, int y) {
+        return (((uniform(random, 0, a) | uniform(random, x, y)) + c) % (y - x + 1)) + x;
+    }
+
+    static int uniform(Random random, int x, int y) {
+        return x + random.nextInt(y - x + 1);
+    }
+
+    static String randomString(Random random, int minLength, int maxLength) {
+        int length = uniform(random, minLength, maxLength);
+        char[] chars = new char[length];
+        for (int i = 0; i < length; i++) {
+            chars[i] = (char) ('a' + random.nextInt(26));
+        }
+        return new String(chars);
+    }
+
+    static ObjectNode newRow() {
+        return MAPPER.createObjectNode();
+    }
+
+    static ObjectNode read(DataStoreShim shim, TransactionContext txn, String key) {
+        return parse(shim.query(txn, key));
+    }
+
+    static ObjectNode parse(String json) {
+        if (json == null) {
+            return null;
+        }
+        try {
+            return (ObjectNode) MAPPER.readTree(json);
+        } catch (JsonProcessingException e) {
+            throw new RuntimeException("Malformed TPC-C row: " + json, e);
+        }
+    }
+
+    static void write(DataStoreShim shim, TransactionContext txn, String key, ObjectNode row) {
+        shim.update(txn, key, row.toString());
+    }
+}
@@ -0,0 +1,438 @@
+package org.example.benchmarks;
+
+import org.example.AdmissionRejectedException;
+import org.example.EpoxyCoordinator;
+import org.example.RetryPolicy;
+import org.example.Startup;
+import org.example.StoreUnavailableException;
+import org.example.Trace;
+import org.example.TransactionContext;
+import org.example.TransactionTimeoutException;
+import org.example.ValidationException;
+import org.example.shims.DataStoreShim;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+// Re-issues a recorded Trace against the stores an environment provides (real, stand-in
+// or no-op), finding each by the name it was recorded under, and reports how the replay
+// differs from the recording.
+//
+// Transactions start on the recorded schedule, compressed by the speed factor, whether or
+// not the replay is keeping up. Each recorded client session runs on one replay thread, so
+// the recorded concurrency is kept; sessions that never overlapped (e.g. the workers of
+// successive runs) share a thread. Within a transaction, gaps between operations longer
+// than MIN_GAP are kept too (scaled), as the application's own work. Every recorded
+// attempt is replayed once and never retried. Writes use filler values of the recorded
+// length. A transaction that recorded a failed operation stops after it and aborts, as
+// the application did; one the application rolled back is rolled back again. Store calls
+// are compared per store and kind, except prefetches, which run in the background and
+// show up in the reads that wait for them.
+public class TraceReplay {
+    // Shorter gaps are coordinator and wrapper overhead, not application work
+    private static final long MIN_GAP_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+    private static final String FILLER = "x".repeat(4096);
+    private static final Trace.Outcome[] OUTCOMES = Trace.Outcome.values();
+    private static final Trace.Kind[] KINDS = Trace.Kind.values();
+
+    private final EpoxyCoordinator coordinator;
+    private final Transactions transactions;
+    private final Trace trace;
+    // By recorded store id
+    private final DataStoreShim[] stores;
+    private final List<List<Trace.Transaction>> lanes;
+    private final int sessions;
+    private final Tally recorded;
+
+    public TraceReplay(BenchmarkEnvironment environment, Trace trace) throws SQLException {
+        Startup startup = new Startup();
+        Future<EpoxyCoordinator> coordinatorInit = environment.startCoordinator(startup,
+            "jdbc:postgresql://localhost:5432/epoxy_test", "postgres", "test987");
+        List<Future<DataStoreShim>> storeInits = new ArrayList<>();
+        for (String name : trace.getStores()) {
+            storeInits.add(environment.startStore(startup, name, () -> YCSBBenchmark.connect(name)));
+        }
+        coordinator = environment.coordinator(startup, coordinatorInit);
+        stores = new DataStoreShim[storeInits.size()];
+        for (int i = 0; i < stores.length; i++) {
+            stores[i] = environment.store(startup, storeInits.get(i));
+            coordinator.addSecondaryStore(stores[i]);
+        }
+        startup.print("Trace replay");
+        coordinator.setRetryPolicy(new RetryPolicy(1, 0, 0, TimeUnit.MILLISECONDS, 0));
+        this.transactions = environment.transactions(coordinator, stores);
+        this.trace = trace;
+        this.lanes = lanes(trace.getTransactions());
+        this.sessions = (int) trace.getTransactions().stream().mapToInt(t -> t.session).distinct().count();
+        this.recorded = recordedTally(trace, stores.length);
+    }
+
+    public EpoxyCoordinator getCoordinator() {
+        return coordinator;
+    }
+
+    // Replay threads, one per set of sessions that never overlapped
+    public int getThreads() {
+        return lanes.size();
+    }
+
+    // Recorded transactions per second
+    public double getRecordedRate() {
+        return trace.getTransactions().size() / recorded.seconds;
+    }
+
+    // Greedy interval partitioning: each session goes to the thread that freed up
+    // earliest, if it had by the time the session started
+    private static List<List<Trace.Transaction>> lanes(List<Trace.Transaction> transactions) {
+        Map<Integer, List<Trace.Transaction>> bySession = new LinkedHashMap<>();
+        for (Trace.Transaction txn : transactions) {
+            bySession.computeIfAbsent(txn.session, s -> new ArrayList<>()).add(txn);
+        }
+        List<List<Trace.Transaction>> sessions = new ArrayList<>(bySession.values());
+        sessions.sort(Comparator.comparingLong(s -> s.get(0).startMicros));
+        List<List<Trace.Transaction>> lanes = new ArrayList<>();
+        // { lane index, end of its last transaction }
+        PriorityQueue<long[]> free = new PriorityQueue<>(Comparator.comparingLong(l -> l[1]));
+        for (List<Trace.Transaction> session : sessions) {
+            Trace.Transaction last = session.get(session.size() - 1);
+            long end = last.startMicros + last.micros;
+            long[] lane = free.peek();
+            if (lane != null && lane[1] <= session.get(0).startMicros) {
+                free.poll();
+                lanes.get((int) lane[0]).addAll(session);
+                lane[1] = end;
+            } else {
+                lane = new long[] {lanes.size(), end};
+                lanes.add(new ArrayList<>(session));
+            }
+            free.add(lane);
+        }
+        return lanes;
+    }
+
+    private static Tally recordedTally(Trace trace, int storeCount) {
+        Tally tally = new Tally(storeCount);
+        long first = Long.MAX_VALUE;
+        long last = 0;
+        for (Trace.Transaction txn : trace.getTransactions()) {
+            first = Math.min(first, txn.startMicros);
+            last = Math.max(last, txn.startMicros + txn.micros);
+            tally.outcomes[txn.outcome.ordinal()]++;
+            if (txn.outcome == Trace.Outcome.COMMITTED) {
+                tally.latencies.record(txn.micros * 1000);
+            }
+            for (Trace.Operation op : txn.operations) {
+                if (!op.failed) {
+                    tally.operations[op.store][op.kind.ordinal()].record(op.micros * 1000);
+                }
+            }
+        }
+        tally.seconds = trace.getTransactions().isEmpty() ? 0 : (last - first) / 1e6;
+        return tally;
+    }
+
+    // Replays the whole trace at speed times the recorded rate (1 for as recorded)
+    public Result run(double speed) throws InterruptedException {
+        List<Trace.Transaction> all = trace.getTransactions();
+        long firstMicros = all.isEmpty() ? 0 : all.get(0).startMicros;
+        // Give every thread time to get going before the first transaction is due
+        long start = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(10);
+        List<Tally> tallies = new ArrayList<>();
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < lanes.size(); i++) {
+            List<Trace.Transaction> lane = lanes.get(i);
+            Tally tally = new Tally(stores.length);
+            tallies.add(tally);
+            Thread thread = new Thread(() -> {
+                for (Trace.Transaction txn : lane) {
+                    long due = start + (long) ((txn.startMicros - firstMicros) * 1000 / speed);
+                    park(due);
+                    long begin = System.nanoTime();
+                    tally.lag.record(Math.max(0, begin - due));
+                    Trace.Outcome outcome = replay(txn, speed, tally);
+                    long end = System.nanoTime();
+                    if (outcome == Trace.Outcome.COMMITTED) {
+                        tally.latencies.record(end - begin);
+                    }
+                    tally.outcomes[outcome.ordinal()]++;
+                    tally.transitions[txn.outcome.ordinal()][outcome.ordinal()]++;
+                    tally.endNanos = end;
+                }
+            }, "epoxy-replay-" + i);
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        Tally replayed = new Tally(stores.length);
+        for (Tally tally : tallies) {
+            replayed.add(tally);
+        }
+        replayed.seconds = Math.max(0, replayed.endNanos - start) / 1e9;
+        return new Result(speed, recorded, replayed);
+    }
+
+    private Trace.Outcome replay(Trace.Transaction recordedTxn, double speed, Tally tally) {
+        try {
+            boolean aborted = transactions.execute(txn -> {
+                long cursor = System.nanoTime();
+                long previousMicros = 0;
+                for (Trace.Operation op : recordedTxn.operations) {
+                    long gap = (long) ((op.offsetMicros - previousMicros) * 1000 / speed);
+                    if (gap >= MIN_GAP_NANOS) {
+                        park(cursor + gap);
+                    }
+                    long opStart = System.nanoTime();
+                    issue(txn, op);
+                    cursor = System.nanoTime();
+                    // A prefetch is only issued here; the reads that wait for it show what it cost
+                    if (op.kind != Trace.Kind.PREFETCH) {
+                        tally.operations[op.store][op.kind.ordinal()].record(cursor - opStart);
+                    }
+                    // A prefetch returns at once; only the thread's own waits move the clock on
+                    previousMicros = op.kind == Trace.Kind.PREFETCH ? op.offsetMicros : op.offsetMicros + op.micros;
+                    if (op.failed && op.kind != Trace.Kind.PREFETCH) {
+                        break;
+                    }
+                }
+                if (recordedTxn.outcome == Trace.Outcome.ABORTED || failedOperation(recordedTxn)) {
+                    try {
+                        transactions.abort(txn);
+                    } catch (SQLException e) {
+                        throw new RuntimeException(e);
+                    }
+                    return true;
+                }
+                return false;
+            });
+            return aborted ? Trace.Outcome.ABORTED : Trace.Outcome.COMMITTED;
+        } catch (SQLException | RuntimeException e) {
+            return outcomeOf(e);
+        }
+    }
+
+    private void issue(TransactionContext txn, Trace.Operation op) {
+        DataStoreShim store = stores[op.store];
+        switch (op.kind) {
+            case READ:
+                store.query(txn, op.keys.get(0));
+                break;
+            case WRITE:
+                store.update(txn, op.keys.get(0), filler(op.valueLength));
+                break;
+            case PREFETCH:
+                txn.prefetch(store, op.keys);
+                break;
+        }
+    }
+
+    private static boolean failedOperation(Trace.Transaction txn) {
+        for (Trace.Operation op : txn.operations) {
+            if (op.failed && op.kind != Trace.Kind.PREFETCH) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String filler(int length) {
+        return length <= FILLER.length() ? FILLER.substring(0, length) : "x".repeat(length);
+    }
+
+    private static Trace.Outcome outcomeOf(Throwable failure) {
+        if (failure instanceof ValidationException) {
+            return Trace.Outcome.VALIDATION;
+        }
+        if (failure instanceof TransactionTimeoutException) {
+            return Trace.Outcome.TIMEOUT;
+        }
+        if (failure instanceof AdmissionRejectedException || failure instanceof StoreUnavailableException) {
+            return Trace.Outcome.UNAVAILABLE;
+        }
+        return Trace.Outcome.ERROR;
+    }
+
+    private static void park(long until) {
+        long left;
+        while ((left = until - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(left);
+        }
+    }
+
+    // Figures for a recording or a replay of it. Each replay thread keeps its own, merged
+    // once they are done.
+    private static final class Tally {
+        final long[] outcomes = new long[OUTCOMES.length];
+        // [recorded outcome][replayed outcome]; replays only
+        final long[][] transitions = new long[OUTCOMES.length][OUTCOMES.length];
+        // Committed transactions only
+        final LatencyHistogram latencies = new LatencyHistogram();
+        // How late transactions started against the schedule; replays only
+        final LatencyHistogram lag = new LatencyHistogram();
+        // [store][kind], successful calls only in recordings
+        final LatencyHistogram[][] operations;
+        double seconds;
+        long endNanos;
+
+        Tally(int stores) {
+            operations = new LatencyHistogram[stores][KINDS.length];
+            for (LatencyHistogram[] store : operations) {
+                for (int k = 0; k < KINDS.length; k++) {
+                    store[k] = new LatencyHistogram();
+                }
+            }
+        }
+
+        void add(Tally other) {
+            for (int i = 0; i < OUTCOMES.length; i++) {
+                outcomes[i] += other.outcomes[i];
+                for (int j = 0; j < OUTCOMES.length; j++) {
+                    transitions[i][j] += other.transitions[i][j];
+                }
+            }
+            latencies.add(other.latencies);
+            lag.add(other.lag);
+            for (int s = 0; s < operations.length; s++) {
+                for (int k = 0; k < KINDS.length; k++) {
+                    operations[s][k].add(other.operations[s][k]);
+                }
+            }
+            endNanos = Math.max(endNanos, other.endNanos);
+        }
+
+        long count(Trace.Outcome outcome) {
+            return outcomes[outcome.ordinal()];
+        }
+
+        // Given up on by the coordinator, as BenchmarkMetrics counts aborts
+        long aborted() {
+            return count(Trace.Outcome.VALIDATION) + count(Trace.Outcome.TIMEOUT) + count(Trace.Outcome.UNAVAILABLE);
+        }
+    }
+
+    public final class Result {
+        private final double speed;
+        private final Tally recorded;
+        private final Tally replayed;
+
+        private Result(double speed, Tally recorded, Tally replayed) {
+            this.speed = speed;
+            this.recorded = recorded;
+            this.replayed = replayed;
+        }
+
+        double getSeconds() {
+            return replayed.seconds;
+        }
+
+        long getCommitted() {
+            return replayed.count(Trace.Outcome.COMMITTED);
+        }
+
+        long getAborted() {
+            return replayed.aborted();
+        }
+
+        long getErrored() {
+            return replayed.count(Trace.Outcome.ERROR);
+        }
+
+        LatencyHistogram getLatencies() {
+            return replayed.latencies;
+        }
+
+        // Transactions whose outcome differs from the recording's
+        long getChanged() {
+            long changed = 0;
+            for (int i = 0; i < OUTCOMES.length; i++) {
+                for (int j = 0; j < OUTCOMES.length; j++) {
+                    if (i != j) {
+                        changed += replayed.transitions[i][j];
+                    }
+                }
+            }
+            return changed;
+        }
+
+        // Recorded figures and the differences, for the results row
+        Map<String, Double> report() {
+            Map<String, Double> figures = new LinkedHashMap<>();
+            figures.put("speed", speed);
+            figures.put("sessions", (double) sessions);
+            figures.put("recorded_goodput", recorded.count(Trace.Outcome.COMMITTED) / recorded.seconds);
+            figures.put("recorded_p50_us", recorded.latencies.percentile(0.5) / 1e3);
+            figures.put("recorded_p99_us", recorded.latencies.percentile(0.99) / 1e3);
+            for (Trace.Outcome outcome : OUTCOMES) {
+                String name = outcome.name().toLowerCase(Locale.ROOT);
+                figures.put("recorded_" + name, (double) recorded.count(outcome));
+                figures.put("replayed_" + name, (double) replayed.count(outcome));
+            }
+            figures.put("outcome_changes", (double) getChanged());
+            figures.put("lag_p99_us", replayed.lag.percentile(0.99) / 1e3);
+            figures.put("lag_max_us", replayed.lag.getMax() / 1e3);
+            return figures;
+        }
+
+        public void print(String name) {
+            double recordedSeconds = recorded.seconds / speed;
+            System.out.printf("%s: %d transactions at %sx on %d threads (%d sessions)\n", name,
+                trace.getTransactions().size(), format(speed), lanes.size(), sessions);
+            System.out.printf("  %-28s %12s %12s\n", "", "recorded", "replayed");
+            row("seconds (at this speed)", recordedSeconds, replayed.seconds);
+            row("commits/s", recorded.count(Trace.Outcome.COMMITTED) / recordedSeconds,
+                replayed.count(Trace.Outcome.COMMITTED) / replayed.seconds);
+            for (Trace.Outcome outcome : OUTCOMES) {
+                if (recorded.count(outcome) + replayed.count(outcome) > 0) {
+                    row(outcome.name().toLowerCase(Locale.ROOT), recorded.count(outcome), replayed.count(outcome));
+                }
+            }
+            row("commit p50 us", recorded.latencies.percentile(0.5) / 1e3, replayed.latencies.percentile(0.5) / 1e3);
+            row("commit p99 us", recorded.latencies.percentile(0.99) / 1e3, replayed.latencies.percentile(0.99) / 1e3);
+            row("commit p99.9 us", recorded.latencies.percentile(0.999) / 1e3,
+                replayed.latencies.percentile(0.999) / 1e3);
+            for (int s = 0; s < stores.length; s++) {
+                for (Trace.Kind kind : KINDS) {
+                    LatencyHistogram before = recorded.operations[s][kind.ordinal()];
+                    LatencyHistogram after = replayed.operations[s][kind.ordinal()];
+                    if (after.getCount() > 0) {
+                        String label = trace.getStores().get(s) + " " + kind.name().toLowerCase(Locale.ROOT);
+                        row(label + " p50 us", before.percentile(0.5) / 1e3, after.percentile(0.5) / 1e3);
+                        row(label + " p99 us", before.percentile(0.99) / 1e3, after.percentile(0.99) / 1e3);
+                    }
+                }
+            }
+            Map<String, Long> changes = new TreeMap<>();
+            for (int i = 0; i < OUTCOMES.length; i++) {
+                for (int j = 0; j < OUTCOMES.length; j++) {
+                    if (i != j && replayed.transitions[i][j] > 0) {
+                        changes.put(OUTCOMES[i].name().toLowerCase(Locale.ROOT) + "->"
+                            + OUTCOMES[j].name().toLowerCase(Locale.ROOT), replayed.transitions[i][j]);
+                    }
+                }
+            }
+            System.out.printf("  Outcome changes: %d %s\n", getChanged(), changes);
+            System.out.printf("  Start lag behind schedule: p50 %.1f us, p99 %.1f us, max %.1f us\n",
+                replayed.lag.percentile(0.5) / 1e3, replayed.lag.percentile(0.99) / 1e3,
+                replayed.lag.getMax() / 1e3);
+        }
+
+        private void row(String label, double before, double after) {
+            System.out.printf("  %-28s %12.1f %12.1f\n", label, before, after);
+        }
+
+        private String format(double value) {
+            return value == Math.rint(value) ? String.valueOf((long) value) : String.valueOf(value);
+        }
+    }
+}
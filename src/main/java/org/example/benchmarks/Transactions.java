@@ -0,0 +1,134 @@
+package org.example.benchmarks;
+
+import org.example.EpoxyCoordinator;
+import org.example.PhaseTimings;
+import org.example.TransactionContext;
+import org.example.shims.DataStoreShim;
+
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.function.Function;
+
+// How a benchmark runs each transaction: through the coordinator, or straight against
+// the stores for the direct baseline. Bodies are the same either way.
+abstract class Transactions {
+    // As EpoxyCoordinator.execute: commits unless the body aborted, and rethrows failures
+    abstract <T> T execute(Collection<String> declaredKeys, Function<TransactionContext, T> body)
+        throws SQLException;
+
+    <T> T execute(Function<TransactionContext, T> body) throws SQLException {
+        return execute(Collections.emptySet(), body);
+    }
+
+    // Called from inside a body to roll its transaction back; execute then returns the
+    // body's result without committing
+    abstract void abort(TransactionContext txn) throws SQLException;
+
+    static Transactions coordinated(EpoxyCoordinator coordinator) {
+        return new Transactions() {
+            @Override
+            <T> T execute(Collection<String> declaredKeys, Function<TransactionContext, T> body) throws SQLException {
+                return coordinator.execute(declaredKeys, body);
+            }
+
+            @Override
+            void abort(TransactionContext txn) throws SQLException {
+                coordinator.abortTransaction(txn);
+            }
+        };
+    }
+
+    // The coordinator only hands out transaction IDs, so the stores version direct writes
+    // in the same order as coordinated ones. timings may be null.
+    static Transactions direct(EpoxyCoordinator ids, DataStoreShim[] stores, PhaseTimings timings) {
+        return new Direct(ids, stores, timings);
+    }
+
+    // Each transaction sees every version written before it, committed or not, and its
+    // writes are prepared and finalized on every store it touched with no validation.
+    // Nothing is retried. Prefetches run inline, there being no coordinator executor.
+    private static final class Direct extends Transactions {
+        private static final long[] NO_TXNS = new long[0];
+
+        private final EpoxyCoordinator ids;
+        private final DataStoreShim[] stores;
+        private final PhaseTimings timings;
+        // Set by abort() for the transaction running on this thread
+        private final ThreadLocal<TransactionContext> aborted = new ThreadLocal<>();
+
+        Direct(EpoxyCoordinator ids, DataStoreShim[] stores, PhaseTimings timings) {
+            this.ids = ids;
+            this.stores = stores;
+            this.timings = timings;
+        }
+
+        @Override
+        <T> T execute(Collection<String> declaredKeys, Function<TransactionContext, T> body) throws SQLException {
+            long mark = System.nanoTime();
+            long txnId = ids.nextTransactionId();
+            TransactionContext txn = new TransactionContext(txnId, txnId + 1, txnId, NO_TXNS);
+            if (timings != null) {
+                timings.lap(PhaseTimings.Phase.BEGIN, mark);
+            }
+            T result;
+            try {
+                result = body.apply(txn);
+            } catch (RuntimeException e) {
+                if (!takeAborted(txn)) {
+                    rollBack(txn);
+                }
+                throw e;
+            }
+            if (takeAborted(txn)) {
+                return result;
+            }
+
+            mark = timings == null ? 0 : System.nanoTime();
+            try {
+                for (DataStoreShim store : stores) {
+                    if (!txn.getModifiedKeys(store).isEmpty()) {
+                        store.prepareCommit(txn);
+                    }
+                }
+            } catch (RuntimeException e) {
+                rollBack(txn);
+                throw e;
+            }
+            if (timings != null) {
+                mark = timings.lap(PhaseTimings.Phase.PREPARE, mark);
+            }
+            for (DataStoreShim store : stores) {
+                if (!txn.getModifiedKeys(store).isEmpty()) {
+                    store.finalizeCommit(txn);
+                }
+            }
+            if (timings != null) {
+                timings.lap(PhaseTimings.Phase.FINALIZE, mark);
+            }
+            return result;
+        }
+
+        private boolean takeAborted(TransactionContext txn) {
+            if (aborted.get() != txn) {
+                return false;
+            }
+            aborted.remove();
+            return true;
+        }
+
+        @Override
+        void abort(TransactionContext txn) {
+            rollBack(txn);
+            aborted.set(txn);
+        }
+
+        private void rollBack(TransactionContext txn) {
+            for (DataStoreShim store : stores) {
+                if (!txn.getModifiedKeys(store).isEmpty()) {
+                    store.abortTransaction(txn);
+                }
+            }
+        }
+    }
+}
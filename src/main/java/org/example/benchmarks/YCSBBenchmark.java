@@ -0,0 +1,409 @@
+package org.example.benchmarks;
+
+import org.example.AbortStats;
+import org.example.EpoxyCoordinator;
+import org.example.Startup;
+import org.example.shims.DataStoreShim;
+import org.example.shims.ElasticsearchShim;
+import org.example.shims.MongoDBShim;
+import org.example.shims.MySQLShim;
+import org.example.shims.PostgresShim;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+// The YCSB core workloads over any set of stores. Records are "user<n>" with fieldCount
+// fields of fieldLength characters, stored as one JSON value. Keys are picked with a
+// uniform, zipfian, latest or hotspot distribution, so hot-key contention can be
+// dialled up and its effect on throughput, latency and aborts measured.
+//
+// The shims can't scan, so a scan reads scanLength consecutive record numbers from the
+// start key in one batched read per store. Updates write the whole record, not one field.
+public class YCSBBenchmark implements ScalingRunner.Reporter {
+    public enum Distribution {
+        UNIFORM, ZIPFIAN, LATEST, HOTSPOT
+    }
+
+    // Proportions of read, update, insert, scan and read-modify-write, with the request
+    // distribution YCSB's own workload files use
+    public enum Workload {
+        A(0.5, 0.5, 0, 0, 0, Distribution.ZIPFIAN),
+        B(0.95, 0.05, 0, 0, 0, Distribution.ZIPFIAN),
+        C(1, 0, 0, 0, 0, Distribution.ZIPFIAN),
+        D(0.95, 0, 0.05, 0, 0, Distribution.LATEST),
+        E(0, 0, 0.05, 0.95, 0, Distribution.ZIPFIAN),
+        F(0.5, 0, 0, 0, 0.5, Distribution.ZIPFIAN);
+
+        private final double[] thresholds;
+        private final Distribution distribution;
+
+        Workload(double read, double update, double insert, double scan, double readModifyWrite,
+                 Distribution distribution) {
+            this.thresholds = new double[] {
+                read, read + update, read + update + insert, read + update + insert + scan, 1
+            };
+            this.distribution = distribution;
+        }
+
+        public Distribution getDefaultDistribution() {
+            return distribution;
+        }
+    }
+
+    // Where a record lives
+    public enum Routing {
+        // On every store; each operation reads or writes all of them in one transaction
+        ALL,
+        // On one store, chosen by the key's hash
+        PARTITIONED
+    }
+
+    private enum Operation {
+        READ, UPDATE, INSERT, SCAN, READ_MODIFY_WRITE
+    }
+
+    private static final int BATCH_ROWS = 1000;
+    private static final int MAX_SCAN_LENGTH = 100;
+    private static final double HOT_SET_FRACTION = 0.2;
+
+    private EpoxyCoordinator coordinator;
+    private Transactions transactions;
+    private DataStoreShim[] stores;
+    private Routing routing;
+    private long records;
+    private int fieldCount;
+    private int fieldLength;
+    // Record numbers at or above this haven't been handed out; inserts take the next one.
+    // A read can land on an insert that hasn't committed yet and find nothing, as in YCSB.
+    private final AtomicLong nextRecord = new AtomicLong();
+    private volatile Workload workload = Workload.A;
+    private volatile KeyDistribution keys = KeyDistribution.zipfian(0.99);
+
+    private final Operation[] operations = Operation.values();
+    private final LongAdder[] completed = adders();
+    private final LongAdder[] failed = adders();
+    private final BenchmarkMetrics[] latencies = metrics();
+    private long abortsAtReset;
+
+    // stores: any of postgres, mysql, mongodb, elasticsearch
+    public YCSBBenchmark(List<String> storeNames, Routing routing, long records, int fieldCount, int fieldLength,
+                         int loaderThreads) throws SQLException {
+        this(BenchmarkEnvironment.coordinated(), storeNames, routing, records, fieldCount, fieldLength, loaderThreads);
+    }
+
+    public YCSBBenchmark(BenchmarkEnvironment environment, List<String> storeNames, Routing routing, long records,
+                         int fieldCount, int fieldLength, int loaderThreads) throws SQLException {
+        Startup startup = new Startup();
+        Future<EpoxyCoordinator> coordinatorInit = environment.startCoordinator(startup,
+            "jdbc:postgresql://localhost:5432/epoxy_test", "postgres", "test987");
+        List<Future<DataStoreShim>> storeInits = new ArrayList<>();
+        for (String name : storeNames) {
+            storeInits.add(environment.startStore(startup, name, () -> connect(name)));
+        }
+        coordinator = environment.coordinator(startup, coordinatorInit);
+        DataStoreShim[] shims = new DataStoreShim[storeInits.size()];
+        for (int i = 0; i < shims.length; i++) {
+            shims[i] = environment.store(startup, storeInits.get(i));
+        }
+        startup.print("YCSB Benchmark");
+        transactions = environment.transactions(coordinator, shims);
+        init(routing, records, fieldCount, fieldLength, loaderThreads, shims);
+    }
+
+    YCSBBenchmark(EpoxyCoordinator coordinator, Routing routing, long records, int fieldCount, int fieldLength,
+                  int loaderThreads, DataStoreShim... stores) throws SQLException {
+        this.coordinator = coordinator;
+        this.transactions = Transactions.coordinated(coordinator);
+        init(routing, records, fieldCount, fieldLength, loaderThreads, stores);
+    }
+
+    static DataStoreShim connect(String name) throws SQLException {
+        switch (name) {
+            case "postgres":
+                return new PostgresShim("jdbc:postgresql://localhost:5432/epoxy_test", "postgres", "test987");
+            case "mysql":
+                return new MySQLShim("jdbc:mysql://localhost:3306/epoxy_test", "mysql", "test987");
+            case "mongodb":
+                return new MongoDBShim("mongodb://localhost:27017", "epoxy_test");
+            case "elasticsearch":
+                return new ElasticsearchShim("localhost");
+            default:
+                throw new IllegalArgumentException("Unknown store: " + name);
+        }
+    }
+
+    private void init(Routing routing, long records, int fieldCount, int fieldLength, int loaderThreads,
+                      DataStoreShim... stores) throws SQLException {
+        this.stores = stores;
+        this.routing = routing;
+        this.records = records;
+        this.fieldCount = fieldCount;
+        this.fieldLength = fieldLength;
+        for (DataStoreShim store : stores) {
+            coordinator.addSecondaryStore(store);
+        }
+        load(loaderThreads);
+        nextRecord.set(records);
+    }
+
+    // skew is theta for ZIPFIAN and LATEST, which must be in (0, 1), and the fraction of
+    // operations that go to the hottest 20% of records for HOTSPOT; UNIFORM ignores it
+    public void configure(Workload workload, Distribution distribution, double skew) {
+        switch (distribution) {
+            case UNIFORM:
+                keys = KeyDistribution.uniform();
+                break;
+            case ZIPFIAN:
+                keys = KeyDistribution.zipfian(skew);
+                break;
+            case LATEST:
+                keys = KeyDistribution.latest(skew);
+                break;
+            default:
+                keys = KeyDistribution.hotspot(HOT_SET_FRACTION, skew);
+                break;
+        }
+        this.workload = workload;
+    }
+
+    public EpoxyCoordinator getCoordinator() {
+        return coordinator;
+    }
+
+    private void load(int threads) throws SQLException {
+        String marker = String.format("{\"records\":%d,\"fields\":%d,\"length\":%d,\"routing\":\"%s\"}",
+            records, fieldCount, fieldLength, routing);
+        boolean loaded = true;
+        for (DataStoreShim store : stores) {
+            loaded &= marker.equals(coordinator.execute(txn -> store.query(txn, "YCSB_LOADED")));
+        }
+        if (loaded) {
+            System.out.printf("YCSB: reusing %d records already loaded\n", records);
+            return;
+        }
+
+        long start = System.nanoTime();
+        LongAdder rows = new LongAdder();
+        ExecutorService executor = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "ycsb-loader");
+            t.setDaemon(true);
+            return t;
+        });
+        List<Future<Void>> tasks = new ArrayList<>();
+        try {
+            for (long first = 0; first < records; first += BATCH_ROWS) {
+                long from = first;
+                tasks.add(executor.submit(() -> {
+                    Map<DataStoreShim, LoadBatch> batches = new LinkedHashMap<>();
+                    for (long n = from; n < Math.min(from + BATCH_ROWS, records); n++) {
+                        String key = key(n);
+                        String value = record(ThreadLocalRandom.current());
+                        for (DataStoreShim store : route(key)) {
+                            batches.computeIfAbsent(store, s -> new LoadBatch(coordinator, s, BATCH_ROWS, rows))
+                                .add(key, value);
+                        }
+                    }
+                    for (LoadBatch batch : batches.values()) {
+                        batch.flush();
+                    }
+                    return null;
+                }));
+            }
+            for (Future<Void> task : tasks) {
+                LoadBatch.await(task);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        for (DataStoreShim store : stores) {
+            coordinator.execute(txn -> {
+                store.update(txn, "YCSB_LOADED", marker);
+                return null;
+            });
+        }
+        System.out.printf("YCSB: loaded %d rows in %.1f s\n", rows.sum(), (System.nanoTime() - start) / 1e9);
+    }
+
+    public void runOperation() throws SQLException {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        double[] thresholds = workload.thresholds;
+        double pick = random.nextDouble();
+        int op = 0;
+        while (op < thresholds.length - 1 && pick >= thresholds[op]) {
+            op++;
+        }
+        long startTime = System.nanoTime();
+        try {
+            switch (operations[op]) {
+                case READ:
+                    read(key(keys.next(random, nextRecord.get())));
+                    break;
+                case UPDATE:
+                    write(key(keys.next(random, nextRecord.get())), record(random));
+                    break;
+                case INSERT:
+                    write(key(nextRecord.getAndIncrement()), record(random));
+                    break;
+                case SCAN:
+                    scan(keys.next(random, nextRecord.get()), 1 + random.nextInt(MAX_SCAN_LENGTH));
+                    break;
+                default:
+                    readModifyWrite(key(keys.next(random, nextRecord.get())), record(random));
+                    break;
+            }
+        } catch (SQLException | RuntimeException e) {
+            failed[op].increment();
+            throw e;
+        }
+        completed[op].increment();
+        latencies[op].recordLatency(startTime);
+    }
+
+    private void read(String key) throws SQLException {
+        transactions.execute(txn -> {
+            List<DataStoreShim> route = route(key);
+            // With a record on several stores, all of them are read at once
+            if (route.size() > 1) {
+                for (DataStoreShim store : route) {
+                    txn.prefetch(store, key);
+                }
+            }
+            for (DataStoreShim store : route) {
+                store.query(txn, key);
+            }
+            return null;
+        });
+    }
+
+    private void write(String key, String value) throws SQLException {
+        transactions.execute(List.of(key), txn -> {
+            for (DataStoreShim store : route(key)) {
+                store.update(txn, key, value);
+            }
+            return null;
+        });
+    }
+
+    private void readModifyWrite(String key, String value) throws SQLException {
+        transactions.execute(List.of(key), txn -> {
+            List<DataStoreShim> route = route(key);
+            for (DataStoreShim store : route) {
+                txn.prefetch(store, key);
+            }
+            for (DataStoreShim store : route) {
+                store.query(txn, key);
+                store.update(txn, key, value);
+            }
+            return null;
+        });
+    }
+
+    private void scan(long first, int length) throws SQLException {
+        long end = Math.min(first + length, nextRecord.get());
+        transactions.execute(txn -> {
+            Map<DataStoreShim, List<String>> byStore = new LinkedHashMap<>();
+            for (long n = first; n < end; n++) {
+                String key = key(n);
+                for (DataStoreShim store : route(key)) {
+                    byStore.computeIfAbsent(store, s -> new ArrayList<>()).add(key);
+                }
+            }
+            byStore.forEach(txn::prefetch);
+            byStore.forEach((store, keys) -> {
+                for (String key : keys) {
+                    store.query(txn, key);
+                }
+            });
+            return null;
+        });
+    }
+
+    private List<DataStoreShim> route(String key) {
+        if (routing == Routing.ALL || stores.length == 1) {
+            return List.of(stores);
+        }
+        return List.of(stores[Math.floorMod(key.hashCode(), stores.length)]);
+    }
+
+    private static String key(long n) {
+        return "user" + n;
+    }
+
+    private String record(Random random) {
+        StringBuilder value = new StringBuilder(fieldCount * (fieldLength + 12) + 2).append('{');
+        for (int f = 0; f < fieldCount; f++) {
+            if (f > 0) {
+                value.append(',');
+            }
+            value.append("\"field").append(f).append("\":\"");
+            for (int i = 0; i < fieldLength; i++) {
+                value.append((char) ('a' + random.nextInt(26)));
+            }
+            value.append('"');
+        }
+        return value.append('}').toString();
+    }
+
+    private static BenchmarkMetrics[] metrics() {
+        BenchmarkMetrics[] metrics = new BenchmarkMetrics[Operation.values().length];
+        for (int i = 0; i < metrics.length; i++) {
+            metrics[i] = new BenchmarkMetrics();
+        }
+        return metrics;
+    }
+
+    private static LongAdder[] adders() {
+        LongAdder[] adders = new LongAdder[Operation.values().length];
+        for (int i = 0; i < adders.length; i++) {
+            adders[i] = new LongAdder();
+        }
+        return adders;
+    }
+
+    @Override
+    public void reset() {
+        for (int i = 0; i < operations.length; i++) {
+            completed[i].reset();
+            failed[i].reset();
+            latencies[i].start(0);
+        }
+        abortsAtReset = coordinator.getAbortStats().getAborts("validation");
+    }
+
+    // The abort rate is validation failures per attempt, retried attempts included
+    @Override
+    public Map<String, Double> report(double seconds) {
+        AbortStats abortStats = coordinator.getAbortStats();
+        long aborts = abortStats.getAborts("validation") - abortsAtReset;
+        long committed = 0;
+        for (LongAdder counter : completed) {
+            committed += counter.sum();
+        }
+        double abortRate = aborts == 0 ? 0 : (double) aborts / (aborts + committed);
+        Map<String, Double> figures = new LinkedHashMap<>();
+        figures.put("abort_rate", abortRate);
+        figures.put("aborts", (double) aborts);
+        System.out.printf("YCSB: %d aborts, %.2f%% of attempts\n", aborts, abortRate * 100);
+        for (int i = 0; i < operations.length; i++) {
+            if (completed[i].sum() + failed[i].sum() == 0) {
+                continue;
+            }
+            String name = operations[i].name().toLowerCase(Locale.ROOT);
+            LatencyHistogram histogram = latencies[i].latencies();
+            System.out.printf("  %-18s %8d done, %5d failed, p50 %.1f us, p99 %.1f us\n", name, completed[i].sum(),
+                failed[i].sum(), histogram.percentile(0.5) / 1e3, histogram.percentile(0.99) / 1e3);
+            figures.put(name + "_done", (double) completed[i].sum());
+            figures.put(name + "_failed", (double) failed[i].sum());
+            figures.put(name + "_p99_us", histogram.percentile(0.99) / 1e3);
+        }
+        return figures;
+    }
+}
@@ -0,0 +1,269 @@
+package org.example.shims;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.example.StoreUnavailableException;
+import org.example.TransactionContext;
+import org.example.TransactionTimeoutException;
+
+// Wraps a shim so that only a bounded number of calls can be in flight against it at once,
+// with a bounded number of callers allowed to wait for a slot. Anything past that fails
+// fast with StoreUnavailableException instead of tying up another worker thread, so a
+// store whose latency spikes can't absorb the threads serving transactions on other stores.
+//
+// A circuit breaker sits in front of the bulkhead: after a run of consecutive failures
+// (errors or timeouts) calls are refused outright until the open period passes, then a
+// single trial call decides whether to close it again.
+//
+// Commit finalization, abort and GC bypass both, since they release state the store
+// is already holding for us and must not be dropped.
+public class BulkheadShim implements DataStoreShim {
+    private static final int CLOSED = 0;
+    private static final int OPEN = 1;
+    private static final int HALF_OPEN = 2;
+
+    private final DataStoreShim delegate;
+    private final int maxConcurrent;
+    private final int maxQueued;
+    private final long maxQueueWaitNanos;
+    private final int failureThreshold;
+    private final long openNanos;
+
+    private final Semaphore permits;
+    private final AtomicInteger queued = new AtomicInteger();
+    private final AtomicInteger peakQueued = new AtomicInteger();
+
+    private final AtomicInteger state = new AtomicInteger(CLOSED);
+    private final AtomicInteger consecutiveFailures = new AtomicInteger();
+    private final AtomicLong openedAt = new AtomicLong();
+
+    private final LongAdder calls = new LongAdder();
+    private final LongAdder queuedCalls = new LongAdder();
+    private final LongAdder queueWaitNanos = new LongAdder();
+    private final LongAdder rejectedSaturated = new LongAdder();
+    private final LongAdder rejectedOpen = new LongAdder();
+    private final LongAdder breakerTrips = new LongAdder();
+
+    public BulkheadShim(DataStoreShim delegate, int maxConcurrent, int maxQueued, long maxQueueWait, TimeUnit unit,
+                        int failureThreshold, long openDuration, TimeUnit openUnit) {
+        this.delegate = delegate;
+        this.maxConcurrent = maxConcurrent;
+        this.maxQueued = maxQueued;
+        this.maxQueueWaitNanos = unit.toNanos(maxQueueWait);
+        this.failureThreshold = failureThreshold;
+        this.openNanos = openUnit.toNanos(openDuration);
+        this.permits = new Semaphore(maxConcurrent, true);
+    }
+
+    // 32 in flight, 64 waiting for up to 100ms; open for 1s after 5 failures in a row
+    public static BulkheadShim withDefaults(DataStoreShim delegate) {
+        return new BulkheadShim(delegate, 32, 64, 100, TimeUnit.MILLISECONDS, 5, 1, TimeUnit.SECONDS);
+    }
+
+    @Override
+    public DataStoreShim unwrap() {
+        return delegate.unwrap();
+    }
+
+    @Override
+    public void update(TransactionContext txn, String key, String value) {
+        enter(txn, "update");
+        boolean ok = false;
+        try {
+            delegate.update(txn, key, value);
+            ok = true;
+        } finally {
+            exit(ok);
+        }
+    }
+
+    @Override
+    public String query(TransactionContext txn, String key) {
+        // Already read; no need to take a slot to be handed the result
+        if (txn.isPrefetched(this, key)) {
+            return txn.getPrefetched(this, key);
+        }
+        enter(txn, "query");
+        boolean ok = false;
+        try {
+            String value = delegate.query(txn, key);
+            ok = true;
+            return value;
+        } finally {
+            exit(ok);
+        }
+    }
+
+    @Override
+    public Map<String, String> queryAll(TransactionContext txn, Collection<String> keys) {
+        enter(txn, "query");
+        boolean ok = false;
+        try {
+            Map<String, String> values = delegate.queryAll(txn, keys);
+            ok = true;
+            return values;
+        } finally {
+            exit(ok);
+        }
+    }
+
+    @Override
+    public boolean validateTransaction(TransactionContext txn) {
+        enter(txn, "validate");
+        boolean ok = false;
+        try {
+            boolean valid = delegate.validateTransaction(txn);
+            ok = true;
+            return valid;
+        } finally {
+            exit(ok);
+        }
+    }
+
+    @Override
+    public void prepareCommit(TransactionContext txn) {
+        enter(txn, "prepare");
+        boolean ok = false;
+        try {
+            delegate.prepareCommit(txn);
+            ok = true;
+        } finally {
+            exit(ok);
+        }
+    }
+
+    @Override
+    public void finalizeCommit(TransactionContext txn) {
+        delegate.finalizeCommit(txn);
+    }
+
+    @Override
+    public void abortTransaction(TransactionContext txn) {
+        delegate.abortTransaction(txn);
+    }
+
+    @Override
+    public void garbageCollect(long globalXmin) {
+        delegate.garbageCollect(globalXmin);
+    }
+
+    private void enter(TransactionContext txn, String operation) {
+        txn.checkDeadline(delegate, operation);
+        calls.increment();
+        if (!allowThroughBreaker()) {
+            rejectedOpen.increment();
+            throw new StoreUnavailableException(delegate, StoreUnavailableException.CIRCUIT_OPEN);
+        }
+        if (permits.tryAcquire()) {
+            return;
+        }
+
+        // Full: wait in line if there's room, for no longer than the queue allows or the deadline leaves
+        int waiting = queued.incrementAndGet();
+        if (waiting > maxQueued) {
+            queued.decrementAndGet();
+            releaseTrial();
+            rejectedSaturated.increment();
+            throw new StoreUnavailableException(delegate, StoreUnavailableException.SATURATED);
+        }
+        peakQueued.accumulateAndGet(waiting, Math::max);
+        queuedCalls.increment();
+        long waitNanos = txn.hasDeadline()
+            ? Math.min(maxQueueWaitNanos, TimeUnit.MILLISECONDS.toNanos(txn.remainingMillis()))
+            : maxQueueWaitNanos;
+        long start = System.nanoTime();
+        boolean acquired;
+        try {
+            acquired = permits.tryAcquire(waitNanos, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            acquired = false;
+        } finally {
+            queued.decrementAndGet();
+            queueWaitNanos.add(System.nanoTime() - start);
+        }
+        if (!acquired) {
+            releaseTrial();
+            if (txn.isExpired()) {
+                throw new TransactionTimeoutException(txn.getTxnId(), delegate, operation, null);
+            }
+            rejectedSaturated.increment();
+            throw new StoreUnavailableException(delegate, StoreUnavailableException.SATURATED);
+        }
+    }
+
+    private void exit(boolean ok) {
+        permits.release();
+        if (ok) {
+            consecutiveFailures.set(0);
+            state.compareAndSet(HALF_OPEN, CLOSED);
+        } else {
+            int s = state.get();
+            // Failures of calls admitted before the breaker opened don't extend the open period
+            if (s == HALF_OPEN || (s == CLOSED && consecutiveFailures.incrementAndGet() >= failureThreshold)) {
+                trip();
+            }
+        }
+    }
+
+    private boolean allowThroughBreaker() {
+        int s = state.get();
+        if (s == CLOSED) {
+            return true;
+        }
+        // Once the open period is over, the first caller through becomes the trial call
+        return s == OPEN
+            && System.nanoTime() - openedAt.get() >= openNanos
+            && state.compareAndSet(OPEN, HALF_OPEN);
+    }
+
+    // A trial call that never reached the store says nothing about it; let the next caller try
+    private void releaseTrial() {
+        if (state.compareAndSet(HALF_OPEN, OPEN)) {
+            openedAt.set(System.nanoTime() - openNanos);
+        }
+    }
+
+    private void trip() {
+        openedAt.set(System.nanoTime());
+        if (state.getAndSet(OPEN) != OPEN) {
+            breakerTrips.increment();
+        }
+        consecutiveFailures.set(0);
+    }
+
+    public boolean isOpen() {
+        return state.get() != CLOSED;
+    }
+
+    public int getInFlight() {
+        return maxConcurrent - permits.availablePermits();
+    }
+
+    public int getQueued() {
+        return queued.get();
+    }
+
+    public long getRejected() {
+        return rejectedSaturated.sum() + rejectedOpen.sum();
+    }
+
+    @Override
+    public void printStats() {
+        long total = calls.sum();
+        long waited = queuedCalls.sum();
+        System.out.printf("%s bulkhead: %d calls, %d in flight/%d, %d queued (peak %d/%d), %.1f%% queued avg %.2f ms, "
+                + "rejected %d saturated + %d circuit open, %d breaker trips%s\n",
+            delegate.unwrap().getClass().getSimpleName(), total, getInFlight(), maxConcurrent, getQueued(),
+            peakQueued.get(), maxQueued, total == 0 ? 0.0 : 100.0 * waited / total,
+            waited == 0 ? 0.0 : queueWaitNanos.sum() / 1e6 / waited,
+            rejectedSaturated.sum(), rejectedOpen.sum(), breakerTrips.sum(), isOpen() ? " (open)" : "");
+        delegate.printStats();
+    }
+}
@@ -1,13 +1,32 @@
 package org.example.shims;
 
+import java.util.Collection;
+import java.util.Map;
 import org.example.TransactionContext;
 
 public interface DataStoreShim {
     void update(TransactionContext txn, String key, String value);
+    // A transaction's snapshot is taken the first time getXmin() or the recently committed
+    // set is asked for, so read those before reading anything from the store
     String query(TransactionContext txn, String key);
+    // Reads several keys in as few round trips as the store allows, for
+    // TransactionContext.prefetch. The result maps every key, to null if not found. Runs
+    // off the transaction's thread, so it must only read the snapshot and deadline, and
+    // must not go through query(), which looks at prefetched results.
+    Map<String, String> queryAll(TransactionContext txn, Collection<String> keys);
     boolean validateTransaction(TransactionContext txn);
     void prepareCommit(TransactionContext txn);
     void finalizeCommit(TransactionContext txn);
     void abortTransaction(TransactionContext txn);
     void garbageCollect(long globalXmin);
+
+    // The underlying store for shims that wrap another one. Transactions track write
+    // sets under this identity, so a wrapper and its delegate share the same keys.
+    default DataStoreShim unwrap() {
+        return this;
+    }
+
+    // Prints what this shim counts, if anything; wrappers print their own and pass it on
+    default void printStats() {
+    }
 }
\ No newline at end of file
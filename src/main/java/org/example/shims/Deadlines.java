@@ -0,0 +1,32 @@
+package org.example.shims;
+
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.sql.Statement;
+
+import org.example.TransactionContext;
+import org.example.TransactionTimeoutException;
+
+// Helpers for the JDBC shims to enforce a transaction's deadline on each statement
+final class Deadlines {
+    // Postgres reports a statement cancelled by its query timeout as query_canceled
+    private static final String PG_QUERY_CANCELED = "57014";
+
+    private Deadlines() {
+    }
+
+    // JDBC timeouts are whole seconds; checkDeadline before each call covers the rest
+    static void applyQueryTimeout(Statement stmt, TransactionContext txn) throws SQLException {
+        if (txn.hasDeadline()) {
+            stmt.setQueryTimeout((int) Math.min(Integer.MAX_VALUE, (txn.remainingMillis() + 999) / 1000));
+        }
+    }
+
+    static RuntimeException translate(SQLException e, TransactionContext txn, DataStoreShim shim, String operation) {
+        if (e instanceof SQLTimeoutException || PG_QUERY_CANCELED.equals(e.getSQLState())
+                || txn.isExpired()) {
+            return new TransactionTimeoutException(txn.getTxnId(), shim, operation, e);
+        }
+        return new RuntimeException(e);
+    }
+}
@@ -11,20 +11,26 @@ import co.elastic.clients.transport.ElasticsearchTransport;
 import co.elastic.clients.transport.rest_client.RestClientOptions;
 import co.elastic.clients.transport.rest_client.RestClientTransport;
 import org.apache.http.HttpHost;
+import org.apache.http.client.config.RequestConfig;
 import org.apache.http.message.BasicHeader;
 import org.apache.http.Header;
 import org.elasticsearch.client.RequestOptions;
 import org.elasticsearch.client.RestClient;
 import org.elasticsearch.client.Node;
 import org.example.TransactionContext;
+import org.example.TransactionTimeoutException;
 
 import java.io.IOException;
+import java.net.SocketTimeoutException;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 public class ElasticsearchShim implements DataStoreShim {
     private final ElasticsearchClient client;
@@ -66,8 +72,22 @@ public class ElasticsearchShim implements DataStoreShim {
         this.client = new ElasticsearchClient(transport);
         this.locks = new ConcurrentHashMap<>();
         
-        // Initialize index with optimized settings
-        initializeIndexWithOptimizedSettings();
+        // Initialize index with optimized settings, unless a previous start already did
+        try {
+            SchemaCache.open("http://" + hostname + ":9200/" + indexName, "shards=1 replicas=0",
+                this::warmUp, () -> {
+                    initializeIndexWithOptimizedSettings();
+                    return null;
+                });
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to initialize index", e);
+        }
+    }
+
+    // Opens the first pooled connection; fails with index_not_found if the index is gone
+    private Void warmUp() throws IOException {
+        client.get(g -> g.index(indexName).id("_warmup"), Document.class);
+        return null;
     }
 
     private void initializeIndexWithOptimizedSettings() {
@@ -96,6 +116,8 @@ public class ElasticsearchShim implements DataStoreShim {
 
     @Override
     public void update(TransactionContext txn, String key, String value) {
+        // Writes are buffered and flushed in the background, so only the start is bounded
+        txn.checkDeadline(this, "update");
         BulkOperation operation = new BulkOperation.Builder()
             .index(idx -> idx
                 .index(indexName)
@@ -137,8 +159,12 @@ public class ElasticsearchShim implements DataStoreShim {
 
     @Override
     public String query(TransactionContext txn, String key) {
+        if (txn.isPrefetched(this, key)) {
+            return txn.getPrefetched(this, key);
+        }
+        txn.checkDeadline(this, "query");
         try {
-            var response = client.get(g -> g
+            var response = clientFor(txn).get(g -> g
                 .index(indexName)
                 .id(key),
                 Document.class
@@ -148,10 +174,55 @@ public class ElasticsearchShim implements DataStoreShim {
             }
             return null;
         } catch (IOException e) {
+            if (e instanceof SocketTimeoutException || txn.isExpired()) {
+                throw new TransactionTimeoutException(txn.getTxnId(), this, "query", e);
+            }
             throw new RuntimeException("Failed to query document from Elasticsearch", e);
         }
     }
 
+    @Override
+    public Map<String, String> queryAll(TransactionContext txn, Collection<String> keys) {
+        txn.checkDeadline(this, "query");
+        Map<String, String> values = new HashMap<>();
+        try {
+            var response = clientFor(txn).mget(m -> m
+                .index(indexName)
+                .ids(new ArrayList<>(keys)),
+                Document.class
+            );
+            for (var item : response.docs()) {
+                if (item.isResult() && item.result().found()) {
+                    values.put(item.result().id(), item.result().source().value());
+                }
+            }
+        } catch (IOException e) {
+            if (e instanceof SocketTimeoutException || txn.isExpired()) {
+                throw new TransactionTimeoutException(txn.getTxnId(), this, "query", e);
+            }
+            throw new RuntimeException("Failed to query documents from Elasticsearch", e);
+        }
+        for (String key : keys) {
+            values.putIfAbsent(key, null);
+        }
+        return values;
+    }
+
+    // The Java client has no per-call timeout; bound the HTTP request to what's left of the deadline
+    private ElasticsearchClient clientFor(TransactionContext txn) {
+        if (!txn.hasDeadline()) {
+            return client;
+        }
+        int millis = (int) Math.min(Integer.MAX_VALUE, txn.remainingMillis());
+        RequestConfig config = RequestConfig.custom()
+            .setConnectionRequestTimeout(millis)
+            .setConnectTimeout(millis)
+            .setSocketTimeout(millis)
+            .build();
+        return client.withTransportOptions(new RestClientOptions(
+            RequestOptions.DEFAULT.toBuilder().setRequestConfig(config).build()));
+    }
+
     // Helper class for document structure
     private record Document(
         String value,
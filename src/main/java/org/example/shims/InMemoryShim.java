@@ -0,0 +1,179 @@
+package org.example.shims;
+
+import org.example.TransactionContext;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// In-process stand-in for a real store, keeping a version chain per key in memory.
+// Used to measure coordinator overhead without any containers running.
+public class InMemoryShim implements DataStoreShim {
+    private final ConcurrentHashMap<String, Version> store = new ConcurrentHashMap<>();
+
+    private static final class Version {
+        final String value;
+        final long beginTxn;
+        volatile Version previous;
+        // Set once the writer passes validation; only prepared versions can conflict
+        volatile boolean prepared;
+
+        Version(String value, long beginTxn, Version previous) {
+            this.value = value;
+            this.beginTxn = beginTxn;
+            this.previous = previous;
+        }
+    }
+
+    @Override
+    public void update(TransactionContext txn, String key, String value) {
+        txn.checkDeadline(this, "update");
+        long txnId = txn.getTxnId();
+        while (true) {
+            Version current = store.get(key);
+            Version next = new Version(value, txnId, current);
+            boolean installed = current == null
+                ? store.putIfAbsent(key, next) == null
+                : store.replace(key, current, next);
+            if (installed) {
+                break;
+            }
+        }
+        txn.addModifiedKey(this, key);
+    }
+
+    @Override
+    public String query(TransactionContext txn, String key) {
+        if (txn.isPrefetched(this, key)) {
+            return txn.getPrefetched(this, key);
+        }
+        txn.checkDeadline(this, "query");
+        // Fix the snapshot before looking at the chain; taken afterwards it could count
+        // a commit as visible whose version we never saw
+        return read(txn, txn.getXmin(), key);
+    }
+
+    @Override
+    public Map<String, String> queryAll(TransactionContext txn, Collection<String> keys) {
+        txn.checkDeadline(this, "query");
+        long xmin = txn.getXmin();
+        Map<String, String> values = new HashMap<>();
+        for (String key : keys) {
+            values.put(key, read(txn, xmin, key));
+        }
+        return values;
+    }
+
+    private String read(TransactionContext txn, long xmin, String key) {
+        for (Version v = store.get(key); v != null; v = v.previous) {
+            if (isVisible(txn, xmin, v)) {
+                return v.value;
+            }
+        }
+        return null;
+    }
+
+    private static boolean isVisible(TransactionContext txn, long xmin, Version v) {
+        long txnId = txn.getTxnId();
+        return v.beginTxn == txnId
+            || (v.beginTxn <= txnId && (v.beginTxn < xmin || txn.isRecentlyCommitted(v.beginTxn)));
+    }
+
+    @Override
+    public boolean validateTransaction(TransactionContext txn) {
+        txn.checkDeadline(this, "validate");
+        long txnId = txn.getTxnId();
+        long xmin = txn.getXmin();
+        for (String key : txn.getModifiedKeys(this)) {
+            for (Version v = store.get(key); v != null; v = v.previous) {
+                // Our own versions sit on top and say nothing about where older history starts
+                if (v.beginTxn == txnId) {
+                    continue;
+                }
+                if (v.beginTxn < xmin) {
+                    break;
+                }
+                // First committer wins: writers still in flight will hit our version instead
+                if (v.prepared && !txn.isRecentlyCommitted(v.beginTxn)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void prepareCommit(TransactionContext txn) {
+        txn.checkDeadline(this, "prepare");
+        // Runs inside the coordinator's validation critical section, so any transaction
+        // validating after us will see these versions as conflicts
+        long txnId = txn.getTxnId();
+        for (String key : txn.getModifiedKeys(this)) {
+            for (Version v = store.get(key); v != null; v = v.previous) {
+                if (v.beginTxn == txnId) {
+                    v.prepared = true;
+                }
+            }
+        }
+    }
+
+    @Override
+    public void finalizeCommit(TransactionContext txn) {
+        // Versions are installed at write time
+    }
+
+    @Override
+    public void abortTransaction(TransactionContext txn) {
+        long txnId = txn.getTxnId();
+        for (String key : txn.getModifiedKeys(this)) {
+            removeVersions(key, txnId);
+        }
+    }
+
+    // Removers are serialized: a pop racing with another remover's unlink of the
+    // version beneath it could otherwise put an aborted version back at the head
+    private synchronized void removeVersions(String key, long txnId) {
+        // Pop our versions off the head first, then unlink any buried under later writes
+        while (true) {
+            Version head = store.get(key);
+            if (head == null) {
+                return;
+            }
+            if (head.beginTxn != txnId) {
+                break;
+            }
+            // A failed CAS just means someone wrote on top; re-read and retry
+            if (head.previous == null) {
+                store.remove(key, head);
+            } else {
+                store.replace(key, head, head.previous);
+            }
+        }
+        Version v = store.get(key);
+        while (v != null && v.previous != null) {
+            if (v.previous.beginTxn == txnId) {
+                v.previous = v.previous.previous;
+            } else {
+                v = v.previous;
+            }
+        }
+    }
+
+    @Override
+    public void garbageCollect(long globalXmin) {
+        // Everything older than the newest version below globalXmin is unreachable
+        for (Version head : store.values()) {
+            for (Version v = head; v != null; v = v.previous) {
+                if (v.beginTxn < globalXmin) {
+                    v.previous = null;
+                    break;
+                }
+            }
+        }
+    }
+
+    public int size() {
+        return store.size();
+    }
+}
@@ -0,0 +1,192 @@
+package org.example.shims;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+// How long a stand-in store call takes, sampled once per call. Either parametric, or
+// following a distribution recorded from a real store as a histogram or percentiles.
+public abstract class LatencyModel {
+    public static final LatencyModel NONE = fixed(0);
+
+    // z for the 99th percentile of the standard normal
+    private static final double Z_99 = 2.3263478740408408;
+
+    public abstract long sampleNanos(Random random);
+
+    public static LatencyModel fixed(long nanos) {
+        return new LatencyModel() {
+            @Override
+            public long sampleNanos(Random random) {
+                return nanos;
+            }
+
+            @Override
+            public String toString() {
+                return "fixed " + nanos + "ns";
+            }
+        };
+    }
+
+    // Log-normal through the given median and 99th percentile: the long right tail store
+    // service times usually have
+    public static LatencyModel lognormal(long medianNanos, long p99Nanos) {
+        if (medianNanos <= 0 || p99Nanos < medianNanos) {
+            throw new IllegalArgumentException("Need 0 < median <= p99, got " + medianNanos + " and " + p99Nanos);
+        }
+        double mu = Math.log(medianNanos);
+        double sigma = Math.log((double) p99Nanos / medianNanos) / Z_99;
+        return new LatencyModel() {
+            @Override
+            public long sampleNanos(Random random) {
+                return (long) Math.exp(mu + sigma * random.nextGaussian());
+            }
+
+            @Override
+            public String toString() {
+                return "lognormal p50 " + medianNanos + "ns, p99 " + p99Nanos + "ns";
+            }
+        };
+    }
+
+    // Piecewise linear between known quantiles (ascending, in (0, 1]), e.g. the percentiles
+    // of an earlier run. Below the first quantile its value is used, so give a low one.
+    public static LatencyModel fromQuantiles(double[] quantiles, long[] nanos) {
+        if (quantiles.length == 0 || quantiles.length != nanos.length) {
+            throw new IllegalArgumentException("Need as many latencies as quantiles, and at least one");
+        }
+        for (int i = 1; i < quantiles.length; i++) {
+            if (quantiles[i] <= quantiles[i - 1] || nanos[i] < nanos[i - 1]) {
+                throw new IllegalArgumentException("Quantiles and latencies must both ascend");
+            }
+        }
+        double[] q = quantiles.clone();
+        long[] v = nanos.clone();
+        return new LatencyModel() {
+            @Override
+            public long sampleNanos(Random random) {
+                double u = random.nextDouble();
+                int i = Arrays.binarySearch(q, u);
+                if (i >= 0) {
+                    return v[i];
+                }
+                i = -i - 1;
+                if (i == 0) {
+                    return v[0];
+                }
+                if (i == q.length) {
+                    return v[q.length - 1];
+                }
+                double fraction = (u - q[i - 1]) / (q[i] - q[i - 1]);
+                return v[i - 1] + (long) (fraction * (v[i] - v[i - 1]));
+            }
+
+            @Override
+            public String toString() {
+                return "quantiles " + Arrays.toString(q) + " -> " + Arrays.toString(v) + "ns";
+            }
+        };
+    }
+
+    // A recorded histogram, one "<latency> <count>" bucket per line in ascending order,
+    // latencies with a unit (e.g. 250us). Blank lines and lines starting with # are skipped.
+    public static LatencyModel fromHistogram(Path file) throws IOException {
+        List<long[]> buckets = new ArrayList<>();
+        long total = 0;
+        try (BufferedReader reader = Files.newBufferedReader(file)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                String[] fields = line.split("[\\s,]+");
+                if (fields.length != 2) {
+                    throw new IllegalArgumentException(file + ": expected <latency> <count>, got: " + line);
+                }
+                long count = Long.parseLong(fields[1]);
+                if (count > 0) {
+                    buckets.add(new long[] {parseNanos(fields[0]), count});
+                    total += count;
+                }
+            }
+        }
+        if (total == 0) {
+            throw new IllegalArgumentException(file + " has no samples");
+        }
+        double[] quantiles = new double[buckets.size()];
+        long[] nanos = new long[buckets.size()];
+        long cumulative = 0;
+        for (int i = 0; i < buckets.size(); i++) {
+            cumulative += buckets.get(i)[1];
+            quantiles[i] = (double) cumulative / total;
+            nanos[i] = buckets.get(i)[0];
+        }
+        return fromQuantiles(quantiles, nanos);
+    }
+
+    // none, fixed:200us, lognormal:<median>:<p99>, percentiles:50=300us,99=2ms,100=9ms or
+    // histogram:<file>
+    public static LatencyModel parse(String spec) throws IOException {
+        String s = spec.trim();
+        int colon = s.indexOf(':');
+        String kind = (colon < 0 ? s : s.substring(0, colon)).toLowerCase(Locale.ROOT);
+        String args = colon < 0 ? "" : s.substring(colon + 1);
+        switch (kind) {
+            case "none":
+                return NONE;
+            case "fixed":
+                return fixed(parseNanos(args));
+            case "lognormal": {
+                String[] bounds = args.split(":");
+                if (bounds.length != 2) {
+                    throw new IllegalArgumentException("Expected lognormal:<median>:<p99>, got: " + spec);
+                }
+                return lognormal(parseNanos(bounds[0]), parseNanos(bounds[1]));
+            }
+            case "percentiles": {
+                String[] points = args.split(",");
+                double[] quantiles = new double[points.length];
+                long[] nanos = new long[points.length];
+                for (int i = 0; i < points.length; i++) {
+                    String[] point = points[i].split("=");
+                    if (point.length != 2) {
+                        throw new IllegalArgumentException("Expected <percentile>=<latency>, got: " + points[i]);
+                    }
+                    quantiles[i] = Double.parseDouble(point[0].trim()) / 100;
+                    nanos[i] = parseNanos(point[1]);
+                }
+                return fromQuantiles(quantiles, nanos);
+            }
+            case "histogram":
+                return fromHistogram(Path.of(args));
+            default:
+                throw new IllegalArgumentException("Unknown latency model: " + spec);
+        }
+    }
+
+    // Accepts 500ns, 250us, 1.5ms, 2s; a bare number is microseconds
+    public static long parseNanos(String value) {
+        String v = value.trim().toLowerCase(Locale.ROOT);
+        double scale = 1e3;
+        if (v.endsWith("ns")) {
+            scale = 1;
+            v = v.substring(0, v.length() - 2);
+        } else if (v.endsWith("us")) {
+            v = v.substring(0, v.length() - 2);
+        } else if (v.endsWith("ms")) {
+            scale = 1e6;
+            v = v.substring(0, v.length() - 2);
+        } else if (v.endsWith("s")) {
+            scale = 1e9;
+            v = v.substring(0, v.length() - 1);
+        }
+        return (long) (Double.parseDouble(v.trim()) * scale);
+    }
+}
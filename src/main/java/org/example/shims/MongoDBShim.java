@@ -1,14 +1,21 @@
 package org.example.shims;
 
+import com.mongodb.MongoExecutionTimeoutException;
 import com.mongodb.WriteConcern;
 import com.mongodb.client.*;
+import com.mongodb.client.model.CountOptions;
 import com.mongodb.client.model.UpdateOptions;
 
 import org.bson.Document;
 import org.example.TransactionContext;
+import org.example.TransactionTimeoutException;
 
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 
 public class MongoDBShim implements DataStoreShim {
     private MongoClient mongoClient;
@@ -28,18 +35,34 @@ public class MongoDBShim implements DataStoreShim {
         this.database = mongoClient.getDatabase(databaseName);
         this.locks = new ConcurrentHashMap<>();
         
-        // Initialize collection
-        try {
-            database.createCollection("epoxy_data");
-        } catch (Exception ignored) {}
-        
-        database.getCollection("epoxy_data").createIndex(
-            new Document("location", "2dsphere")
-        );
+        // Initialize collection, unless a previous start already did
+        SchemaCache.open(connectionString + "/" + databaseName, "epoxy_data location 2dsphere",
+            this::warmUp, () -> {
+                try {
+                    database.createCollection("epoxy_data");
+                } catch (Exception ignored) {}
+
+                database.getCollection("epoxy_data").createIndex(
+                    new Document("location", "2dsphere")
+                );
+                return null;
+            });
+    }
+
+    // Opens the first pooled connection and fails unless the geo index exists
+    private Void warmUp() {
+        for (Document index : database.getCollection("epoxy_data").listIndexes()) {
+            Document key = index.get("key", Document.class);
+            if (key != null && "2dsphere".equals(key.get("location"))) {
+                return null;
+            }
+        }
+        throw new IllegalStateException("epoxy_data has no location index");
     }
 
     @Override
     public void update(TransactionContext txn, String key, String value) {
+        txn.checkDeadline(this, "update");
         locks.computeIfAbsent(key, k -> new Object());
         synchronized (locks.get(key)) {
             MongoCollection<Document> collection = database.getCollection("epoxy_data");
@@ -48,39 +71,102 @@ public class MongoDBShim implements DataStoreShim {
                     .append("value", value)
                     .append("begin_txn", txn.getTxnId())
                     .append("end_txn", Long.MAX_VALUE));
-            collection.updateOne(filter, update, new UpdateOptions().upsert(true));
+            // Recorded first so an abort after a failed write still removes it
             txn.addModifiedKey(this, key);
+            // updateOne takes no maxTimeMS in this driver version; the check above bounds when it starts
+            try {
+                collection.updateOne(filter, update, new UpdateOptions().upsert(true));
+            } catch (MongoExecutionTimeoutException e) {
+                throw new TransactionTimeoutException(txn.getTxnId(), this, "update", e);
+            }
         }
     }
 
     @Override
     public String query(TransactionContext txn, String key) {
+        if (txn.isPrefetched(this, key)) {
+            return txn.getPrefetched(this, key);
+        }
+        txn.checkDeadline(this, "query");
         MongoCollection<Document> collection = database.getCollection("epoxy_data");
         Document filter = new Document("key", key)
                 .append("begin_txn", new Document("$lte", txn.getTxnId()))
                 .append("end_txn", new Document("$gt", txn.getXmin()))
                 .append("$or", Arrays.asList(
                         new Document("begin_txn", new Document("$lt", txn.getXmin())),
-                        new Document("begin_txn", new Document("$in", txn.getRcTxns()))
+                        new Document("begin_txn", new Document("$in", txn.getRcTxnList()))
                 ));
-        Document result = collection.find(filter)
+        FindIterable<Document> find = collection.find(filter)
                 .sort(new Document("begin_txn", -1))
-                .limit(1)
-                .first();
-        return result != null ? result.getString("value") : null;
+                .limit(1);
+        if (txn.hasDeadline()) {
+            find.maxTime(txn.remainingMillis(), TimeUnit.MILLISECONDS);
+        }
+        try {
+            Document result = find.first();
+            return result != null ? result.getString("value") : null;
+        } catch (MongoExecutionTimeoutException e) {
+            throw new TransactionTimeoutException(txn.getTxnId(), this, "query", e);
+        }
+    }
+
+    @Override
+    public Map<String, String> queryAll(TransactionContext txn, Collection<String> keys) {
+        txn.checkDeadline(this, "query");
+        MongoCollection<Document> collection = database.getCollection("epoxy_data");
+        Document filter = new Document("key", new Document("$in", keys))
+                .append("begin_txn", new Document("$lte", txn.getTxnId()))
+                .append("end_txn", new Document("$gt", txn.getXmin()))
+                .append("$or", Arrays.asList(
+                        new Document("begin_txn", new Document("$lt", txn.getXmin())),
+                        new Document("begin_txn", new Document("$in", txn.getRcTxnList()))
+                ));
+        // Newest version of each key first; older ones are skipped below
+        FindIterable<Document> find = collection.find(filter)
+                .sort(new Document("begin_txn", -1));
+        if (txn.hasDeadline()) {
+            find.maxTime(txn.remainingMillis(), TimeUnit.MILLISECONDS);
+        }
+        Map<String, String> values = new HashMap<>();
+        try {
+            for (Document doc : find) {
+                String key = doc.getString("key");
+                if (!values.containsKey(key)) {
+                    values.put(key, doc.getString("value"));
+                }
+            }
+        } catch (MongoExecutionTimeoutException e) {
+            throw new TransactionTimeoutException(txn.getTxnId(), this, "query", e);
+        }
+        for (String key : keys) {
+            values.putIfAbsent(key, null);
+        }
+        return values;
     }
 
     @Override
     public boolean validateTransaction(TransactionContext txn) {
+        txn.checkDeadline(this, "validate");
         MongoCollection<Document> collection = database.getCollection("epoxy_data");
+        // Our own documents are in the write set too; only someone else's can conflict
         Document filter = new Document("key", new Document("$in", txn.getModifiedKeys(this)))
                 .append("begin_txn", new Document("$gte", txn.getXmin())
-                        .append("$nin", txn.getRcTxns()));
-        return collection.countDocuments(filter) == 0;
+                        .append("$ne", txn.getTxnId())
+                        .append("$nin", txn.getRcTxnList()));
+        CountOptions options = new CountOptions();
+        if (txn.hasDeadline()) {
+            options.maxTime(txn.remainingMillis(), TimeUnit.MILLISECONDS);
+        }
+        try {
+            return collection.countDocuments(filter, options) == 0;
+        } catch (MongoExecutionTimeoutException e) {
+            throw new TransactionTimeoutException(txn.getTxnId(), this, "validate", e);
+        }
     }
 
     @Override
     public void prepareCommit(TransactionContext txn) {
+        txn.checkDeadline(this, "prepare");
         // MongoDB doesn't have a native prepare phase, so we'll use this method
         // to ensure all writes are durable before the commit.
         WriteConcern writeConcern = WriteConcern.MAJORITY; // Ensure writes are on majority of replicas
@@ -90,10 +176,17 @@ public class MongoDBShim implements DataStoreShim {
                               .append("beginTxn", txn.getTxnId());
             
             // Force a write concern to ensure durability
-            database.getCollection("epoxy_data")
+            FindIterable<Document> find = database.getCollection("epoxy_data")
                   .withWriteConcern(writeConcern)
-                  .find(filter)
-                  .first();
+                  .find(filter);
+            if (txn.hasDeadline()) {
+                find.maxTime(txn.remainingMillis(), TimeUnit.MILLISECONDS);
+            }
+            try {
+                find.first();
+            } catch (MongoExecutionTimeoutException e) {
+                throw new TransactionTimeoutException(txn.getTxnId(), this, "prepare", e);
+            }
         }
     }
 
@@ -107,8 +200,12 @@ public class MongoDBShim implements DataStoreShim {
 
     @Override
     public void abortTransaction(TransactionContext txn) {
+        if (txn.getModifiedKeys(this).isEmpty()) {
+            return;
+        }
         MongoCollection<Document> collection = database.getCollection("epoxy_data");
-        collection.deleteMany(new Document("begin_txn", txn.getTxnId()));
+        collection.deleteMany(new Document("key", new Document("$in", txn.getModifiedKeys(this)))
+                .append("begin_txn", txn.getTxnId()));
     }
 
     @Override
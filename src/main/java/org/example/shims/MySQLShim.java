@@ -2,11 +2,29 @@ package org.example.shims;
 
 import org.example.TransactionContext;
 import java.sql.*;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 
 public class MySQLShim implements DataStoreShim {
+    private static final String WAREHOUSE_DDL =
+        "CREATE TABLE IF NOT EXISTS warehouse (" +
+        "w_id VARCHAR(255) PRIMARY KEY, " +
+        "w_data TEXT, " +
+        "begin_txn BIGINT, " +
+        "end_txn BIGINT" +
+        ")";
+    private static final String DISTRICT_DDL =
+        "CREATE TABLE IF NOT EXISTS district (" +
+        "d_id VARCHAR(255) PRIMARY KEY, " +
+        "d_data TEXT, " +
+        "begin_txn BIGINT, " +
+        "end_txn BIGINT" +
+        ")";
+
     private Connection connection;
     private ConcurrentHashMap<String, Object> locks;
 
@@ -21,30 +39,30 @@ public class MySQLShim implements DataStoreShim {
         this.connection = DriverManager.getConnection(jdbcUrl, username, password);
         this.locks = new ConcurrentHashMap<>();
 
-        // Create necessary tables
-        try (Statement stmt = connection.createStatement()) {
-            stmt.execute(
-                "CREATE TABLE IF NOT EXISTS warehouse (" +
-                "w_id VARCHAR(255) PRIMARY KEY, " +
-                "w_data TEXT, " +
-                "begin_txn BIGINT, " +
-                "end_txn BIGINT" +
-                ")"
-            );
-
-            stmt.execute(
-                "CREATE TABLE IF NOT EXISTS district (" +
-                "d_id VARCHAR(255) PRIMARY KEY, " +
-                "d_data TEXT, " +
-                "begin_txn BIGINT, " +
-                "end_txn BIGINT" +
-                ")"
-            );
+        // Create necessary tables, unless a previous start already did
+        SchemaCache.open(jdbcUrl, WAREHOUSE_DDL + DISTRICT_DDL, this::warmUp, () -> {
+            try (Statement stmt = connection.createStatement()) {
+                stmt.execute(WAREHOUSE_DDL);
+                stmt.execute(DISTRICT_DDL);
+            }
+            return warmUp();
+        });
+    }
+
+    // One round trip that fails unless both tables exist
+    private Void warmUp() throws SQLException {
+        try (PreparedStatement stmt = connection.prepareStatement(
+                "SELECT (SELECT COUNT(*) FROM warehouse WHERE w_id = ?) + (SELECT COUNT(*) FROM district WHERE d_id = ?)")) {
+            stmt.setString(1, "");
+            stmt.setString(2, "");
+            stmt.executeQuery().close();
         }
+        return null;
     }
 
     @Override
     public void update(TransactionContext txn, String key, String value) {
+        txn.checkDeadline(this, "update");
         locks.computeIfAbsent(key, k -> new Object());
         synchronized (locks.get(key)) {
             try {
@@ -54,36 +72,57 @@ public class MySQLShim implements DataStoreShim {
                            "begin_txn = VALUES(begin_txn), end_txn = VALUES(end_txn)";
                 
                 try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+                
+                    Deadlines.applyQueryTimeout(stmt, txn);
                     stmt.setString(1, key);
                     stmt.setString(2, value);
                     stmt.setLong(3, txn.getTxnId());
                     stmt.setLong(4, Long.MAX_VALUE);
+                    // Recorded first so that if the write times out after reaching the
+                    // store, aborting the transaction still removes it
+                    txn.addModifiedKey(this, key);
                     stmt.executeUpdate();
                 }
-                txn.addModifiedKey(this, key);
             } catch (SQLException e) {
-                throw new RuntimeException(e);
+                throw Deadlines.translate(e, txn, this, "update");
             }
         }
     }
 
     @Override
     public String query(TransactionContext txn, String key) {
+        if (txn.isPrefetched(this, key)) {
+            return txn.getPrefetched(this, key);
+        }
+        txn.checkDeadline(this, "query");
         try {
-            String sql = "SELECT w_data FROM warehouse WHERE w_id = ? AND begin_txn <= ? " +
-                        "AND (end_txn > ? OR end_txn = ?) " +
-                        "AND (begin_txn < ? OR begin_txn = ANY (?)) " +
-                        "ORDER BY begin_txn DESC LIMIT 1";
-            
-            try (PreparedStatement stmt = connection.prepareStatement(sql)) {
-                stmt.setString(1, key);
-                stmt.setLong(2, txn.getTxnId());
-                stmt.setLong(3, txn.getXmin());
-                stmt.setLong(4, Long.MAX_VALUE);
-                stmt.setLong(5, txn.getXmin());
-                Array rcTxnsArray = connection.createArrayOf("BIGINT", txn.getRcTxns().toArray());
-                stmt.setArray(6, rcTxnsArray);
-                
+            long[] rcTxns = txn.getRcTxns();
+
+            // MySQL has no array parameters, so expand the recently committed set inline
+            StringBuilder sql = new StringBuilder();
+            sql.append("SELECT w_data FROM warehouse WHERE w_id = ? AND begin_txn <= ? ");
+            sql.append("AND (end_txn > ? OR end_txn = ?) ");
+            sql.append("AND (begin_txn < ?");
+            if (rcTxns.length > 0) {
+                sql.append(" OR begin_txn IN (");
+                sql.append(String.join(",", Collections.nCopies(rcTxns.length, "?")));
+                sql.append(")");
+            }
+            sql.append(") ORDER BY begin_txn DESC LIMIT 1");
+
+            try (PreparedStatement stmt = connection.prepareStatement(sql.toString())) {
+
+                Deadlines.applyQueryTimeout(stmt, txn);
+                int paramIndex = 1;
+                stmt.setString(paramIndex++, key);
+                stmt.setLong(paramIndex++, txn.getTxnId());
+                stmt.setLong(paramIndex++, txn.getXmin());
+                stmt.setLong(paramIndex++, Long.MAX_VALUE);
+                stmt.setLong(paramIndex++, txn.getXmin());
+                for (long rcTxn : rcTxns) {
+                    stmt.setLong(paramIndex++, rcTxn);
+                }
+
                 ResultSet rs = stmt.executeQuery();
                 if (rs.next()) {
                     return rs.getString("w_data");
@@ -91,15 +130,68 @@ public class MySQLShim implements DataStoreShim {
             }
             return null;
         } catch (SQLException e) {
-            throw new RuntimeException(e);
+            throw Deadlines.translate(e, txn, this, "query");
+        }
+    }
+
+    @Override
+    public Map<String, String> queryAll(TransactionContext txn, Collection<String> keys) {
+        txn.checkDeadline(this, "query");
+        Map<String, String> values = new HashMap<>();
+        try {
+            long[] rcTxns = txn.getRcTxns();
+
+            StringBuilder sql = new StringBuilder();
+            sql.append("SELECT w_id, w_data FROM warehouse WHERE w_id IN (");
+            sql.append(String.join(",", Collections.nCopies(keys.size(), "?")));
+            sql.append(") AND begin_txn <= ? AND (end_txn > ? OR end_txn = ?) ");
+            sql.append("AND (begin_txn < ?");
+            if (rcTxns.length > 0) {
+                sql.append(" OR begin_txn IN (");
+                sql.append(String.join(",", Collections.nCopies(rcTxns.length, "?")));
+                sql.append(")");
+            }
+            // Newest version of each key first; older ones are skipped below
+            sql.append(") ORDER BY w_id, begin_txn DESC");
+
+            try (PreparedStatement stmt = connection.prepareStatement(sql.toString())) {
+
+                Deadlines.applyQueryTimeout(stmt, txn);
+                int paramIndex = 1;
+                for (String key : keys) {
+                    stmt.setString(paramIndex++, key);
+                }
+                stmt.setLong(paramIndex++, txn.getTxnId());
+                stmt.setLong(paramIndex++, txn.getXmin());
+                stmt.setLong(paramIndex++, Long.MAX_VALUE);
+                stmt.setLong(paramIndex++, txn.getXmin());
+                for (long rcTxn : rcTxns) {
+                    stmt.setLong(paramIndex++, rcTxn);
+                }
+
+                ResultSet rs = stmt.executeQuery();
+                while (rs.next()) {
+                    String key = rs.getString("w_id");
+                    if (!values.containsKey(key)) {
+                        values.put(key, rs.getString("w_data"));
+                    }
+                }
+            }
+        } catch (SQLException e) {
+            throw Deadlines.translate(e, txn, this, "query");
+        }
+        for (String key : keys) {
+            values.putIfAbsent(key, null);
         }
+        return values;
     }
 
     @Override
     public boolean validateTransaction(TransactionContext txn) {
+        txn.checkDeadline(this, "validate");
         try {
             Set<String> keys = txn.getModifiedKeys(this);
-            Set<Long> rcTxns = txn.getRcTxns();
+            long[] rcTxns = txn.getRcTxns();
             
             // If no keys were modified, validation passes
             if (keys.isEmpty()) {
@@ -113,17 +205,20 @@ public class MySQLShim implements DataStoreShim {
             // Add placeholders for keys
             String keyPlaceholders = String.join(",", Collections.nCopies(keys.size(), "?"));
             sql.append(keyPlaceholders);
-            sql.append(") AND begin_txn >= ?");
+            // Our own rows are in the write set too; only someone else's can conflict
+            sql.append(") AND begin_txn >= ? AND begin_txn != ?");
             
             // Add NOT IN clause only if there are recently committed transactions
-            if (!rcTxns.isEmpty()) {
+            if (rcTxns.length > 0) {
                 sql.append(" AND begin_txn NOT IN (");
-                String txnPlaceholders = String.join(",", Collections.nCopies(rcTxns.size(), "?"));
+                String txnPlaceholders = String.join(",", Collections.nCopies(rcTxns.length, "?"));
                 sql.append(txnPlaceholders);
                 sql.append(")");
             }
             
             try (PreparedStatement stmt = connection.prepareStatement(sql.toString())) {
+            
+                Deadlines.applyQueryTimeout(stmt, txn);
                 int paramIndex = 1;
                 
                 // Set key parameters
@@ -133,19 +228,18 @@ public class MySQLShim implements DataStoreShim {
                 
                 // Set xmin parameter
                 stmt.setLong(paramIndex++, txn.getXmin());
+                stmt.setLong(paramIndex++, txn.getTxnId());
                 
                 // Set rcTxns parameters if any exist
-                if (!rcTxns.isEmpty()) {
-                    for (Long txnId : rcTxns) {
-                        stmt.setLong(paramIndex++, txnId);
-                    }
+                for (long txnId : rcTxns) {
+                    stmt.setLong(paramIndex++, txnId);
                 }
                 
                 ResultSet rs = stmt.executeQuery();
                 return !rs.next(); // If there's a result, validation fails
             }
         } catch (SQLException e) {
-            throw new RuntimeException(e);
+            throw Deadlines.translate(e, txn, this, "validate");
         }
     }
 
@@ -164,14 +258,25 @@ public class MySQLShim implements DataStoreShim {
 
     @Override
     public void abortTransaction(TransactionContext txn) {
+        Set<String> keys = txn.getModifiedKeys(this);
+        if (keys.isEmpty()) {
+            return;
+        }
         try {
-            String sql = "DELETE FROM warehouse WHERE begin_txn = ?";
+            // Scope the delete to our write set so it goes through the primary key
+            String sql = "DELETE FROM warehouse WHERE w_id IN (" +
+                         String.join(",", Collections.nCopies(keys.size(), "?")) +
+                         ") AND begin_txn = ?";
             try (PreparedStatement stmt = connection.prepareStatement(sql)) {
-                stmt.setLong(1, txn.getTxnId());
+                int paramIndex = 1;
+                for (String key : keys) {
+                    stmt.setString(paramIndex++, key);
+                }
+                stmt.setLong(paramIndex, txn.getTxnId());
                 stmt.executeUpdate();
             }
             // Release locks
-            for (String key : txn.getModifiedKeys(this)) {
+            for (String key : keys) {
                 locks.remove(key);
             }
         } catch (SQLException e) {
@@ -0,0 +1,80 @@
+package org.example.shims;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.example.TransactionContext;
+
+// Stand-in store that does no store work: writes are only tracked in the transaction and
+// every read misses. What's left to measure is the coordinator's own work.
+public class NoopShim implements DataStoreShim {
+    // Only set by remembering()
+    private final ConcurrentHashMap<String, String> latest;
+
+    public NoopShim() {
+        this(null);
+    }
+
+    private NoopShim(ConcurrentHashMap<String, String> latest) {
+        this.latest = latest;
+    }
+
+    // Keeps the last value written to each key, unversioned, visible at once and kept
+    // even if the writer aborts, so workloads that read back what they wrote still run.
+    // Still no store work to speak of.
+    public static NoopShim remembering() {
+        return new NoopShim(new ConcurrentHashMap<>());
+    }
+
+    @Override
+    public void update(TransactionContext txn, String key, String value) {
+        if (latest != null) {
+            if (value == null) {
+                latest.remove(key);
+            } else {
+                latest.put(key, value);
+            }
+        }
+        txn.addModifiedKey(this, key);
+    }
+
+    @Override
+    public String query(TransactionContext txn, String key) {
+        // Reading the snapshot is the part of a query the coordinator pays for
+        txn.getXmin();
+        return latest == null ? null : latest.get(key);
+    }
+
+    @Override
+    public Map<String, String> queryAll(TransactionContext txn, Collection<String> keys) {
+        txn.getXmin();
+        Map<String, String> values = new HashMap<>();
+        for (String key : keys) {
+            values.put(key, latest == null ? null : latest.get(key));
+        }
+        return values;
+    }
+
+    @Override
+    public boolean validateTransaction(TransactionContext txn) {
+        return true;
+    }
+
+    @Override
+    public void prepareCommit(TransactionContext txn) {
+    }
+
+    @Override
+    public void finalizeCommit(TransactionContext txn) {
+    }
+
+    @Override
+    public void abortTransaction(TransactionContext txn) {
+    }
+
+    @Override
+    public void garbageCollect(long globalXmin) {
+    }
+}
@@ -1,6 +1,10 @@
 package org.example.shims;
 
 import java.sql.*;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 
 import org.example.TransactionContext;
@@ -23,64 +27,107 @@ public class PostgresShim implements DataStoreShim {
 
     @Override
     public void update(TransactionContext txn, String key, String value) {
+        txn.checkDeadline(this, "update");
         locks.computeIfAbsent(key, k -> new Object());
         synchronized (locks.get(key)) {
             try {
                 String sql = "INSERT INTO epoxy_data (key, value, begin_txn, end_txn) VALUES (?, ?, ?, ?) " +
                              "ON CONFLICT (key) DO UPDATE SET value = excluded.value, begin_txn = excluded.begin_txn, end_txn = excluded.end_txn";
                 try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+                    Deadlines.applyQueryTimeout(stmt, txn);
                     stmt.setString(1, key);
                     stmt.setString(2, value);
                     stmt.setLong(3, txn.getTxnId());
                     stmt.setLong(4, Long.MAX_VALUE);
+                    // Recorded first so that if the write times out after reaching the
+                    // store, aborting the transaction still removes it
+                    txn.addModifiedKey(this, key);
                     stmt.executeUpdate();
                 }
-                txn.addModifiedKey(this, key);
             } catch (SQLException e) {
-                throw new RuntimeException(e);
+                throw Deadlines.translate(e, txn, this, "update");
             }
         }
     }
 
     @Override
     public String query(TransactionContext txn, String key) {
+        if (txn.isPrefetched(this, key)) {
+            return txn.getPrefetched(this, key);
+        }
+        txn.checkDeadline(this, "query");
         try {
             String sql = "SELECT value FROM epoxy_data WHERE key = ? AND begin_txn <= ? AND (end_txn > ? OR end_txn = ?) " +
                          "AND (begin_txn < ? OR begin_txn = ANY (?)) ORDER BY begin_txn DESC LIMIT 1";
             try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+                Deadlines.applyQueryTimeout(stmt, txn);
                 stmt.setString(1, key);
                 stmt.setLong(2, txn.getTxnId());
                 stmt.setLong(3, txn.getXmin());
                 stmt.setLong(4, Long.MAX_VALUE);
                 stmt.setLong(5, txn.getXmin());
-                Array rcTxnsArray = connection.createArrayOf("BIGINT", txn.getRcTxns().toArray());
-                stmt.setArray(6, rcTxnsArray);
+                // pgjdbc binds primitive arrays directly, no boxed Array needed
+                stmt.setObject(6, txn.getRcTxns());
                 ResultSet rs = stmt.executeQuery();
                 if (rs.next()) {
                     return rs.getString("value");
                 }
             }
         } catch (SQLException e) {
-            throw new RuntimeException(e);
+            throw Deadlines.translate(e, txn, this, "query");
         }
         return null;
     }
 
+    @Override
+    public Map<String, String> queryAll(TransactionContext txn, Collection<String> keys) {
+        txn.checkDeadline(this, "query");
+        Map<String, String> values = new HashMap<>();
+        try {
+            // Newest visible version of every key in one statement
+            String sql = "SELECT DISTINCT ON (key) key, value FROM epoxy_data WHERE key = ANY (?) AND begin_txn <= ? " +
+                         "AND (end_txn > ? OR end_txn = ?) AND (begin_txn < ? OR begin_txn = ANY (?)) " +
+                         "ORDER BY key, begin_txn DESC";
+            try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+                Deadlines.applyQueryTimeout(stmt, txn);
+                stmt.setObject(1, keys.toArray(new String[0]));
+                stmt.setLong(2, txn.getTxnId());
+                stmt.setLong(3, txn.getXmin());
+                stmt.setLong(4, Long.MAX_VALUE);
+                stmt.setLong(5, txn.getXmin());
+                stmt.setObject(6, txn.getRcTxns());
+                ResultSet rs = stmt.executeQuery();
+                while (rs.next()) {
+                    values.put(rs.getString("key"), rs.getString("value"));
+                }
+            }
+        } catch (SQLException e) {
+            throw Deadlines.translate(e, txn, this, "query");
+        }
+        for (String key : keys) {
+            values.putIfAbsent(key, null);
+        }
+        return values;
+    }
+
     @Override
     public boolean validateTransaction(TransactionContext txn) {
+        txn.checkDeadline(this, "validate");
         try {
-            String sql = "SELECT 1 FROM epoxy_data WHERE key = ANY(?) AND begin_txn >= ? AND begin_txn != ALL(?)";
+            // Our own rows are in the write set too; only someone else's can conflict
+            String sql = "SELECT 1 FROM epoxy_data WHERE key = ANY(?) AND begin_txn >= ? AND begin_txn != ? " +
+                         "AND begin_txn != ALL(?)";
             try (PreparedStatement stmt = connection.prepareStatement(sql)) {
-                Array keysArray = connection.createArrayOf("VARCHAR", txn.getModifiedKeys(this).toArray());
-                stmt.setArray(1, keysArray);
+                Deadlines.applyQueryTimeout(stmt, txn);
+                stmt.setObject(1, txn.getModifiedKeys(this).toArray(new String[0]));
                 stmt.setLong(2, txn.getXmin());
-                Array rcTxnsArray = connection.createArrayOf("BIGINT", txn.getRcTxns().toArray());
-                stmt.setArray(3, rcTxnsArray);
+                stmt.setLong(3, txn.getTxnId());
+                stmt.setObject(4, txn.getRcTxns());
                 ResultSet rs = stmt.executeQuery();
                 return !rs.next(); // If there's a result, validation fails
             }
         } catch (SQLException e) {
-            throw new RuntimeException(e);
+            throw Deadlines.translate(e, txn, this, "validate");
         }
     }
 
@@ -99,14 +146,20 @@ public class PostgresShim implements DataStoreShim {
 
     @Override
     public void abortTransaction(TransactionContext txn) {
+        Set<String> keys = txn.getModifiedKeys(this);
+        if (keys.isEmpty()) {
+            return;
+        }
         try {
-            String sql = "DELETE FROM epoxy_data WHERE begin_txn = ?";
+            // Scope the delete to our write set so it goes through the primary key
+            String sql = "DELETE FROM epoxy_data WHERE key = ANY(?) AND begin_txn = ?";
             try (PreparedStatement stmt = connection.prepareStatement(sql)) {
-                stmt.setLong(1, txn.getTxnId());
+                stmt.setObject(1, keys.toArray(new String[0]));
+                stmt.setLong(2, txn.getTxnId());
                 stmt.executeUpdate();
             }
             // Release locks
-            for (String key : txn.getModifiedKeys(this)) {
+            for (String key : keys) {
                 locks.remove(key);
             }
         } catch (SQLException e) {
@@ -0,0 +1,118 @@
+package org.example.shims;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Remembers which DDL has already been applied to which store so startup can skip it.
+// A fingerprint is a hash of the store's address and its DDL text, so changing either
+// runs the DDL again. Fingerprints are kept one per line in ~/.epoxy/schema-fingerprints,
+// or the file named by -Depoxy.schemaCache ("off" to always run DDL).
+//
+// The file can't tell a store that was recreated behind the same address, so a cached
+// schema is only trusted once the store's warm-up query succeeds against it.
+public final class SchemaCache {
+    private static final String FILE_PROPERTY = "epoxy.schemaCache";
+
+    private static final Path file = cacheFile();
+    private static final Set<String> applied = load();
+    private static final AtomicInteger skipped = new AtomicInteger();
+    private static final AtomicInteger ran = new AtomicInteger();
+
+    @FunctionalInterface
+    public interface Step<T, E extends Exception> {
+        T run() throws E;
+    }
+
+    private SchemaCache() {
+    }
+
+    // Connects to store with verify if this DDL was applied before, which should open
+    // the store and run a query that fails unless the schema exists. Otherwise, or if
+    // verify fails, connects with create, which applies the DDL.
+    public static <T, E extends Exception> T open(String store, String ddl, Step<T, E> verify, Step<T, E> create) throws E {
+        String fingerprint = fingerprint(store, ddl);
+        if (isApplied(fingerprint)) {
+            try {
+                T opened = verify.run();
+                skipped.incrementAndGet();
+                return opened;
+            } catch (Exception e) {
+                // Fall through and recreate it
+            }
+        }
+        T opened = create.run();
+        ran.incrementAndGet();
+        markApplied(fingerprint);
+        return opened;
+    }
+
+    public static int getSkipped() {
+        return skipped.get();
+    }
+
+    public static int getRan() {
+        return ran.get();
+    }
+
+    private static String fingerprint(String store, String ddl) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(ddl.getBytes(StandardCharsets.UTF_8));
+            return store + " " + HexFormat.of().formatHex(digest.digest(), 0, 16);
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static synchronized boolean isApplied(String fingerprint) {
+        return file != null && applied.contains(fingerprint);
+    }
+
+    private static synchronized void markApplied(String fingerprint) {
+        if (!applied.add(fingerprint) || file == null) {
+            return;
+        }
+        // Only saves work on the next start, so a write failure isn't worth failing this one for
+        try {
+            Files.createDirectories(file.getParent());
+            Files.write(file, List.of(fingerprint), StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        } catch (IOException e) {
+            System.err.println("Could not save schema fingerprint to " + file + ": " + e);
+        }
+    }
+
+    private static Path cacheFile() {
+        String configured = System.getProperty(FILE_PROPERTY);
+        if ("off".equals(configured)) {
+            return null;
+        }
+        if (configured != null) {
+            return Paths.get(configured).toAbsolutePath();
+        }
+        return Paths.get(System.getProperty("user.home"), ".epoxy", "schema-fingerprints");
+    }
+
+    private static Set<String> load() {
+        Set<String> fingerprints = new HashSet<>();
+        if (file != null && Files.isRegularFile(file)) {
+            try {
+                fingerprints.addAll(Files.readAllLines(file, StandardCharsets.UTF_8));
+            } catch (IOException e) {
+                System.err.println("Ignoring unreadable schema fingerprints in " + file + ": " + e);
+            }
+        }
+        return fingerprints;
+    }
+}
@@ -0,0 +1,269 @@
+package org.example.shims;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import org.example.TransactionContext;
+import org.example.TransactionTimeoutException;
+
+// In-memory store made to behave like a remote one: every call waits out a latency drawn
+// from the store's model, holding one of a limited number of slots (its connections)
+// while it does, and faults can be switched on at any time. Data and MVCC semantics are
+// InMemoryShim's, so workloads run unchanged without the real store.
+//
+// Calls honour the transaction's deadline the way a statement timeout would: a latency,
+// slot wait or stall that would run past it ends at the deadline with
+// TransactionTimeoutException. Finalize and abort release what the store already holds,
+// so they take their latency but are never failed and aren't bounded by the deadline.
+public class StandInShim extends InMemoryShim {
+    private final String name;
+    private final LatencyModel reads;
+    private final LatencyModel writes;
+    private final LatencyModel commits;
+    private final int maxConcurrent;
+    private final Semaphore slots;
+
+    private volatile double errorRate;
+    private volatile double timeoutRate;
+    // How long an injected timeout hangs when the transaction has no deadline of its own
+    private volatile long hangNanos = TimeUnit.SECONDS.toNanos(1);
+    private volatile long stalledUntil;
+
+    private final LongAdder calls = new LongAdder();
+    private final LongAdder queuedCalls = new LongAdder();
+    private final LongAdder queueWaitNanos = new LongAdder();
+    private final LongAdder stalledCalls = new LongAdder();
+    private final LongAdder injectedErrors = new LongAdder();
+    private final LongAdder injectedTimeouts = new LongAdder();
+
+    // commits covers validate, prepare and finalize; maxConcurrent 0 means no limit
+    public StandInShim(String name, LatencyModel reads, LatencyModel writes, LatencyModel commits,
+                       int maxConcurrent) {
+        this.name = name;
+        this.reads = reads;
+        this.writes = writes;
+        this.commits = commits;
+        this.maxConcurrent = maxConcurrent;
+        this.slots = maxConcurrent > 0 ? new Semaphore(maxConcurrent, true) : null;
+    }
+
+    // Rough same-host figures for each store the benchmarks use; record the real ones and
+    // load them with LatencyModel.fromHistogram for anything that matters. Slots are what
+    // the real shim can have in flight: one JDBC connection for Postgres and MySQL, the
+    // driver's pool of 100 for MongoDB and Elasticsearch.
+    public static StandInShim forStore(String store) {
+        switch (store) {
+            case "postgres":
+                return new StandInShim(store, micros(250, 2_000), micros(400, 3_000), micros(300, 2_500), 1);
+            case "mysql":
+                return new StandInShim(store, micros(300, 2_500), micros(450, 3_500), micros(350, 3_000), 1);
+            case "mongodb":
+                return new StandInShim(store, micros(400, 3_000), micros(500, 4_000), micros(400, 3_000), 100);
+            case "elasticsearch":
+                // Writes wait for a refresh before they are searchable
+                return new StandInShim(store, micros(1_000, 8_000), micros(2_000, 15_000), micros(1_000, 8_000), 100);
+            default:
+                throw new IllegalArgumentException("Unknown store: " + store);
+        }
+    }
+
+    private static LatencyModel micros(long median, long p99) {
+        return LatencyModel.lognormal(TimeUnit.MICROSECONDS.toNanos(median), TimeUnit.MICROSECONDS.toNanos(p99));
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public LatencyModel getReads() {
+        return reads;
+    }
+
+    public LatencyModel getWrites() {
+        return writes;
+    }
+
+    public LatencyModel getCommits() {
+        return commits;
+    }
+
+    // 0 means no limit
+    public int getMaxConcurrent() {
+        return maxConcurrent;
+    }
+
+    // Fraction of reads, writes, validations and prepares that fail with a store error
+    public void injectErrors(double rate) {
+        this.errorRate = rate;
+    }
+
+    // Fraction of those calls that hang until the transaction's deadline, or for hang if
+    // it has none, then time out
+    public void injectTimeouts(double rate, long hang, TimeUnit unit) {
+        this.hangNanos = unit.toNanos(hang);
+        this.timeoutRate = rate;
+    }
+
+    // Every call made from now until duration has passed waits for it to pass first
+    public void stall(long duration, TimeUnit unit) {
+        this.stalledUntil = System.nanoTime() + unit.toNanos(duration);
+    }
+
+    @Override
+    public void update(TransactionContext txn, String key, String value) {
+        call(txn, "update", writes);
+        super.update(txn, key, value);
+    }
+
+    @Override
+    public String query(TransactionContext txn, String key) {
+        // Already read; handing over the result is no round trip
+        if (!txn.isPrefetched(this, key)) {
+            call(txn, "query", reads);
+        }
+        return super.query(txn, key);
+    }
+
+    @Override
+    public Map<String, String> queryAll(TransactionContext txn, Collection<String> keys) {
+        call(txn, "query", reads);
+        return super.queryAll(txn, keys);
+    }
+
+    @Override
+    public boolean validateTransaction(TransactionContext txn) {
+        call(txn, "validate", commits);
+        return super.validateTransaction(txn);
+    }
+
+    @Override
+    public void prepareCommit(TransactionContext txn) {
+        call(txn, "prepare", commits);
+        super.prepareCommit(txn);
+    }
+
+    @Override
+    public void finalizeCommit(TransactionContext txn) {
+        release(commits);
+        super.finalizeCommit(txn);
+    }
+
+    @Override
+    public void abortTransaction(TransactionContext txn) {
+        release(writes);
+        super.abortTransaction(txn);
+    }
+
+    private void call(TransactionContext txn, String operation, LatencyModel latency) {
+        txn.checkDeadline(this, operation);
+        calls.increment();
+        long deadline = deadlineOf(txn);
+        long stall = stalledUntil;
+        if (stall - System.nanoTime() > 0) {
+            stalledCalls.increment();
+            waitUntil(txn, operation, stall, deadline);
+        }
+        acquire(txn, operation, deadline);
+        try {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            double timeouts = timeoutRate;
+            if (timeouts > 0 && random.nextDouble() < timeouts) {
+                injectedTimeouts.increment();
+                waitUntil(txn, operation, System.nanoTime() + hangNanos, deadline);
+                throw new TransactionTimeoutException(txn.getTxnId(), this, operation, null);
+            }
+            waitUntil(txn, operation, System.nanoTime() + latency.sampleNanos(random), deadline);
+            double errors = errorRate;
+            if (errors > 0 && random.nextDouble() < errors) {
+                injectedErrors.increment();
+                throw new RuntimeException("Injected " + name + " failure in " + operation);
+            }
+        } finally {
+            if (slots != null) {
+                slots.release();
+            }
+        }
+    }
+
+    // Finalize and abort: a round trip that has to happen whatever the deadline says
+    private void release(LatencyModel latency) {
+        calls.increment();
+        if (slots != null) {
+            slots.acquireUninterruptibly();
+        }
+        try {
+            park(System.nanoTime() + latency.sampleNanos(ThreadLocalRandom.current()));
+        } finally {
+            if (slots != null) {
+                slots.release();
+            }
+        }
+    }
+
+    private void acquire(TransactionContext txn, String operation, long deadline) {
+        if (slots == null || slots.tryAcquire()) {
+            return;
+        }
+        queuedCalls.increment();
+        long start = System.nanoTime();
+        boolean acquired;
+        try {
+            if (deadline == Long.MAX_VALUE) {
+                slots.acquire();
+                acquired = true;
+            } else {
+                acquired = slots.tryAcquire(deadline - start, TimeUnit.NANOSECONDS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            acquired = false;
+        } finally {
+            queueWaitNanos.add(System.nanoTime() - start);
+        }
+        if (!acquired) {
+            throw new TransactionTimeoutException(txn.getTxnId(), this, operation, null);
+        }
+    }
+
+    // Long.MAX_VALUE if the transaction has no deadline
+    private static long deadlineOf(TransactionContext txn) {
+        return txn.hasDeadline()
+            ? System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(txn.remainingMillis())
+            : Long.MAX_VALUE;
+    }
+
+    // Waits until target, or times out at the deadline if that comes first
+    private void waitUntil(TransactionContext txn, String operation, long target, long deadline) {
+        if (deadline != Long.MAX_VALUE && target - deadline > 0) {
+            park(deadline);
+            throw new TransactionTimeoutException(txn.getTxnId(), this, operation, null);
+        }
+        park(target);
+    }
+
+    private static void park(long target) {
+        long left;
+        while ((left = target - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(left);
+            if (Thread.currentThread().isInterrupted()) {
+                return;
+            }
+        }
+    }
+
+    @Override
+    public void printStats() {
+        long total = calls.sum();
+        long waited = queuedCalls.sum();
+        System.out.printf("%s stand-in: %d calls, %s slots, %.1f%% queued avg %.2f ms, %d stalled, "
+                + "injected %d errors + %d timeouts\n",
+            name, total, maxConcurrent > 0 ? String.valueOf(maxConcurrent) : "unlimited",
+            total == 0 ? 0.0 : 100.0 * waited / total, waited == 0 ? 0.0 : queueWaitNanos.sum() / 1e6 / waited,
+            stalledCalls.sum(), injectedErrors.sum(), injectedTimeouts.sum());
+    }
+}
@@ -0,0 +1,80 @@
+package org.example.shims;
+
+import java.util.Collection;
+import java.util.Map;
+
+import org.example.PhaseTimings;
+import org.example.TransactionContext;
+
+// Wraps a shim to add the time transactions spend in its reads and writes to a
+// PhaseTimings. queryAll runs in the background for prefetches and isn't timed; the
+// query that picks up its result is, for as long as it has to wait.
+public class TimedShim implements DataStoreShim {
+    private final DataStoreShim delegate;
+    private final PhaseTimings timings;
+
+    public TimedShim(DataStoreShim delegate, PhaseTimings timings) {
+        this.delegate = delegate;
+        this.timings = timings;
+    }
+
+    @Override
+    public DataStoreShim unwrap() {
+        return delegate.unwrap();
+    }
+
+    @Override
+    public void printStats() {
+        delegate.printStats();
+    }
+
+    @Override
+    public void update(TransactionContext txn, String key, String value) {
+        long start = System.nanoTime();
+        try {
+            delegate.update(txn, key, value);
+        } finally {
+            timings.lap(PhaseTimings.Phase.WRITES, start);
+        }
+    }
+
+    @Override
+    public String query(TransactionContext txn, String key) {
+        long start = System.nanoTime();
+        try {
+            return delegate.query(txn, key);
+        } finally {
+            timings.lap(PhaseTimings.Phase.READS, start);
+        }
+    }
+
+    @Override
+    public Map<String, String> queryAll(TransactionContext txn, Collection<String> keys) {
+        return delegate.queryAll(txn, keys);
+    }
+
+    @Override
+    public boolean validateTransaction(TransactionContext txn) {
+        return delegate.validateTransaction(txn);
+    }
+
+    @Override
+    public void prepareCommit(TransactionContext txn) {
+        delegate.prepareCommit(txn);
+    }
+
+    @Override
+    public void finalizeCommit(TransactionContext txn) {
+        delegate.finalizeCommit(txn);
+    }
+
+    @Override
+    public void abortTransaction(TransactionContext txn) {
+        delegate.abortTransaction(txn);
+    }
+
+    @Override
+    public void garbageCollect(long globalXmin) {
+        delegate.garbageCollect(globalXmin);
+    }
+}
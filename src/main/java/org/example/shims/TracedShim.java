@@ -0,0 +1,101 @@
+package org.example.shims;
+
+import java.util.Collection;
+import java.util.Map;
+
+import org.example.Trace;
+import org.example.TraceRecorder;
+import org.example.TransactionContext;
+
+// Wraps a shim to add the reads, writes and prefetches transactions make through it to a
+// TraceRecorder, under the store's name. The coordinator records when each transaction
+// began and how it ended; commit traffic isn't recorded, since replay makes its own.
+// Prefetches are timed from when the transaction issued them, queueing included.
+public class TracedShim implements DataStoreShim {
+    private final DataStoreShim delegate;
+    private final TraceRecorder recorder;
+    private final int store;
+
+    public TracedShim(DataStoreShim delegate, String name, TraceRecorder recorder) {
+        this.delegate = delegate;
+        this.recorder = recorder;
+        this.store = recorder.registerStore(name);
+    }
+
+    @Override
+    public DataStoreShim unwrap() {
+        return delegate.unwrap();
+    }
+
+    @Override
+    public void printStats() {
+        delegate.printStats();
+    }
+
+    @Override
+    public void update(TransactionContext txn, String key, String value) {
+        int generation = txn.getGeneration();
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            delegate.update(txn, key, value);
+            failed = false;
+        } finally {
+            recorder.recordOperation(txn, generation, store, Trace.Kind.WRITE, key,
+                value == null ? 0 : value.length(), start, failed);
+        }
+    }
+
+    @Override
+    public String query(TransactionContext txn, String key) {
+        int generation = txn.getGeneration();
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            String value = delegate.query(txn, key);
+            failed = false;
+            return value;
+        } finally {
+            recorder.recordOperation(txn, generation, store, Trace.Kind.READ, key, 0, start, failed);
+        }
+    }
+
+    @Override
+    public Map<String, String> queryAll(TransactionContext txn, Collection<String> keys) {
+        int generation = txn.getGeneration();
+        long start = TraceRecorder.prefetchIssuedNanos();
+        boolean failed = true;
+        try {
+            Map<String, String> values = delegate.queryAll(txn, keys);
+            failed = false;
+            return values;
+        } finally {
+            recorder.recordPrefetch(txn, generation, store, keys, start, failed);
+        }
+    }
+
+    @Override
+    public boolean validateTransaction(TransactionContext txn) {
+        return delegate.validateTransaction(txn);
+    }
+
+    @Override
+    public void prepareCommit(TransactionContext txn) {
+        delegate.prepareCommit(txn);
+    }
+
+    @Override
+    public void finalizeCommit(TransactionContext txn) {
+        delegate.finalizeCommit(txn);
+    }
+
+    @Override
+    public void abortTransaction(TransactionContext txn) {
+        delegate.abortTransaction(txn);
+    }
+
+    @Override
+    public void garbageCollect(long globalXmin) {
+        delegate.garbageCollect(globalXmin);
+    }
+}